@@ -0,0 +1,169 @@
+package net.thornydev.staxxas.benchmarks;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.thornydev.staxxas.BeanWriter;
+import net.thornydev.staxxas.StaxxasStreamWriter;
+import net.thornydev.staxxas.StaxxasWriterPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes {@link #ORDERS} orders of 3 line items each with a {@link BeanWriter}
+ * ({@code plan}), with a naive serializer that looks up fields and getters by
+ * reflection on every object ({@code reflection}), and with hand-written
+ * StaxxasStreamWriter calls ({@code handWritten}) as the lower bound.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BeanBenchmark {
+
+  static final int ORDERS = 100;
+
+  public static class Item {
+    private final String sku;
+    private final int quantity;
+    private final double price;
+
+    Item(String sku, int quantity, double price) {
+      this.sku = sku;
+      this.quantity = quantity;
+      this.price = price;
+    }
+
+    public String getSku() { return sku; }
+    public int getQuantity() { return quantity; }
+    public double getPrice() { return price; }
+  }
+
+  public static class Order {
+    private final long id;
+    private final String customer;
+    private final boolean rush;
+    private final List<Item> items = new ArrayList<>();
+
+    Order(long id, String customer, boolean rush) {
+      this.id = id;
+      this.customer = customer;
+      this.rush = rush;
+    }
+
+    public long getId() { return id; }
+    public String getCustomer() { return customer; }
+    public boolean isRush() { return rush; }
+    public List<Item> getItems() { return items; }
+  }
+
+  private CountingOutputStream out;
+  private StaxxasWriterPool pool;
+  private BeanWriter beans;
+  private List<Order> orders;
+
+  @Setup
+  public void setup() {
+    out = new CountingOutputStream();
+    pool = new StaxxasWriterPool(1);
+    beans = new BeanWriter();
+    orders = new ArrayList<>();
+    for (int i = 0; i < ORDERS; i++) {
+      Order o = new Order(i, "customer " + i, i % 3 == 0);
+      for (int j = 0; j < 3; j++) {
+        o.items.add(new Item("SKU-" + i + "-" + j, j + 1, 9.5 * (j + 1)));
+      }
+      orders.add(o);
+    }
+  }
+
+  @Benchmark
+  public long plan() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc().startRootElement("orders");
+      for (Order o : orders) {
+        beans.write(sx, o);
+      }
+      sx.endDoc();
+    }
+    return out.count();
+  }
+
+  @Benchmark
+  public long reflection() throws Exception {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc().startRootElement("orders");
+      for (Order o : orders) {
+        reflect(sx, "order", o);
+      }
+      sx.endDoc();
+    }
+    return out.count();
+  }
+
+  @Benchmark
+  public long handWritten() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc().startRootElement("orders");
+      for (Order o : orders) {
+        sx.startElement("order");
+        sx.startElement("id").characters(o.getId()).endElement();
+        sx.startElement("customer").characters(o.getCustomer()).endElement();
+        sx.startElement("rush").characters(o.isRush() ? "true" : "false").endElement();
+        for (Item item : o.getItems()) {
+          sx.startElement("items");
+          sx.startElement("sku").characters(item.getSku()).endElement();
+          sx.startElement("quantity").characters(item.getQuantity()).endElement();
+          sx.startElement("price").characters(item.getPrice()).endElement();
+          sx.endElement();
+        }
+        sx.endElement();
+      }
+      sx.endDoc();
+    }
+    return out.count();
+  }
+
+  /** the naive approach: find every field's getter and invoke it, per object */
+  private static void reflect(StaxxasStreamWriter sx, String name, Object bean) throws Exception {
+    sx.startElement(name);
+    for (Field f : bean.getClass().getDeclaredFields()) {
+      if (Modifier.isStatic(f.getModifiers())) continue;
+      String cap = Character.toUpperCase(f.getName().charAt(0)) + f.getName().substring(1);
+      Method m;
+      try {
+        m = bean.getClass().getMethod("get" + cap);
+      } catch (NoSuchMethodException e) {
+        m = bean.getClass().getMethod("is" + cap);
+      }
+      Object v = m.invoke(bean);
+      if (v instanceof Iterable) {
+        for (Object item : (Iterable<?>) v) {
+          reflect(sx, f.getName(), item);
+        }
+      } else if (v instanceof Number && !(v instanceof Double)) {
+        sx.startElement(f.getName()).characters(((Number) v).longValue()).endElement();
+      } else if (v instanceof Double) {
+        sx.startElement(f.getName()).characters((Double) v).endElement();
+      } else {
+        sx.startElement(f.getName()).characters(String.valueOf(v)).endElement();
+      }
+    }
+    sx.endElement();
+  }
+}
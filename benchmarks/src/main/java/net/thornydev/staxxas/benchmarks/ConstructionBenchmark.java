@@ -0,0 +1,77 @@
+package net.thornydev.staxxas.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import net.thornydev.staxxas.StaxxasStreamWriter;
+import net.thornydev.staxxas.StaxxasWriterPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-document cost of creating a StaxxasStreamWriter and writing a
+ * one element document.  {@code newFactoryPerDocument} is what the
+ * Writer constructor used to do: look up a new XMLOutputFactory for
+ * every document.  {@code pooledNativeWriter} reuses writers and their
+ * buffers from a {@link StaxxasWriterPool}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConstructionBenchmark {
+
+  private NullWriter writer;
+  private CountingOutputStream out;
+  private StaxxasWriterPool pool;
+
+  @Setup
+  public void setup() {
+    writer = new NullWriter();
+    out = new CountingOutputStream();
+    pool = new StaxxasWriterPool(4);
+  }
+
+  @Benchmark
+  public long newFactoryPerDocument() throws XMLStreamException {
+    StaxxasStreamWriter sx =
+      new StaxxasStreamWriter(XMLOutputFactory.newFactory().createXMLStreamWriter(writer));
+    sx.startDoc().emptyElement("foo").endDoc();
+    return writer.count();
+  }
+
+  @Benchmark
+  public long cachedFactory() {
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(writer);
+    sx.startDoc().emptyElement("foo").endDoc();
+    return writer.count();
+  }
+
+  @Benchmark
+  public long nativeWriter() {
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(out);
+    sx.startDoc().emptyElement("foo").endDoc();
+    return out.count();
+  }
+
+  @Benchmark
+  public long pooledNativeWriter() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc().emptyElement("foo").endDoc();
+    }
+    return out.count();
+  }
+}
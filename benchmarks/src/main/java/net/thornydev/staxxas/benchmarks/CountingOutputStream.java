@@ -0,0 +1,25 @@
+package net.thornydev.staxxas.benchmarks;
+
+import java.io.OutputStream;
+
+/**
+ * OutputStream that discards everything written to it but counts the bytes,
+ * so that benchmarks measure XML generation rather than I/O.
+ */
+public class CountingOutputStream extends OutputStream {
+  private long count;
+
+  @Override
+  public void write(int b) {
+    count++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    count += len;
+  }
+
+  public long count() {
+    return count;
+  }
+}
@@ -0,0 +1,73 @@
+package net.thornydev.staxxas.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import net.thornydev.staxxas.StaxxasStreamWriter;
+import net.thornydev.staxxas.benchmarks.Documents.Shape;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Documents per second for each document shape, written:
+ * <ul>
+ *   <li>directly against the JDK XMLStreamWriter (the baseline)</li>
+ *   <li>through the Staxxas facade wrapping that same XMLStreamWriter</li>
+ *   <li>through the Staxxas facade using the native UTF-8 writer</li>
+ * </ul>
+ * All three write UTF-8 bytes to a stream that discards them.  Run with
+ * {@code -prof gc} to see the allocation per document.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DocumentBenchmark {
+
+  @Param
+  public Shape shape;
+
+  private XMLOutputFactory factory;
+  private CountingOutputStream out;
+
+  @Setup
+  public void setup() {
+    factory = XMLOutputFactory.newFactory();
+    out = new CountingOutputStream();
+  }
+
+  @Benchmark
+  public long rawXMLStreamWriter() throws XMLStreamException {
+    Documents.writeRaw(shape, factory.createXMLStreamWriter(out, "UTF-8"));
+    return out.count();
+  }
+
+  @Benchmark
+  public long staxxasJdk() throws XMLStreamException {
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(factory.createXMLStreamWriter(out, "UTF-8"),
+                                                     Documents.namespaces(shape));
+    Documents.write(shape, sx);
+    return out.count();
+  }
+
+  @Benchmark
+  public long staxxasNative() {
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(out, Documents.namespaces(shape));
+    Documents.write(shape, sx);
+    return out.count();
+  }
+}
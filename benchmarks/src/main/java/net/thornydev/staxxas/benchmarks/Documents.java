@@ -0,0 +1,210 @@
+package net.thornydev.staxxas.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import net.thornydev.staxxas.StaxxasStreamWriter;
+
+/**
+ * The document shapes used by the benchmarks.  Each shape is written
+ * twice: once through the Staxxas facade and once directly against a raw
+ * {@link XMLStreamWriter}, producing the same document, so that the cost
+ * of the facade can be measured.
+ */
+public final class Documents {
+
+  public enum Shape {
+    /** a root with a handful of short text children */
+    SMALL,
+    /** 64 nested elements */
+    DEEP,
+    /** 100 elements with 10 attributes each */
+    ATTRIBUTES,
+    /** 20 elements each with about 2K of text, a few chars needing escaping */
+    TEXT,
+    /** 200 elements and attributes spread over 5 prefixed namespaces */
+    NAMESPACES
+  }
+
+  static final int DEEP_LEVELS = 64;
+  static final int ATTR_ELEMENTS = 100;
+  static final int ATTRS_PER_ELEMENT = 10;
+  static final int TEXT_ELEMENTS = 20;
+  static final int NS_ELEMENTS = 200;
+
+  static final String[] ATTR_NAMES = new String[ATTRS_PER_ELEMENT];
+  static final String[] ATTR_VALUES = new String[ATTRS_PER_ELEMENT];
+  static {
+    for (int i = 0; i < ATTRS_PER_ELEMENT; i++) {
+      ATTR_NAMES[i] = "attribute" + i;
+      ATTR_VALUES[i] = "value-" + (i * 7919);
+    }
+  }
+
+  static final String TEXT;
+  static {
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < 2048) {
+      sb.append("The quick brown fox jumps over the lazy dog. ");
+      sb.append("Fish & chips cost < 5 pounds. ");
+    }
+    TEXT = sb.toString();
+  }
+
+  static final String[] PREFIXES = {"aa", "bb", "cc", "dd", "ee"};
+  static final String[] URIS = new String[PREFIXES.length];
+  static {
+    for (int i = 0; i < PREFIXES.length; i++) {
+      URIS[i] = "http://www.example.org/" + PREFIXES[i];
+    }
+  }
+
+  private Documents() {}
+
+  /**
+   * @return a new prefix to URI map for the NAMESPACES shape, null for other shapes
+   */
+  public static Map<String,String> namespaces(Shape shape) {
+    if (shape != Shape.NAMESPACES) return null;
+    Map<String,String> m = new LinkedHashMap<String,String>();
+    for (int i = 0; i < PREFIXES.length; i++) {
+      m.put(PREFIXES[i], URIS[i]);
+    }
+    return m;
+  }
+
+  /* ---[ Staxxas ]--- */
+
+  public static void write(Shape shape, StaxxasStreamWriter sx) {
+    sx.startDoc();
+    switch (shape) {
+    case SMALL:
+      sx.startRootElement("order").attribute("id", "1234");
+      sx.startElement("customer").characters("Jane Doe").endElement();
+      sx.startElement("sku").characters("ABC123").endElement();
+      sx.startElement("quantity").characters("3").endElement();
+      sx.startElement("price").characters("9.99").endElement();
+      sx.emptyElement("gift");
+      sx.endElement("order");
+      break;
+    case DEEP:
+      sx.startRootElement("level");
+      for (int i = 1; i < DEEP_LEVELS; i++) {
+        sx.startElement("level");
+      }
+      sx.characters("bottom");
+      for (int i = 0; i < DEEP_LEVELS; i++) {
+        sx.endElement();
+      }
+      break;
+    case ATTRIBUTES:
+      sx.startRootElement("rows");
+      for (int i = 0; i < ATTR_ELEMENTS; i++) {
+        sx.emptyElement("row");
+        for (int j = 0; j < ATTRS_PER_ELEMENT; j++) {
+          sx.attribute(ATTR_NAMES[j], ATTR_VALUES[j]);
+        }
+      }
+      sx.endElement("rows");
+      break;
+    case TEXT:
+      sx.startRootElement("paragraphs");
+      for (int i = 0; i < TEXT_ELEMENTS; i++) {
+        sx.startElement("p").characters(TEXT).endElement();
+      }
+      sx.endElement("paragraphs");
+      break;
+    case NAMESPACES:
+      sx.setCurrentNamespace(PREFIXES[0]);
+      sx.startRootElement("root");
+      for (int i = 0; i < NS_ELEMENTS; i++) {
+        int p = i % PREFIXES.length;
+        sx.setCurrentNamespace(PREFIXES[p]);
+        sx.startElement("item").
+          prefixedAttribute(PREFIXES[(p + 1) % PREFIXES.length], "ref", "r").
+          characters("x").
+          endElement();
+      }
+      sx.endElement("root");
+      break;
+    }
+    sx.endDoc();
+  }
+
+  /* ---[ raw XMLStreamWriter ]--- */
+
+  public static void writeRaw(Shape shape, XMLStreamWriter w) throws XMLStreamException {
+    w.writeStartDocument();
+    switch (shape) {
+    case SMALL:
+      w.writeStartElement("order");
+      w.writeAttribute("id", "1234");
+      w.writeStartElement("customer");
+      w.writeCharacters("Jane Doe");
+      w.writeEndElement();
+      w.writeStartElement("sku");
+      w.writeCharacters("ABC123");
+      w.writeEndElement();
+      w.writeStartElement("quantity");
+      w.writeCharacters("3");
+      w.writeEndElement();
+      w.writeStartElement("price");
+      w.writeCharacters("9.99");
+      w.writeEndElement();
+      w.writeEmptyElement("gift");
+      w.writeEndElement();
+      break;
+    case DEEP:
+      for (int i = 0; i < DEEP_LEVELS; i++) {
+        w.writeStartElement("level");
+      }
+      w.writeCharacters("bottom");
+      for (int i = 0; i < DEEP_LEVELS; i++) {
+        w.writeEndElement();
+      }
+      break;
+    case ATTRIBUTES:
+      w.writeStartElement("rows");
+      for (int i = 0; i < ATTR_ELEMENTS; i++) {
+        w.writeEmptyElement("row");
+        for (int j = 0; j < ATTRS_PER_ELEMENT; j++) {
+          w.writeAttribute(ATTR_NAMES[j], ATTR_VALUES[j]);
+        }
+      }
+      w.writeEndElement();
+      break;
+    case TEXT:
+      w.writeStartElement("paragraphs");
+      for (int i = 0; i < TEXT_ELEMENTS; i++) {
+        w.writeStartElement("p");
+        w.writeCharacters(TEXT);
+        w.writeEndElement();
+      }
+      w.writeEndElement();
+      break;
+    case NAMESPACES:
+      for (int i = 0; i < PREFIXES.length; i++) {
+        w.setPrefix(PREFIXES[i], URIS[i]);
+      }
+      w.writeStartElement(URIS[0], "root");
+      for (int i = 0; i < PREFIXES.length; i++) {
+        w.writeNamespace(PREFIXES[i], URIS[i]);
+      }
+      for (int i = 0; i < NS_ELEMENTS; i++) {
+        int p = i % PREFIXES.length;
+        w.writeStartElement(URIS[p], "item");
+        w.writeAttribute(URIS[(p + 1) % PREFIXES.length], "ref", "r");
+        w.writeCharacters("x");
+        w.writeEndElement();
+      }
+      w.writeEndElement();
+      break;
+    }
+    w.writeEndDocument();
+    w.flush();
+    w.close();
+  }
+}
@@ -0,0 +1,157 @@
+package net.thornydev.staxxas.benchmarks;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+
+import net.thornydev.staxxas.StaxxasStreamWriter;
+import net.thornydev.staxxas.StaxxasWriterPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Escaping of {@link #COUNT} text and attribute values of {@code length}
+ * chars, with no chars to escape ({@code clean}), one in about 64
+ * ({@code sparse}) or one in 4 ({@code dense}).  Text is written from Strings,
+ * from char arrays and as pre-encoded UTF-8 with the native writer, and from
+ * Strings with the JDK XMLStreamWriter for comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EscapeBenchmark {
+
+  static final int COUNT = 100;
+
+  @Param({"clean", "sparse", "dense"})
+  public String escapes;
+
+  @Param({"16", "1000"})
+  public int length;
+
+  private CountingOutputStream out;
+  private StaxxasWriterPool pool;
+  private XMLOutputFactory factory;
+  private String[] strings;
+  private char[][] chars;
+  private byte[][] utf8;
+
+  @Setup
+  public void setup() {
+    out = new CountingOutputStream();
+    pool = new StaxxasWriterPool(1);
+    factory = XMLOutputFactory.newInstance();
+    int every = escapes.equals("clean") ? 0 : escapes.equals("sparse") ? 64 : 4;
+    String specials = "&<>\"";
+    Random r = new Random(42);
+    strings = new String[COUNT];
+    chars = new char[COUNT][];
+    utf8 = new byte[COUNT][];
+    for (int i = 0; i < COUNT; i++) {
+      StringBuilder sb = new StringBuilder(length);
+      for (int j = 0; j < length; j++) {
+        if (every > 0 && r.nextInt(every) == 0) {
+          sb.append(specials.charAt(r.nextInt(specials.length())));
+        } else {
+          sb.append((char) ('a' + r.nextInt(26)));
+        }
+      }
+      strings[i] = sb.toString();
+      chars[i] = strings[i].toCharArray();
+      utf8[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
+  @Benchmark
+  public long text() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc().startRootElement("root");
+      for (String s : strings) {
+        sx.startElement("e").characters(s).endElement();
+      }
+      sx.endDoc();
+    }
+    return out.count();
+  }
+
+  @Benchmark
+  public long charArray() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc().startRootElement("root");
+      for (char[] cs : chars) {
+        sx.startElement("e").characters(cs, 0, cs.length).endElement();
+      }
+      sx.endDoc();
+    }
+    return out.count();
+  }
+
+  @Benchmark
+  public long attribute() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc().startRootElement("root");
+      for (String s : strings) {
+        sx.emptyElement("e").attribute("a", s);
+      }
+      sx.endDoc();
+    }
+    return out.count();
+  }
+
+  @Benchmark
+  public long utf8() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc().startRootElement("root");
+      for (byte[] b : utf8) {
+        sx.startElement("e").utf8Characters(b, 0, b.length).endElement();
+      }
+      sx.endDoc();
+    }
+    return out.count();
+  }
+
+  @Benchmark
+  public long utf8Attribute() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc().startRootElement("root");
+      for (byte[] b : utf8) {
+        sx.emptyElement("e").utf8Attribute("a", b, 0, b.length);
+      }
+      sx.endDoc();
+    }
+    return out.count();
+  }
+
+  @Benchmark
+  public int jdkText() throws Exception {
+    StringWriter sw = new StringWriter(COUNT * (length + 16));
+    XMLStreamWriter w = factory.createXMLStreamWriter(sw);
+    w.writeStartDocument();
+    w.writeStartElement("root");
+    for (String s : strings) {
+      w.writeStartElement("e");
+      w.writeCharacters(s);
+      w.writeEndElement();
+    }
+    w.writeEndDocument();
+    w.close();
+    return sw.getBuffer().length();
+  }
+}
@@ -0,0 +1,81 @@
+package net.thornydev.staxxas.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import net.thornydev.staxxas.MappedFileOutputStream;
+import net.thornydev.staxxas.StaxxasStreamWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing a large document to a file: through a FileWriter and the JDK
+ * XMLStreamWriter ({@code fileWriter}), with the native writer to a buffered
+ * FileOutputStream ({@code fileOutputStream}) and with the native writer
+ * into a {@link MappedFileOutputStream} ({@code mappedFile}).  Timings
+ * include closing the file but not syncing it to disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FileBenchmark {
+
+  @Param({"200000"})
+  public int records;
+
+  private Path path;
+
+  @Setup
+  public void setup() throws IOException {
+    path = Files.createTempFile("staxxas-bench", ".xml");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(path);
+  }
+
+  private void writeDoc(StaxxasStreamWriter sx) {
+    sx.startDoc().startRootElement("records");
+    FragmentBenchmark.writeRecords(sx, 0, records);
+    sx.endDoc();
+  }
+
+  @Benchmark
+  public long fileWriter() throws IOException {
+    writeDoc(new StaxxasStreamWriter(new FileWriter(path.toFile())));
+    return Files.size(path);
+  }
+
+  @Benchmark
+  public long fileOutputStream() throws IOException {
+    writeDoc(new StaxxasStreamWriter(
+               new BufferedOutputStream(new FileOutputStream(path.toFile()), 64 * 1024)));
+    return Files.size(path);
+  }
+
+  @Benchmark
+  public long mappedFile() throws IOException {
+    writeDoc(new StaxxasStreamWriter(new MappedFileOutputStream(path)));
+    return Files.size(path);
+  }
+}
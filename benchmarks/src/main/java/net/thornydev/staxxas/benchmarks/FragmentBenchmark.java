@@ -0,0 +1,109 @@
+package net.thornydev.staxxas.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.thornydev.staxxas.Fragment;
+import net.thornydev.staxxas.StaxxasStreamWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One root element with {@link #RECORDS} independent record elements, written
+ * on the benchmark thread alone ({@code sequential}) or split into fragments
+ * written by {@code threads} worker threads and spliced in order
+ * ({@code fragments}).  Compare the two at each thread count to see how the
+ * speedup scales with the cores available; {@code threads} above
+ * {@code Runtime.availableProcessors()} only adds overhead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FragmentBenchmark {
+
+  static final int RECORDS = 20000;
+
+  @Param({"1", "2", "4", "8"})
+  public int threads;
+
+  /** fragments per thread, so that uneven records even out */
+  @Param({"4"})
+  public int fragmentsPerThread;
+
+  private ExecutorService executor;
+  private CountingOutputStream out;
+
+  @Setup
+  public void setup() {
+    executor = Executors.newFixedThreadPool(threads);
+    out = new CountingOutputStream();
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  static void writeRecords(StaxxasStreamWriter sx, int from, int to) {
+    for (int i = from; i < to; i++) {
+      sx.startElement("record").attribute("id", i).attribute("score", i * 0.25);
+      sx.startElement("name").characters("Record number ").characters(i).endElement();
+      sx.startElement("notes").characters("Fish & chips cost < 5 pounds.").endElement();
+      sx.endElement();
+    }
+  }
+
+  @Benchmark
+  public long sequential() {
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(out);
+    sx.startDoc().startRootElement("records");
+    writeRecords(sx, 0, RECORDS);
+    sx.endDoc();
+    return out.count();
+  }
+
+  @Benchmark
+  public long fragments() {
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(out);
+    sx.startDoc().startRootElement("records");
+    int n = threads * fragmentsPerThread;
+    int per = (RECORDS + n - 1) / n;
+    List<Fragment> parts = new ArrayList<>(n);
+    for (int from = 0; from < RECORDS; from += per) {
+      final Fragment f = sx.fragment();
+      final int start = from;
+      final int end = Math.min(RECORDS, from + per);
+      parts.add(f);
+      executor.execute(() -> {
+          try {
+            writeRecords(f.writer(), start, end);
+            f.complete();
+          } catch (RuntimeException e) {
+            f.fail(e);
+          }
+        });
+    }
+    for (Fragment f : parts) {
+      sx.splice(f);
+    }
+    sx.endDoc();
+    return out.count();
+  }
+}
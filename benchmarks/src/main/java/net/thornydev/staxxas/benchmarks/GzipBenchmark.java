@@ -0,0 +1,102 @@
+package net.thornydev.staxxas.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import net.thornydev.staxxas.ParallelGzipOutputStream;
+import net.thornydev.staxxas.StaxxasStreamWriter;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end XML generation plus gzip compression, single-threaded with
+ * GZIPOutputStream ({@code gzip}) and with a ParallelGzipOutputStream on
+ * {@code threads} workers ({@code parallelGzip}).  The {@code mb} secondary
+ * result is the uncompressed XML throughput in MB/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GzipBenchmark {
+
+  static final int RECORDS = 50000;
+
+  @Param({"1", "2", "4", "8"})
+  public int threads;
+
+  @Param({"1048576"})
+  public int blockSize;
+
+  private ExecutorService executor;
+  /** size of the uncompressed document */
+  private double xmlMegabytes;
+
+  /** uncompressed megabytes written, reported per second */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Megabytes {
+    public double mb;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      mb = 0;
+    }
+  }
+
+  @Setup
+  public void setup() {
+    executor = Executors.newFixedThreadPool(threads);
+    CountingOutputStream xml = new CountingOutputStream();
+    write(new StaxxasStreamWriter(xml));
+    xmlMegabytes = xml.count() / 1e6;
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Benchmark
+  public long gzip(Megabytes m) throws IOException {
+    CountingOutputStream compressed = new CountingOutputStream();
+    write(new StaxxasStreamWriter(new GZIPOutputStream(compressed, 64 * 1024)));
+    m.mb += xmlMegabytes;
+    return compressed.count();
+  }
+
+  @Benchmark
+  public long parallelGzip(Megabytes m) {
+    CountingOutputStream compressed = new CountingOutputStream();
+    write(new StaxxasStreamWriter(
+            new ParallelGzipOutputStream(compressed, executor, threads,
+                                         blockSize, Deflater.DEFAULT_COMPRESSION)));
+    m.mb += xmlMegabytes;
+    return compressed.count();
+  }
+
+  private static void write(StaxxasStreamWriter sx) {
+    sx.startDoc().startRootElement("records");
+    FragmentBenchmark.writeRecords(sx, 0, RECORDS);
+    sx.endDoc();
+  }
+}
@@ -0,0 +1,74 @@
+package net.thornydev.staxxas.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import net.thornydev.staxxas.Name;
+import net.thornydev.staxxas.StaxxasStreamWriter;
+import net.thornydev.staxxas.StaxxasWriterPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The ATTRIBUTES document shape written with the native writer, naming
+ * elements and attributes with Strings vs. pre-encoded Name tokens.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NameBenchmark {
+
+  private static final Name ROWS = Name.of("rows");
+  private static final Name ROW = Name.of("row");
+  private static final Name[] ATTRS = new Name[Documents.ATTRS_PER_ELEMENT];
+  static {
+    for (int i = 0; i < ATTRS.length; i++) {
+      ATTRS[i] = Name.of(Documents.ATTR_NAMES[i]);
+    }
+  }
+
+  private CountingOutputStream out;
+  private StaxxasWriterPool pool;
+
+  @Setup
+  public void setup() {
+    out = new CountingOutputStream();
+    pool = new StaxxasWriterPool(1);
+  }
+
+  @Benchmark
+  public long strings() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      Documents.write(Documents.Shape.ATTRIBUTES, sx);
+    }
+    return out.count();
+  }
+
+  @Benchmark
+  public long names() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc();
+      sx.startElement(ROWS);
+      for (int i = 0; i < Documents.ATTR_ELEMENTS; i++) {
+        sx.emptyElement(ROW);
+        for (int j = 0; j < ATTRS.length; j++) {
+          sx.attribute(ATTRS[j], Documents.ATTR_VALUES[j]);
+        }
+      }
+      sx.endElement();
+      sx.endDoc();
+    }
+    return out.count();
+  }
+}
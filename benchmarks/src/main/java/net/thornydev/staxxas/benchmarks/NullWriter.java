@@ -0,0 +1,30 @@
+package net.thornydev.staxxas.benchmarks;
+
+import java.io.Writer;
+
+/**
+ * Writer that discards everything written to it but counts the chars.
+ */
+public class NullWriter extends Writer {
+  private long count;
+
+  @Override
+  public void write(char[] cbuf, int off, int len) {
+    count += len;
+  }
+
+  @Override
+  public void write(String str, int off, int len) {
+    count += len;
+  }
+
+  @Override
+  public void flush() {}
+
+  @Override
+  public void close() {}
+
+  public long count() {
+    return count;
+  }
+}
@@ -0,0 +1,92 @@
+package net.thornydev.staxxas.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.thornydev.staxxas.Name;
+import net.thornydev.staxxas.RecordWriter;
+import net.thornydev.staxxas.StaxxasStreamWriter;
+import net.thornydev.staxxas.StaxxasWriterPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes a root element wrapping {@link #RECORDS} records with a hand-written
+ * loop ({@code loop}), with {@code records} over a List ({@code iterable}) and
+ * over a parallel Stream ({@code parallelStream}), which writes batches of
+ * records as fragments on the common ForkJoinPool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordsBenchmark {
+
+  static final int RECORDS = 100000;
+
+  static final Name RECORD = Name.of("record");
+  static final Name ID = Name.of("id");
+  static final Name NAME = Name.of("name");
+  static final Name PRICE = Name.of("price");
+
+  static final RecordWriter<Integer> WRITER = (sx, i) -> {
+    sx.startElement(RECORD).attribute(ID, i);
+    sx.startElement(NAME).characters("item & name " + i).endElement();
+    sx.startElement(PRICE).characters(i * 0.25).endElement();
+    sx.endElement();
+  };
+
+  private CountingOutputStream out;
+  private StaxxasWriterPool pool;
+  private List<Integer> records;
+
+  @Setup
+  public void setup() {
+    out = new CountingOutputStream();
+    pool = new StaxxasWriterPool(1);
+    records = new ArrayList<>();
+    for (int i = 0; i < RECORDS; i++) {
+      records.add(i);
+    }
+  }
+
+  @Benchmark
+  public long loop() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc().startRootElement("records");
+      for (Integer i : records) {
+        WRITER.write(sx, i);
+      }
+      sx.endElement().endDoc();
+    }
+    return out.count();
+  }
+
+  @Benchmark
+  public long iterable() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc().records("records", records, WRITER).endDoc();
+    }
+    return out.count();
+  }
+
+  @Benchmark
+  public long parallelStream() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc().records("records", records.parallelStream(), WRITER).endDoc();
+    }
+    return out.count();
+  }
+}
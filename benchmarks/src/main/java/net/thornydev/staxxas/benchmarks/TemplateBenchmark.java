@@ -0,0 +1,105 @@
+package net.thornydev.staxxas.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.thornydev.staxxas.StaxxasStreamWriter;
+import net.thornydev.staxxas.StaxxasWriterPool;
+import net.thornydev.staxxas.Template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * An envelope document with a namespaced root, a fixed header skeleton and
+ * {@link #FIELDS} varying values, written by making every StaxxasStreamWriter
+ * call with a pooled native writer ({@code replay}) and by rendering a
+ * compiled {@link Template} ({@code template}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TemplateBenchmark {
+
+  static final int FIELDS = 24;
+
+  private static final String[] FIELD_NAMES = new String[FIELDS];
+  static {
+    for (int i = 0; i < FIELDS; i++) {
+      FIELD_NAMES[i] = "field" + i;
+    }
+  }
+
+  private CountingOutputStream out;
+  private StaxxasWriterPool pool;
+  private Template template;
+  private String[] values;
+
+  @Setup
+  public void setup() {
+    out = new CountingOutputStream();
+    Map<String,String> nsToUri = new HashMap<>();
+    nsToUri.put("env", "http://www.example.org/envelope");
+    nsToUri.put("hdr", "http://www.example.org/header");
+    pool = new StaxxasWriterPool(1, nsToUri, "http://www.example.org/body");
+    template = Template.compile(nsToUri, "http://www.example.org/body",
+                                (sx, slots) -> write(sx, slots, null));
+    values = new String[FIELDS];
+    for (int i = 0; i < FIELDS; i++) {
+      values[i] = "value " + i + (i % 5 == 0 ? " & more" : "");
+    }
+  }
+
+  /** writes the document with slots, or with values when slots is null */
+  private static void write(StaxxasStreamWriter sx, Template.Slots slots, String[] values) {
+    sx.startDoc().startRootElement("envelope");
+    sx.setCurrentNamespace("env");
+    sx.startElement("header");
+    sx.setCurrentNamespace("hdr");
+    sx.emptyElement("version").attribute("major", "2").attribute("minor", "7");
+    sx.startElement("source").characters("order-service").endElement();
+    sx.startElement("routing");
+    sx.emptyElement("hop").attribute("name", "gateway");
+    sx.emptyElement("hop").attribute("name", "broker");
+    sx.endElement();
+    sx.setCurrentNamespace("env");
+    sx.endElement();
+    sx.startElement("body");
+    sx.setCurrentNamespace(null);
+    sx.startElement("order");
+    for (int i = 0; i < FIELDS; i++) {
+      sx.startElement(FIELD_NAMES[i]);
+      if (slots == null) sx.characters(values[i]);
+      else               slots.text(FIELD_NAMES[i]);
+      sx.endElement();
+    }
+    sx.endElement();
+    sx.endDoc();
+  }
+
+  @Benchmark
+  public long replay() {
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      write(sx, null, values);
+    }
+    return out.count();
+  }
+
+  @Benchmark
+  public long template() {
+    template.render(out, values);
+    return out.count();
+  }
+}
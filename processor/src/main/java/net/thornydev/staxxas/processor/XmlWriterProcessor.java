@@ -0,0 +1,552 @@
+package net.thornydev.staxxas.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a writer class for each class annotated with
+ * {@code net.thornydev.staxxas.XmlWritable}.  The writer for {@code Order} is
+ * {@code OrderXmlWriter} in the same package (for a nested class
+ * {@code Outer.Order} it is {@code Outer_OrderXmlWriter}), with static
+ * {@code write(StaxxasStreamWriter, Order)} and
+ * {@code write(StaxxasStreamWriter, Order, Name)} methods.
+ *
+ * <p>The fields written are those of the class and of its superclasses,
+ * superclass fields first, as {@code BeanWriter} lays them out.  The generated
+ * code reads each field directly or through its getter and
+ * makes one StaxxasStreamWriter call per element, attribute and value, with
+ * every element and attribute name held in a static final pre-encoded
+ * {@code Name}.  There is no reflection at run time; the processor is only
+ * needed on the compiler's processor path.</p>
+ *
+ * <p>Field types that cannot be written, such as a nested class or collection
+ * marked {@code @XmlAttribute}, and private fields without a getter are
+ * reported as compile errors on the field, or on the class for an inherited
+ * field.</p>
+ *
+ * @author midpeter444
+ */
+@SupportedAnnotationTypes(XmlWriterProcessor.WRITABLE)
+public class XmlWriterProcessor extends AbstractProcessor {
+
+  static final String WRITABLE = "net.thornydev.staxxas.XmlWritable";
+  static final String ATTRIBUTE = "net.thornydev.staxxas.XmlAttribute";
+  static final String ELEMENT = "net.thornydev.staxxas.XmlElement";
+  static final String IGNORE = "net.thornydev.staxxas.XmlIgnore";
+
+  /** how a single value is written */
+  private enum Kind { INT, LONG, FLOAT, DOUBLE, BOOLEAN, CHAR, TEXT, ENUM, WRITABLE, OTHER }
+
+  /** a field to write and how to write it */
+  private static final class Property {
+    String access;
+    String type;
+    boolean attribute;
+    boolean reference;
+    /** for arrays and Iterables, the type of each item; otherwise null */
+    String itemType;
+    boolean itemReference;
+    Kind kind;
+    /** generated writer of a WRITABLE value */
+    String writer;
+    String nameConstant;
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+    TypeElement writable = processingEnv.getElementUtils().getTypeElement(WRITABLE);
+    if (writable == null) return false;
+    for (Element e : round.getElementsAnnotatedWith(writable)) {
+      if (e.getKind() != ElementKind.CLASS) {
+        error(e, "@XmlWritable can only be put on a class");
+        continue;
+      }
+      try {
+        generate((TypeElement) e);
+      } catch (IOException ex) {
+        error(e, "cannot write the generated writer: " + ex.getMessage());
+      }
+    }
+    return true;
+  }
+
+  /* ---[ code generation ]--- */
+
+  private void generate(TypeElement type) throws IOException {
+    AnnotationMirror ann = annotation(type, WRITABLE);
+    String elementName = stringValue(ann, "name");
+    if (elementName.isEmpty()) {
+      String simple = type.getSimpleName().toString();
+      elementName = Character.toLowerCase(simple.charAt(0)) + simple.substring(1);
+    }
+    String prefix = stringValue(ann, "prefix");
+    String uri = stringValue(ann, "uri");
+    if (!prefix.isEmpty() && uri.isEmpty()) {
+      error(type, "@XmlWritable prefix \"" + prefix + "\" needs a uri");
+      return;
+    }
+
+    Map<String,String> names = new LinkedHashMap<String,String>();
+    List<Property> attributes = new ArrayList<Property>();
+    List<Property> elements = new ArrayList<Property>();
+    boolean ok = true;
+    for (VariableElement field : fields(type)) {
+      Set<Modifier> mods = field.getModifiers();
+      if (mods.contains(Modifier.STATIC) || mods.contains(Modifier.TRANSIENT)
+          || annotation(field, IGNORE) != null) {
+        continue;
+      }
+      Property p = property(type, field);
+      if (p == null) {
+        ok = false;
+        continue;
+      }
+      String xmlName;
+      AnnotationMirror attr = annotation(field, ATTRIBUTE);
+      if (attr != null) {
+        if (p.itemType != null || p.kind == Kind.WRITABLE) {
+          error(field, "@XmlAttribute can only be put on a field with a text value");
+          ok = false;
+          continue;
+        }
+        p.attribute = true;
+        xmlName = stringValue(attr, "value");
+        if (xmlName.isEmpty()) xmlName = field.getSimpleName().toString();
+        p.nameConstant = constant(names, "A_", xmlName, "Name.of(" + literal(xmlName) + ")");
+        attributes.add(p);
+      } else {
+        AnnotationMirror elem = annotation(field, ELEMENT);
+        xmlName = elem == null ? field.getSimpleName().toString() : stringValue(elem, "value");
+        p.nameConstant = constant(names, "E_", xmlName, nameOf(prefix, xmlName, uri));
+        elements.add(p);
+      }
+    }
+    if (!ok) return;
+
+    String pkg = packageOf(type);
+    String writerName = writerName(type);
+    String typeName = typeName(type);
+    JavaFileObject file = processingEnv.getFiler().createSourceFile(
+      pkg.isEmpty() ? writerName : pkg + "." + writerName, type);
+    StringBuilder sb = new StringBuilder();
+    if (!pkg.isEmpty()) {
+      sb.append("package ").append(pkg).append(";\n\n");
+    }
+    sb.append("import net.thornydev.staxxas.Name;\n");
+    sb.append("import net.thornydev.staxxas.StaxxasStreamWriter;\n\n");
+    sb.append("/**\n");
+    sb.append(" * Writes {@link ").append(type.getQualifiedName()).append("} as XML.\n");
+    sb.append(" * Generated by staxxas-processor from the annotations on that class; do not edit.\n");
+    sb.append(" */\n");
+    String visibility = type.getModifiers().contains(Modifier.PUBLIC) ? "public " : "";
+    sb.append(visibility).append("final class ").append(writerName).append(" {\n\n");
+    sb.append("  /** the element name written by {@link #write(StaxxasStreamWriter, ")
+      .append(erasure(typeName)).append(")} */\n");
+    sb.append("  public static final Name NAME = ").append(nameOf(prefix, elementName, uri)).append(";\n\n");
+    for (Map.Entry<String,String> e : names.entrySet()) {
+      sb.append("  private static final Name ").append(e.getKey()).append(" = ")
+        .append(e.getValue()).append(";\n");
+    }
+    if (!names.isEmpty()) sb.append("\n");
+    sb.append("  private ").append(writerName).append("() {}\n\n");
+
+    sb.append("  public static StaxxasStreamWriter write(StaxxasStreamWriter sx, ")
+      .append(typeName).append(" value) {\n");
+    sb.append("    return write(sx, value, NAME);\n");
+    sb.append("  }\n\n");
+
+    sb.append("  public static StaxxasStreamWriter write(StaxxasStreamWriter sx, ")
+      .append(typeName).append(" value, Name name) {\n");
+    sb.append("    sx.startElement(name);\n");
+    int n = 0;
+    for (Property p : attributes) {
+      writeProperty(sb, p, "v" + n++);
+    }
+    for (Property p : elements) {
+      writeProperty(sb, p, "v" + n++);
+    }
+    sb.append("    return sx.endElement();\n");
+    sb.append("  }\n");
+    sb.append("}\n");
+
+    Writer out = file.openWriter();
+    try {
+      out.write(sb.toString());
+    } finally {
+      out.close();
+    }
+  }
+
+  private void writeProperty(StringBuilder sb, Property p, String v) {
+    sb.append("    ").append(p.type).append(" ").append(v).append(" = ")
+      .append(p.access).append(";\n");
+    String indent = "    ";
+    if (p.reference) {
+      sb.append("    if (").append(v).append(" != null) {\n");
+      indent = "      ";
+    }
+    if (p.itemType == null) {
+      sb.append(indent).append(write(p, v)).append(";\n");
+    } else {
+      String item = v + "i";
+      sb.append(indent).append("for (").append(p.itemType).append(" ").append(item)
+        .append(" : ").append(v).append(") {\n");
+      if (p.itemReference) {
+        sb.append(indent).append("  if (").append(item).append(" == null) continue;\n");
+      }
+      sb.append(indent).append("  ").append(write(p, item)).append(";\n");
+      sb.append(indent).append("}\n");
+    }
+    if (p.reference) {
+      sb.append("    }\n");
+    }
+  }
+
+  /** @return a statement writing one value v of the Property */
+  private String write(Property p, String v) {
+    String value;
+    switch (p.kind) {
+    case INT:
+    case LONG:
+    case DOUBLE:
+      value = v;
+      break;
+    case FLOAT:
+      // widened to double, a float would print as e.g. 14.899999618530273
+      value = "Float.toString(" + v + ")";
+      break;
+    case BOOLEAN:
+      // attribute(Name, boolean) exists but characters(boolean) does not
+      value = p.attribute ? v : "(" + v + " ? \"true\" : \"false\")";
+      break;
+    case CHAR:
+      value = "String.valueOf(" + v + ")";
+      break;
+    case TEXT:
+      value = v;
+      break;
+    case ENUM:
+      value = v + ".name()";
+      break;
+    case WRITABLE:
+      return p.writer + ".write(sx, " + v + ", " + p.nameConstant + ")";
+    default:
+      value = v + ".toString()";
+    }
+    if (p.attribute) {
+      return "sx.attribute(" + p.nameConstant + ", " + value + ")";
+    }
+    return "sx.startElement(" + p.nameConstant + ").characters(" + value + ").endElement()";
+  }
+
+  /* ---[ type model ]--- */
+
+  /** @return the fields of the class and its superclasses, superclass fields first */
+  private List<VariableElement> fields(TypeElement type) {
+    List<TypeElement> hierarchy = new ArrayList<TypeElement>();
+    for (TypeElement k = type; k != null; k = superclass(k)) {
+      hierarchy.add(0, k);
+    }
+    List<VariableElement> fields = new ArrayList<VariableElement>();
+    for (TypeElement k : hierarchy) {
+      fields.addAll(ElementFilter.fieldsIn(k.getEnclosedElements()));
+    }
+    return fields;
+  }
+
+  /** @return the superclass of a class, or null if it is Object or has none */
+  private TypeElement superclass(TypeElement type) {
+    TypeMirror s = type.getSuperclass();
+    if (s.getKind() != TypeKind.DECLARED) return null;
+    TypeElement te = (TypeElement) ((DeclaredType) s).asElement();
+    return te.getQualifiedName().contentEquals("java.lang.Object") ? null : te;
+  }
+
+  /** @return the Property for a field, or null after reporting an error */
+  private Property property(TypeElement owner, VariableElement field) {
+    Property p = new Property();
+    p.access = access(owner, field);
+    if (p.access == null) {
+      if (field.getEnclosingElement().equals(owner)) {
+        error(field, "private field " + field.getSimpleName()
+              + " needs a getter or @XmlIgnore to be written");
+      } else {
+        error(owner, "field " + field.getSimpleName() + " inherited from "
+              + ((TypeElement) field.getEnclosingElement()).getQualifiedName()
+              + " is not accessible and needs a public getter to be written");
+      }
+      return null;
+    }
+    // as a member of owner, so that a field of type T in a generic superclass
+    // takes the type argument owner gives it
+    TypeMirror t = processingEnv.getTypeUtils().asMemberOf((DeclaredType) owner.asType(), field);
+    p.type = sourceType(t);
+    p.reference = !t.getKind().isPrimitive();
+
+    TypeMirror item = itemType(t);
+    if (item != null) {
+      p.itemType = sourceType(item);
+      p.itemReference = !item.getKind().isPrimitive();
+      t = item;
+      if (itemType(t) != null) {
+        error(field, "arrays and Iterables of arrays or Iterables cannot be written");
+        return null;
+      }
+    }
+    p.kind = kind(t);
+    if (p.kind == Kind.WRITABLE) {
+      TypeElement te = (TypeElement) ((DeclaredType) t).asElement();
+      String pkg = packageOf(te);
+      p.writer = (pkg.isEmpty() ? "" : pkg + ".") + writerName(te);
+    }
+    return p;
+  }
+
+  /**
+   * @return the expression reading the field from "value", or null if it cannot be read
+   * from the generated writer, which is in the package of owner
+   */
+  private String access(TypeElement owner, VariableElement field) {
+    String name = field.getSimpleName().toString();
+    if (accessible(owner, field)) {
+      return "value." + name;
+    }
+    DeclaredType ownerType = (DeclaredType) owner.asType();
+    TypeMirror fieldType = processingEnv.getTypeUtils().asMemberOf(ownerType, field);
+    String cap = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    List<? extends Element> members = processingEnv.getElementUtils().getAllMembers(owner);
+    for (ExecutableElement m : ElementFilter.methodsIn(members)) {
+      String mname = m.getSimpleName().toString();
+      if (m.getParameters().isEmpty()
+          && accessible(owner, m)
+          && !m.getModifiers().contains(Modifier.STATIC)
+          && (mname.equals("get" + cap) || mname.equals("is" + cap))) {
+        ExecutableType mt = (ExecutableType) processingEnv.getTypeUtils().asMemberOf(ownerType, m);
+        if (processingEnv.getTypeUtils().isSameType(mt.getReturnType(), fieldType)) {
+          return "value." + mname + "()";
+        }
+      }
+    }
+    return null;
+  }
+
+  /** @return whether code in the package of owner can use the member */
+  private boolean accessible(TypeElement owner, Element member) {
+    Set<Modifier> mods = member.getModifiers();
+    if (mods.contains(Modifier.PUBLIC)) return true;
+    if (mods.contains(Modifier.PRIVATE)) return false;
+    TypeElement declaring = (TypeElement) member.getEnclosingElement();
+    return packageOf(declaring).equals(packageOf(owner));
+  }
+
+  /** @return the item type of an array or Iterable, or null for other types */
+  private TypeMirror itemType(TypeMirror t) {
+    if (t.getKind() == TypeKind.ARRAY) {
+      return ((ArrayType) t).getComponentType();
+    }
+    if (t.getKind() != TypeKind.DECLARED) return null;
+    TypeElement iterable = processingEnv.getElementUtils().getTypeElement("java.lang.Iterable");
+    for (TypeMirror s = t; s != null && s.getKind() == TypeKind.DECLARED; s = superIterable(s)) {
+      DeclaredType d = (DeclaredType) s;
+      if (d.asElement().equals(iterable)) {
+        List<? extends TypeMirror> args = d.getTypeArguments();
+        if (args.isEmpty()) {
+          return processingEnv.getElementUtils().getTypeElement("java.lang.Object").asType();
+        }
+        TypeMirror arg = args.get(0);
+        if (arg.getKind() == TypeKind.WILDCARD) {
+          TypeMirror bound = ((WildcardType) arg).getExtendsBound();
+          return bound != null ? bound
+            : processingEnv.getElementUtils().getTypeElement("java.lang.Object").asType();
+        }
+        return arg;
+      }
+    }
+    return null;
+  }
+
+  /** @return the direct supertype of t that is an Iterable, or null if there is none */
+  private TypeMirror superIterable(TypeMirror t) {
+    TypeMirror iterable = processingEnv.getTypeUtils().erasure(
+      processingEnv.getElementUtils().getTypeElement("java.lang.Iterable").asType());
+    for (TypeMirror s : processingEnv.getTypeUtils().directSupertypes(t)) {
+      if (processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(s), iterable)) {
+        return s;
+      }
+    }
+    return null;
+  }
+
+  private Kind kind(TypeMirror t) {
+    TypeMirror prim = t;
+    if (!t.getKind().isPrimitive()) {
+      try {
+        prim = processingEnv.getTypeUtils().unboxedType(t);
+      } catch (IllegalArgumentException notBoxed) {
+        prim = null;
+      }
+    }
+    if (prim != null) {
+      switch (((PrimitiveType) prim).getKind()) {
+      case BYTE:
+      case SHORT:
+      case INT:
+        return Kind.INT;
+      case LONG:
+        return Kind.LONG;
+      case FLOAT:
+        return Kind.FLOAT;
+      case DOUBLE:
+        return Kind.DOUBLE;
+      case BOOLEAN:
+        return Kind.BOOLEAN;
+      default:
+        return Kind.CHAR;
+      }
+    }
+    if (t.getKind() != TypeKind.DECLARED) return Kind.OTHER;
+    TypeElement te = (TypeElement) ((DeclaredType) t).asElement();
+    if (te.getKind() == ElementKind.ENUM) return Kind.ENUM;
+    if (annotation(te, WRITABLE) != null) return Kind.WRITABLE;
+    TypeMirror cs = processingEnv.getElementUtils().getTypeElement("java.lang.CharSequence").asType();
+    if (processingEnv.getTypeUtils().isAssignable(t, cs)) return Kind.TEXT;
+    return Kind.OTHER;
+  }
+
+  /** @return how to declare a local of type t in generated source */
+  private String sourceType(TypeMirror t) {
+    if (t.getKind() == TypeKind.TYPEVAR) {
+      return processingEnv.getTypeUtils().erasure(t).toString();
+    }
+    return t.toString();
+  }
+
+  /** @return the type of the value parameter: wildcarded if the class is generic */
+  private String typeName(TypeElement type) {
+    String name = type.getQualifiedName().toString();
+    int params = type.getTypeParameters().size();
+    if (params == 0) return name;
+    StringBuilder sb = new StringBuilder(name).append('<');
+    for (int i = 0; i < params; i++) {
+      sb.append(i == 0 ? "?" : ", ?");
+    }
+    return sb.append('>').toString();
+  }
+
+  private static String erasure(String typeName) {
+    int lt = typeName.indexOf('<');
+    return lt < 0 ? typeName : typeName.substring(0, lt);
+  }
+
+  private String packageOf(TypeElement type) {
+    PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+    return pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+  }
+
+  /** @return Order for Order, Outer_Order for Outer.Order, followed by XmlWriter */
+  private String writerName(TypeElement type) {
+    String simple = type.getSimpleName().toString();
+    for (Element e = type.getEnclosingElement(); e instanceof TypeElement; e = e.getEnclosingElement()) {
+      simple = e.getSimpleName() + "_" + simple;
+    }
+    return simple + "XmlWriter";
+  }
+
+  /* ---[ helpers ]--- */
+
+  /** @return the name of a static final Name holding the expression, adding it if new */
+  private static String constant(Map<String,String> names, String kind, String xmlName, String expr) {
+    StringBuilder sb = new StringBuilder(kind);
+    for (int i = 0; i < xmlName.length(); i++) {
+      char c = xmlName.charAt(i);
+      sb.append(Character.isJavaIdentifierPart(c) ? Character.toUpperCase(c) : '_');
+    }
+    String base = sb.toString();
+    String name = base;
+    for (int i = 2; names.containsKey(name) && !names.get(name).equals(expr); i++) {
+      name = base + "_" + i;
+    }
+    names.put(name, expr);
+    return name;
+  }
+
+  private static String nameOf(String prefix, String localName, String uri) {
+    if (prefix.isEmpty()) {
+      return "Name.of(" + literal(localName) + ")";
+    }
+    return "Name.of(" + literal(prefix) + ", " + literal(localName) + ", " + literal(uri) + ")";
+  }
+
+  private static String literal(String s) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20 || c > 0x7e) {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  private static AnnotationMirror annotation(Element e, String annotationType) {
+    for (AnnotationMirror m : e.getAnnotationMirrors()) {
+      if (((TypeElement) m.getAnnotationType().asElement()).getQualifiedName()
+          .contentEquals(annotationType)) {
+        return m;
+      }
+    }
+    return null;
+  }
+
+  private String stringValue(AnnotationMirror m, String name) {
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e
+           : processingEnv.getElementUtils().getElementValuesWithDefaults(m).entrySet()) {
+      if (e.getKey().getSimpleName().contentEquals(name)) {
+        return (String) e.getValue().getValue();
+      }
+    }
+    return "";
+  }
+
+  private void error(Element e, String msg) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, e);
+  }
+}
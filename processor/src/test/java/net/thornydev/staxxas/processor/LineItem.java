@@ -0,0 +1,18 @@
+package net.thornydev.staxxas.processor;
+
+import net.thornydev.staxxas.XmlAttribute;
+import net.thornydev.staxxas.XmlWritable;
+
+@XmlWritable
+class LineItem {
+  @XmlAttribute String sku;
+  int quantity;
+  float price;
+  StringBuilder comment;
+
+  LineItem(String sku, int quantity, float price) {
+    this.sku = sku;
+    this.quantity = quantity;
+    this.price = price;
+  }
+}
@@ -0,0 +1,37 @@
+package net.thornydev.staxxas.processor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.thornydev.staxxas.XmlAttribute;
+import net.thornydev.staxxas.XmlElement;
+import net.thornydev.staxxas.XmlIgnore;
+import net.thornydev.staxxas.XmlWritable;
+
+@XmlWritable(name = "order", prefix = "o", uri = "http://www.example.org/orders")
+public class Order {
+
+  public enum Status { NEW, SHIPPED }
+
+  static final int NOT_WRITTEN = 1;
+
+  @XmlAttribute long id;
+  @XmlAttribute("state") Status status;
+  private String customer;
+  Double discount;
+  boolean rush;
+  BigDecimal total;
+  @XmlElement("item") List<LineItem> items = new ArrayList<LineItem>();
+  @XmlElement("note") String[] notes;
+  transient int hash;
+  @XmlIgnore Object internal = new Object();
+
+  public String getCustomer() {
+    return customer;
+  }
+
+  public void setCustomer(String customer) {
+    this.customer = customer;
+  }
+}
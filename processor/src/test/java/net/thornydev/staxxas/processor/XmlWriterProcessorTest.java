@@ -0,0 +1,184 @@
+package net.thornydev.staxxas.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import net.thornydev.staxxas.BeanWriter;
+import net.thornydev.staxxas.StaxxasStreamWriter;
+import net.thornydev.staxxas.XmlWritable;
+
+import org.junit.Test;
+
+public class XmlWriterProcessorTest {
+
+  @XmlWritable(name = "point")
+  static class Point {
+    private int x;
+    private int y;
+
+    int getX() { return x; }
+    int getY() { return y; }
+  }
+
+  static class Entity<I> {
+    private I id;
+
+    public I getId() { return id; }
+  }
+
+  static class Shape extends Entity<Long> {
+    public String color;
+  }
+
+  @XmlWritable
+  static class Circle extends Shape {
+    private int radius;
+
+    public int getRadius() { return radius; }
+  }
+
+  static final String ORDER =
+    "<o:order id=\"42\" state=\"SHIPPED\"><o:customer>A &amp; B</o:customer><o:rush>true</o:rush>"
+    + "<o:total>19.90</o:total>"
+    + "<o:item sku=\"X-1\"><quantity>2</quantity><price>2.5</price><comment>fragile</comment></o:item>"
+    + "<o:item sku=\"Y-2\"><quantity>1</quantity><price>14.9</price></o:item>"
+    + "<o:note>first</o:note><o:note>third</o:note></o:order>";
+
+  private Order order() {
+    Order o = new Order();
+    o.id = 42;
+    o.status = Order.Status.SHIPPED;
+    o.setCustomer("A & B");
+    o.rush = true;
+    o.total = new BigDecimal("19.90");
+    LineItem a = new LineItem("X-1", 2, 2.5f);
+    a.comment = new StringBuilder("fragile");
+    o.items.add(a);
+    o.items.add(null);
+    o.items.add(new LineItem("Y-2", 1, 14.9f));
+    o.notes = new String[] {"first", null, "third"};
+    return o;
+  }
+
+  private Map<String,String> nsToUri() {
+    Map<String,String> m = new HashMap<String,String>();
+    m.put("o", "http://www.example.org/orders");
+    return m;
+  }
+
+  @Test
+  public void testGeneratedWriterWithNativeWriter() throws Exception {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(bout, nsToUri());
+    sx.startDoc().startRootElement("orders");
+    OrderXmlWriter.write(sx, order());
+    sx.endDoc();
+    assertEquals("<?xml version=\"1.0\" ?><orders xmlns:o=\"http://www.example.org/orders\">"
+                 + ORDER + "</orders>", bout.toString("UTF-8"));
+  }
+
+  @Test
+  public void testGeneratedWriterWithXMLStreamWriter() {
+    StringWriter sw = new StringWriter();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(sw, nsToUri());
+    sx.startDoc().startRootElement("orders");
+    OrderXmlWriter.write(sx, order());
+    sx.endDoc();
+    assertTrue(sw.toString().endsWith(ORDER + "</orders>"));
+  }
+
+  @Test
+  public void testNestedClassAndGetters() throws Exception {
+    Point p = new Point();
+    p.x = 3;
+    p.y = -4;
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(bout);
+    sx.startDoc().startRootElement("shape");
+    XmlWriterProcessorTest_PointXmlWriter.write(sx, p, XmlWriterProcessorTest_PointXmlWriter.NAME);
+    sx.endDoc();
+    assertEquals("<?xml version=\"1.0\" ?><shape><point><x>3</x><y>-4</y></point></shape>",
+                 bout.toString("UTF-8"));
+  }
+
+  @Test
+  public void testInheritedFieldsAreWrittenAsBeanWriterWritesThem() throws Exception {
+    Circle c = new Circle();
+    ((Entity<Long>) c).id = 7L;
+    c.color = "red";
+    c.radius = 5;
+    ByteArrayOutputStream generated = new ByteArrayOutputStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(generated);
+    sx.startDoc().startRootElement("shapes");
+    XmlWriterProcessorTest_CircleXmlWriter.write(sx, c);
+    sx.endDoc();
+    assertEquals("<?xml version=\"1.0\" ?><shapes>"
+                 + "<circle><id>7</id><color>red</color><radius>5</radius></circle></shapes>",
+                 generated.toString("UTF-8"));
+
+    ByteArrayOutputStream reflected = new ByteArrayOutputStream();
+    sx = new StaxxasStreamWriter(reflected);
+    sx.startDoc().startRootElement("shapes");
+    new BeanWriter().write(sx, c);
+    sx.endDoc();
+    assertEquals(reflected.toString("UTF-8"), generated.toString("UTF-8"));
+  }
+
+  /** compiles a source file with only the processor and returns the errors */
+  private String compileErrors(String className, String source) {
+    JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+    JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + className + ".java"),
+                                                   JavaFileObject.Kind.SOURCE) {
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+          return source;
+        }
+      };
+    boolean ok = javac.getTask(null, null, diagnostics,
+                               Arrays.asList("-proc:only", "-processor", XmlWriterProcessor.class.getName(),
+                                             "-classpath", System.getProperty("java.class.path")),
+                               null, Collections.singletonList(file)).call();
+    assertFalse(ok);
+    return diagnostics.getDiagnostics().toString();
+  }
+
+  @Test
+  public void testErrors() {
+    String errors = compileErrors("Bad",
+      "@net.thornydev.staxxas.XmlWritable class Bad {\n"
+      + "  private String hidden;\n"
+      + "  @net.thornydev.staxxas.XmlAttribute java.util.List<String> tags;\n"
+      + "}\n");
+    assertTrue(errors, errors.contains("private field hidden needs a getter"));
+    assertTrue(errors, errors.contains("@XmlAttribute can only be put on a field with a text value"));
+  }
+
+  @Test
+  public void testInheritedFieldWithoutGetterIsAnError() {
+    String errors = compileErrors("Sub",
+      "class Base {\n"
+      + "  private String hidden;\n"
+      + "}\n"
+      + "@net.thornydev.staxxas.XmlWritable class Sub extends Base {\n"
+      + "  int shown;\n"
+      + "}\n");
+    assertTrue(errors, errors.contains("field hidden inherited from Base is not accessible"));
+  }
+}
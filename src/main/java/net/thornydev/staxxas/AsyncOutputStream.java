@@ -0,0 +1,290 @@
+package net.thornydev.staxxas;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An OutputStream that moves the actual I/O off the calling thread.  Bytes are
+ * written into one of a fixed number of buffers; when it fills up, it is handed
+ * to a dedicated I/O thread that drains it to the target OutputStream while the
+ * caller carries on filling the next free buffer.
+ *
+ * <p>Give one to a StaxxasStreamWriter to serialize asynchronously:
+ * {@literal
+ *     StaxxasStreamWriter sx = new StaxxasStreamWriter(new AsyncOutputStream(socketOut));
+ * }
+ * {@link StaxxasStreamWriter#endDoc()} closes the stream, which does not return
+ * until every buffer has been written to the target and the target has been
+ * flushed and closed.</p>
+ *
+ * <h6>Backpressure</h6>
+ * <p>At most {@code bufferCount} buffers of {@code bufferSize} bytes are ever
+ * in use.  When all of them are waiting to be written, the writing thread
+ * blocks until the I/O thread hands one back.</p>
+ *
+ * <h6>Errors</h6>
+ * <p>If writing to the target fails, the I/O thread stops writing and the failure
+ * is rethrown, as the cause of an IOException, from the next {@code write},
+ * {@code flush} or {@code close} call that hands off or waits on a buffer.
+ * A StaxxasStreamWriter reports it as a {@link StaxxasStreamWriterException}
+ * as with any other I/O error.  The same goes for an Error thrown by the target
+ * and for the I/O thread being interrupted, so the writing thread never waits
+ * on a buffer that will not come back.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>Like other OutputStreams, this class is meant to be written to by one
+ * thread at a time.  Each instance starts its own daemon I/O thread, which
+ * ends when the stream is closed.</p>
+ *
+ * @author midpeter444
+ */
+public class AsyncOutputStream extends OutputStream {
+
+  static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  static final int DEFAULT_BUFFER_COUNT = 2;
+
+  /** handed to the I/O thread to tell it to stop */
+  private static final Chunk STOP = new Chunk(0);
+
+  private static final class Chunk {
+    final byte[] data;
+    int len;
+
+    Chunk(int size) {
+      data = new byte[size];
+    }
+  }
+
+  private final OutputStream out;
+  private final int bufferCount;
+  private final BlockingQueue<Chunk> filled;
+  private final BlockingQueue<Chunk> free;
+  private final Thread ioThread;
+
+  /** how long to wait for a free buffer before checking the I/O thread is alive */
+  private static final long POLL_MILLIS = 100;
+
+  /** first exception thrown by the target; set by the I/O thread */
+  private volatile Throwable failure;
+
+  /** set by the I/O thread as it exits, for any reason */
+  private volatile boolean ioStopped;
+
+  /** the buffer currently being filled by the writing thread */
+  private Chunk current;
+  private boolean closed;
+
+  /**
+   * Creates an AsyncOutputStream with two 64 KiB buffers.
+   *
+   * @param out the OutputStream written to by the I/O thread
+   */
+  public AsyncOutputStream(OutputStream out) {
+    this(out, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+  }
+
+  /**
+   * @param out the OutputStream written to by the I/O thread
+   * @param bufferSize size in bytes of each buffer
+   * @param bufferCount number of buffers, at least 2: one being filled while
+   * the others are written
+   */
+  public AsyncOutputStream(OutputStream out, int bufferSize, int bufferCount) {
+    if (out == null) {
+      throw new IllegalArgumentException("OutputStream cannot be null");
+    }
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException("bufferSize must be at least 1: " + bufferSize);
+    }
+    if (bufferCount < 2) {
+      throw new IllegalArgumentException("bufferCount must be at least 2: " + bufferCount);
+    }
+    this.out = out;
+    this.bufferCount = bufferCount;
+    // both queues can hold every chunk plus STOP, so the I/O thread never blocks on put
+    filled = new ArrayBlockingQueue<Chunk>(bufferCount + 1);
+    free = new ArrayBlockingQueue<Chunk>(bufferCount);
+    current = new Chunk(bufferSize);
+    for (int i = 1; i < bufferCount; i++) {
+      free.add(new Chunk(bufferSize));
+    }
+    ioThread = new Thread(new Runnable() {
+        public void run() {
+          drain();
+        }
+      }, "staxxas-async-io");
+    ioThread.setDaemon(true);
+    ioThread.start();
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    if (current.len == current.data.length) {
+      handOff();
+    }
+    current.data[current.len++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    while (len > 0) {
+      if (current.len == current.data.length) {
+        handOff();
+      }
+      int n = Math.min(len, current.data.length - current.len);
+      System.arraycopy(b, off, current.data, current.len, n);
+      current.len += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Hands off the current buffer, waits until all buffers have been written
+   * and then flushes the target.
+   */
+  @Override
+  public void flush() throws IOException {
+    ensureOpen();
+    awaitWritten();
+    out.flush();
+  }
+
+  /**
+   * Writes out everything buffered, flushes and closes the target and stops
+   * the I/O thread.  The target is closed even if writing to it failed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) return;
+    try {
+      awaitWritten();
+      out.flush();
+    } finally {
+      closed = true;
+      try {
+        filled.add(STOP);
+        joinIoThread();
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  /* ---[ private methods ]--- */
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  /**
+   * Queues the current buffer for writing and takes a free one, blocking
+   * while none is free.
+   */
+  private void handOff() throws IOException {
+    checkFailure();
+    filled.add(current);
+    current = takeFree();
+    checkFailure();
+  }
+
+  /**
+   * Queues the current buffer if it has anything in it and then takes back
+   * every buffer, which can only happen once the I/O thread has finished with
+   * them all.  The I/O thread is then idle, so the target can be used directly.
+   */
+  private void awaitWritten() throws IOException {
+    if (current.len > 0) {
+      filled.add(current);
+      current = takeFree();
+    }
+    Chunk[] held = new Chunk[bufferCount - 1];
+    for (int i = 0; i < held.length; i++) {
+      held[i] = takeFree();
+    }
+    for (Chunk c : held) {
+      free.add(c);
+    }
+    checkFailure();
+  }
+
+  /**
+   * Takes a free buffer, waiting while none is.  If the I/O thread has
+   * stopped, any buffers it still held will never come back, so rather than
+   * waiting forever the failure that stopped it is thrown.
+   */
+  private Chunk takeFree() throws IOException {
+    try {
+      while (true) {
+        Chunk c = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (c != null) {
+          c.len = 0;
+          return c;
+        }
+        if (ioStopped && free.isEmpty()) {
+          checkFailure();
+          throw new IOException("Asynchronous write failed: the I/O thread has stopped");
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for a free buffer");
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    Throwable e = failure;
+    if (e != null) {
+      throw new IOException("Asynchronous write failed", e);
+    }
+  }
+
+  private void joinIoThread() throws IOException {
+    try {
+      ioThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for the I/O thread to stop");
+    }
+  }
+
+  /**
+   * Body of the I/O thread.  After a failure, buffers are handed straight back
+   * without being written so that the writing thread never waits forever.
+   * If the thread is interrupted, {@code ioStopped} lets the writing thread
+   * see that buffers still queued will not be handed back.
+   */
+  private void drain() {
+    try {
+      while (true) {
+        Chunk c = filled.take();
+        if (c == STOP) return;
+        if (failure == null) {
+          try {
+            out.write(c.data, 0, c.len);
+          } catch (Throwable e) {
+            failure = e;
+          }
+        }
+        free.add(c);
+      }
+    } catch (InterruptedException e) {
+      if (failure == null) {
+        failure = new InterruptedIOException("I/O thread interrupted");
+      }
+    } finally {
+      ioStopped = true;
+    }
+  }
+}
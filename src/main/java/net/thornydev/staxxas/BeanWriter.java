@@ -0,0 +1,315 @@
+package net.thornydev.staxxas;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Writes arbitrary objects, such as classes from other libraries that cannot be
+ * annotated for the {@link XmlWritable} processor, as XML elements.
+ *
+ * <p>Each class is inspected once to build a plan: a list of its properties,
+ * each with a {@link MethodHandle} getter and a pre-encoded {@link Name}.  The plan is
+ * cached and reused for every instance of the class, so writing an object costs
+ * one handle invocation and one StaxxasStreamWriter call per property:
+ * {@literal
+ *     BeanWriter beans = new BeanWriter();   // keep one and share it
+ *     ...
+ *     sx.startDoc().startRootElement("orders");
+ *     for (Order o : orders) {
+ *       beans.write(sx, o);     // <order><id>1</id><customer>...</customer>...</order>
+ *     }
+ *     sx.endDoc();
+ * }
+ * </p>
+ *
+ * <p>The properties of a class are its non-static, non-transient fields,
+ * superclass fields first, then in declaration order, that are public or have a
+ * public {@code getX()}, {@code isX()} or record-style {@code x()} getter.  Each is
+ * written as a child element named after the field, the same layout the
+ * generated writers use.  Null values are skipped.  Primitives, their
+ * wrappers, CharSequences and enums are written as text; Iterables and arrays
+ * as repeated elements; other classes in the {@code java.} and {@code javax.}
+ * packages with {@code toString()}; and any other object as a nested element
+ * with its own plan.  The object graph must not have cycles.</p>
+ *
+ * <p>The plan cache is bounded: once it holds {@code maxCachedClasses} plans,
+ * an arbitrary plan is dropped to make room for each new one, and is rebuilt
+ * if its class is written again.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>This class is thread-safe.  Plans are immutable and the cache can be used
+ * by many threads at once.</p>
+ *
+ * @author midpeter444
+ */
+public final class BeanWriter {
+
+  /* how a property value is read and written */
+  private static final int INT = 0;
+  private static final int LONG = 1;
+  private static final int FLOAT = 2;
+  private static final int DOUBLE = 3;
+  private static final int BOOLEAN = 4;
+  private static final int CHAR = 5;
+  private static final int OBJECT = 6;
+
+  /** a property of a class: its element name and a getter adapted to (Object) */
+  private static final class Property {
+    final Name name;
+    final int kind;
+    final MethodHandle getter;
+
+    Property(Name name, int kind, MethodHandle getter) {
+      this.name = name;
+      this.kind = kind;
+      this.getter = getter;
+    }
+  }
+
+  /** the cached plan for one class */
+  private static final class Plan {
+    final Name name;
+    final Property[] properties;
+
+    Plan(Name name, Property[] properties) {
+      this.name = name;
+      this.properties = properties;
+    }
+  }
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private final ConcurrentMap<Class<?>,Plan> plans = new ConcurrentHashMap<Class<?>,Plan>();
+  private final int maxCachedClasses;
+
+  /**
+   * Creates a BeanWriter that caches plans for up to 256 classes.
+   */
+  public BeanWriter() {
+    this(256);
+  }
+
+  /**
+   * @param maxCachedClasses maximum number of class plans kept
+   */
+  public BeanWriter(int maxCachedClasses) {
+    if (maxCachedClasses < 1) {
+      throw new IllegalArgumentException("maxCachedClasses must be at least 1: " + maxCachedClasses);
+    }
+    this.maxCachedClasses = maxCachedClasses;
+  }
+
+  /**
+   * Writes an object as an element named after its class, with the first
+   * letter lower-cased.
+   *
+   * @param sx the StaxxasStreamWriter to write with
+   * @param bean object to write.  Nothing is written if it is null.
+   * @return the StaxxasStreamWriter passed in, to allow method chaining
+   * @throws StaxxasStreamWriterException (RuntimeException) if a getter throws a
+   * checked exception or the underlying StAX library throws an XMLStreamException
+   */
+  public StaxxasStreamWriter write(StaxxasStreamWriter sx, Object bean) {
+    if (bean == null) return sx;
+    return write(sx, bean, plan(bean.getClass()).name);
+  }
+
+  /**
+   * Writes an object as an element with the name passed in.
+   *
+   * @param sx the StaxxasStreamWriter to write with
+   * @param bean object to write.  Nothing is written if it is null.
+   * @param name element name
+   * @return the StaxxasStreamWriter passed in, to allow method chaining
+   * @throws StaxxasStreamWriterException (RuntimeException) if a getter throws a
+   * checked exception or the underlying StAX library throws an XMLStreamException
+   */
+  public StaxxasStreamWriter write(StaxxasStreamWriter sx, Object bean, Name name) {
+    if (bean != null) {
+      writeValue(sx, name, bean);
+    }
+    return sx;
+  }
+
+  /**
+   * @return the number of class plans currently cached
+   */
+  int cachedPlans() {
+    return plans.size();
+  }
+
+  /* ---[ writing ]--- */
+
+  private void writeBean(StaxxasStreamWriter sx, Name name, Object bean, Plan plan) {
+    sx.startElement(name);
+    for (Property p : plan.properties) {
+      try {
+        switch (p.kind) {
+        case INT:
+          sx.startElement(p.name).characters((int) p.getter.invokeExact(bean)).endElement();
+          break;
+        case LONG:
+          sx.startElement(p.name).characters((long) p.getter.invokeExact(bean)).endElement();
+          break;
+        case FLOAT:
+          float f = (float) p.getter.invokeExact(bean);
+          sx.startElement(p.name).characters(Float.toString(f)).endElement();
+          break;
+        case DOUBLE:
+          sx.startElement(p.name).characters((double) p.getter.invokeExact(bean)).endElement();
+          break;
+        case BOOLEAN:
+          boolean b = (boolean) p.getter.invokeExact(bean);
+          sx.startElement(p.name).characters(b ? "true" : "false").endElement();
+          break;
+        case CHAR:
+          char c = (char) p.getter.invokeExact(bean);
+          sx.startElement(p.name).characters(String.valueOf(c)).endElement();
+          break;
+        default:
+          Object v = (Object) p.getter.invokeExact(bean);
+          if (v != null) {
+            writeValue(sx, p.name, v);
+          }
+        }
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new StaxxasStreamWriterException("BeanWriter.write", "getter of " + p.name.getLocalName(), t);
+      }
+    }
+    sx.endElement();
+  }
+
+  private void writeValue(StaxxasStreamWriter sx, Name name, Object v) {
+    if (v instanceof String) {
+      sx.startElement(name).characters((String) v).endElement();
+    } else if (v instanceof CharSequence) {
+      sx.startElement(name).characters((CharSequence) v).endElement();
+    } else if (v instanceof Integer || v instanceof Short || v instanceof Byte) {
+      sx.startElement(name).characters(((Number) v).intValue()).endElement();
+    } else if (v instanceof Long) {
+      sx.startElement(name).characters(((Long) v).longValue()).endElement();
+    } else if (v instanceof Double) {
+      sx.startElement(name).characters(((Double) v).doubleValue()).endElement();
+    } else if (v instanceof Enum) {
+      sx.startElement(name).characters(((Enum<?>) v).name()).endElement();
+    } else if (v instanceof Iterable) {
+      for (Iterator<?> it = ((Iterable<?>) v).iterator(); it.hasNext(); ) {
+        Object item = it.next();
+        if (item != null) writeValue(sx, name, item);
+      }
+    } else if (v instanceof Object[]) {
+      for (Object item : (Object[]) v) {
+        if (item != null) writeValue(sx, name, item);
+      }
+    } else if (v.getClass().isArray()) {
+      for (int i = 0, n = Array.getLength(v); i < n; i++) {
+        writeValue(sx, name, Array.get(v, i));
+      }
+    } else if (isValueClass(v.getClass())) {
+      // Float, Boolean, Character, BigDecimal, dates, URIs, ...
+      sx.startElement(name).characters(v.toString()).endElement();
+    } else {
+      writeBean(sx, name, v, plan(v.getClass()));
+    }
+  }
+
+  private static boolean isValueClass(Class<?> c) {
+    String n = c.getName();
+    return n.startsWith("java.") || n.startsWith("javax.");
+  }
+
+  /* ---[ plans ]--- */
+
+  private Plan plan(Class<?> c) {
+    Plan plan = plans.get(c);
+    if (plan != null) return plan;
+    plan = buildPlan(c);
+    if (plans.size() >= maxCachedClasses) {
+      // make room by dropping an arbitrary plan
+      Iterator<Class<?>> it = plans.keySet().iterator();
+      if (it.hasNext()) {
+        it.next();
+        it.remove();
+      }
+    }
+    Plan prev = plans.putIfAbsent(c, plan);
+    return prev != null ? prev : plan;
+  }
+
+  private static Plan buildPlan(Class<?> c) {
+    List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+    for (Class<?> k = c; k != null && k != Object.class; k = k.getSuperclass()) {
+      hierarchy.add(0, k);
+    }
+    List<Property> props = new ArrayList<Property>();
+    for (Class<?> k : hierarchy) {
+      for (Field f : k.getDeclaredFields()) {
+        int mods = f.getModifiers();
+        if (Modifier.isStatic(mods) || Modifier.isTransient(mods) || f.isSynthetic()) continue;
+        MethodHandle getter = getter(c, f);
+        if (getter == null) continue;
+        Class<?> t = f.getType();
+        int kind;
+        if (t == int.class || t == short.class || t == byte.class) kind = INT;
+        else if (t == long.class)    kind = LONG;
+        else if (t == float.class)   kind = FLOAT;
+        else if (t == double.class)  kind = DOUBLE;
+        else if (t == boolean.class) kind = BOOLEAN;
+        else if (t == char.class)    kind = CHAR;
+        else                         kind = OBJECT;
+        Class<?> rtype = kind == INT ? int.class : kind == OBJECT ? Object.class : t;
+        props.add(new Property(Name.of(f.getName()), kind,
+                               getter.asType(MethodType.methodType(rtype, Object.class))));
+      }
+    }
+    String simple = c.getSimpleName();
+    if (simple.isEmpty()) simple = "object";  // anonymous classes
+    Name name = Name.of(Character.toLowerCase(simple.charAt(0)) + simple.substring(1));
+    return new Plan(name, props.toArray(new Property[props.size()]));
+  }
+
+  /** @return a getter for the field, or null if it is not public and has no public getter */
+  private static MethodHandle getter(Class<?> c, Field f) {
+    String n = f.getName();
+    String cap = Character.toUpperCase(n.charAt(0)) + n.substring(1);
+    try {
+      for (String mname : new String[] {"get" + cap, "is" + cap, n}) {
+        Method m;
+        try {
+          m = c.getMethod(mname);
+        } catch (NoSuchMethodException e) {
+          continue;
+        }
+        if (!Modifier.isStatic(m.getModifiers()) && m.getReturnType() == f.getType()) {
+          // public methods of non-public classes are only reachable once accessible
+          m.setAccessible(true);
+          return LOOKUP.unreflect(m);
+        }
+      }
+      if (Modifier.isPublic(f.getModifiers())) {
+        f.setAccessible(true);
+        return LOOKUP.unreflectGetter(f);
+      }
+    } catch (IllegalAccessException e) {
+      return null;
+    } catch (RuntimeException e) {
+      // members of classes in modules closed to this library
+      return null;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,204 @@
+package net.thornydev.staxxas;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An OutputStream that writes to an NIO {@link WritableByteChannel}.  Bytes are
+ * collected in a set of ByteBuffers, direct by default, which are written with
+ * a single gathering write once they are all full (or on flush and close).
+ *
+ * <p>The {@link StaxxasStreamWriter} constructors that take a channel use this
+ * class with the native {@link Utf8XMLStreamWriter}, so XML is encoded once,
+ * straight to bytes, rather than going through {@code Channels.newWriter}.</p>
+ *
+ * <h6>Non-blocking channels</h6>
+ * <p>A channel in non-blocking mode may accept only part of the bytes, or none,
+ * on each write.  The rest stay in the buffers and are written as the channel
+ * becomes writable.  For a {@link SelectableChannel} this class waits on its
+ * own {@link Selector} rather than spinning.  Either way, {@code write} and
+ * {@code flush} return only once the buffers have room again, as an OutputStream must.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author midpeter444
+ */
+public class ChannelOutputStream extends OutputStream {
+
+  static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+  static final int DEFAULT_BUFFER_COUNT = 4;
+
+  private final WritableByteChannel channel;
+  private final ByteBuffer[] buffers;
+  /** index of the buffer being filled */
+  private int current;
+  private Selector selector;
+  private boolean closed;
+
+  /**
+   * Creates a ChannelOutputStream with four 16 KiB direct buffers.
+   *
+   * @param channel the channel to write to
+   */
+  public ChannelOutputStream(WritableByteChannel channel) {
+    this(channel, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT, true);
+  }
+
+  /**
+   * @param channel the channel to write to
+   * @param bufferSize size in bytes of each buffer
+   * @param bufferCount number of buffers written together in each gathering write
+   * @param direct whether to allocate direct ByteBuffers, which channels can
+   * write without first copying them
+   */
+  public ChannelOutputStream(WritableByteChannel channel, int bufferSize,
+                             int bufferCount, boolean direct) {
+    if (channel == null) {
+      throw new IllegalArgumentException("channel cannot be null");
+    }
+    if (bufferSize < 1 || bufferCount < 1) {
+      throw new IllegalArgumentException("bufferSize and bufferCount must be at least 1: "
+                                         + bufferSize + ", " + bufferCount);
+    }
+    this.channel = channel;
+    buffers = new ByteBuffer[bufferCount];
+    for (int i = 0; i < bufferCount; i++) {
+      buffers[i] = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    nextBufferIfFull();
+    buffers[current].put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    while (len > 0) {
+      nextBufferIfFull();
+      ByteBuffer bb = buffers[current];
+      int n = Math.min(len, bb.remaining());
+      bb.put(b, off, n);
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Writes everything buffered to the channel.
+   */
+  @Override
+  public void flush() throws IOException {
+    ensureOpen();
+    drain();
+  }
+
+  /**
+   * Writes everything buffered and closes the channel.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) return;
+    closed = true;
+    try {
+      drain();
+    } finally {
+      try {
+        if (selector != null) selector.close();
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+  /* ---[ private methods ]--- */
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  private void nextBufferIfFull() throws IOException {
+    if (!buffers[current].hasRemaining()) {
+      if (current + 1 < buffers.length) {
+        current++;
+      } else {
+        drain();
+      }
+    }
+  }
+
+  /**
+   * Writes buffers 0 to current, with gathering writes if the channel supports
+   * them, until nothing is left, then readies them for filling again.  If a
+   * write fails, the bytes not yet written are compacted to the front of their
+   * buffers, so that the buffers are back to being filled and a later flush
+   * writes exactly what is left.
+   */
+  private void drain() throws IOException {
+    int count = current + 1;
+    long remaining = 0;
+    for (int i = 0; i < count; i++) {
+      buffers[i].flip();
+      remaining += buffers[i].remaining();
+    }
+    boolean drained = false;
+    try {
+      int first = 0;
+      while (remaining > 0) {
+        long n;
+        if (channel instanceof GatheringByteChannel) {
+          n = ((GatheringByteChannel) channel).write(buffers, first, count - first);
+        } else {
+          n = channel.write(buffers[first]);
+        }
+        remaining -= n;
+        while (first < count && !buffers[first].hasRemaining()) {
+          first++;
+        }
+        if (n == 0 && remaining > 0) {
+          awaitWritable();
+        }
+      }
+      drained = true;
+    } finally {
+      for (int i = 0; i < count; i++) {
+        if (drained) {
+          buffers[i].clear();
+        } else {
+          buffers[i].compact();
+        }
+      }
+      if (drained) {
+        current = 0;
+      }
+    }
+  }
+
+  private void awaitWritable() throws IOException {
+    if (!(channel instanceof SelectableChannel) || ((SelectableChannel) channel).isBlocking()) {
+      Thread.yield();
+      return;
+    }
+    if (selector == null) {
+      selector = Selector.open();
+      ((SelectableChannel) channel).register(selector, SelectionKey.OP_WRITE);
+    }
+    selector.select();
+    selector.selectedKeys().clear();
+  }
+}
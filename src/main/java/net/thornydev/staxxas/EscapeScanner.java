@@ -0,0 +1,152 @@
+package net.thornydev.staxxas;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Word-at-a-time (SWAR) scanning for the bytes that need escaping in UTF-8
+ * text and attribute values.  Instead of looking up every byte in an escape
+ * table, bytes are packed eight to a long and each word is tested for
+ * {@code & < >}, and {@code "} in attribute values, with a handful of
+ * arithmetic operations, so the runs between them can be found quickly and
+ * copied with {@code System.arraycopy}.
+ *
+ * <p>The same packing counts the chars in pre-encoded text for the metrics.</p>
+ *
+ * <p>Control chars are not looked for: like the JDK's XMLStreamWriter, the
+ * native writer passes them through unescaped.</p>
+ *
+ * <p>Chars are not scanned this way.  Packing four 16-bit chars to a word
+ * measured no faster than the table lookup loop in
+ * {@link Utf8XMLStreamWriter}, which the JIT compiles well, and slower on text
+ * with many escapes; see EscapeBenchmark.</p>
+ *
+ * @author midpeter444
+ */
+final class EscapeScanner {
+
+  /* the bytes to find, repeated in each 8-bit lane */
+  private static final long AMP_BYTES = 0x2626262626262626L;
+  private static final long LT_BYTES = 0x3C3C3C3C3C3C3C3CL;
+  private static final long GT_BYTES = 0x3E3E3E3E3E3E3E3EL;
+  private static final long QUOT_BYTES = 0x2222222222222222L;
+
+  private static final long LOW7_8 = 0x7F7F7F7F7F7F7F7FL;
+  private static final long HIGH_8 = 0x8080808080808080L;
+
+  private EscapeScanner() {}
+
+  /**
+   * @return b[i] to b[i+7] packed into a long, b[i] in the lowest byte
+   */
+  static long pack(byte[] b, int i) {
+    return (b[i] & 0xFFL) | (b[i + 1] & 0xFFL) << 8 | (b[i + 2] & 0xFFL) << 16
+      | (b[i + 3] & 0xFFL) << 24 | (b[i + 4] & 0xFFL) << 32 | (b[i + 5] & 0xFFL) << 40
+      | (b[i + 6] & 0xFFL) << 48 | (b[i + 7] & 0xFFL) << 56;
+  }
+
+  /**
+   * @return the high bit of every byte of w that is 0, and no others
+   */
+  private static long zeroBytes(long w) {
+    return ~(((w & LOW7_8) + LOW7_8) | w | LOW7_8);
+  }
+
+  /**
+   * Finds the next UTF-8 byte that needs escaping.  Bytes of multi-byte
+   * sequences are never flagged since they are all 0x80 or above.
+   *
+   * @param b UTF-8 bytes
+   * @param from index to start at
+   * @param end index to stop at
+   * @return index of the next byte to escape, or end if there is none
+   */
+  static int nextSpecialByte(byte[] b, int from, int end) {
+    int i = from;
+    for (; i + 8 <= end; i += 8) {
+      long w = pack(b, i);
+      long m = zeroBytes(w ^ AMP_BYTES) | zeroBytes(w ^ LT_BYTES) | zeroBytes(w ^ GT_BYTES);
+      if (m != 0) {
+        return i + (Long.numberOfTrailingZeros(m) >>> 3);
+      }
+    }
+    for (; i < end; i++) {
+      byte c = b[i];
+      if (c == '&' || c == '<' || c == '>') {
+        return i;
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Finds the next UTF-8 byte that needs escaping in an attribute value:
+   * as {@link #nextSpecialByte(byte[], int, int)} with {@code "} as well.
+   *
+   * @param b UTF-8 bytes
+   * @param from index to start at
+   * @param end index to stop at
+   * @return index of the next byte to escape, or end if there is none
+   */
+  static int nextSpecialAttributeByte(byte[] b, int from, int end) {
+    int i = from;
+    for (; i + 8 <= end; i += 8) {
+      long w = pack(b, i);
+      long m = zeroBytes(w ^ AMP_BYTES) | zeroBytes(w ^ LT_BYTES) | zeroBytes(w ^ GT_BYTES)
+        | zeroBytes(w ^ QUOT_BYTES);
+      if (m != 0) {
+        return i + (Long.numberOfTrailingZeros(m) >>> 3);
+      }
+    }
+    for (; i < end; i++) {
+      byte c = b[i];
+      if (c == '&' || c == '<' || c == '>' || c == '"') {
+        return i;
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Counts the chars that UTF-8 bytes decode to, as {@code String.length()}
+   * would, eight bytes at a time: every byte that is not a continuation byte
+   * starts a char, and the lead byte of a four byte sequence starts two.
+   *
+   * @param b UTF-8 bytes
+   * @param off index of the first byte
+   * @param len number of bytes
+   * @return number of UTF-16 chars
+   */
+  static long utf16Length(byte[] b, int off, int len) {
+    final int end = off + len;
+    long continuations = 0;
+    long supplementary = 0;
+    int i = off;
+    for (; i + 8 <= end; i += 8) {
+      long w = pack(b, i);
+      if ((w & HIGH_8) == 0) continue;
+      // 10xxxxxx and 1111xxxx in each lane, tested in the lane's high bit
+      continuations += Long.bitCount(w & ~(w << 1) & HIGH_8);
+      supplementary += Long.bitCount(w & (w << 1) & (w << 2) & (w << 3) & HIGH_8);
+    }
+    for (; i < end; i++) {
+      int c = b[i] & 0xFF;
+      if ((c & 0xC0) == 0x80) continuations++;
+      else if (c >= 0xF0) supplementary++;
+    }
+    return len - continuations + supplementary;
+  }
+
+  /**
+   * As {@link #utf16Length(byte[], int, int)} for the bytes from the position
+   * of a ByteBuffer to its limit.
+   */
+  static long utf16Length(ByteBuffer b) {
+    long n = 0;
+    for (int i = b.position(); i < b.limit(); i++) {
+      int c = b.get(i) & 0xFF;
+      if ((c & 0xC0) != 0x80) n++;
+      if (c >= 0xF0) n++;
+    }
+    return n;
+  }
+}
@@ -0,0 +1,178 @@
+package net.thornydev.staxxas;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * A piece of an XML document written on its own, typically on a worker thread,
+ * and later spliced into the document it was created for.
+ *
+ * <p>Fragments let a document with many independent subtrees, such as one root
+ * element with a very large number of records, be serialized on several cores:
+ * {@literal
+ *     sx.startDoc().startRootElement("records");
+ *     List<Fragment> parts = new ArrayList<Fragment>();
+ *     for (final List<Record> batch : batches) {
+ *       final Fragment f = sx.fragment();
+ *       parts.add(f);
+ *       executor.execute(new Runnable() {
+ *         public void run() {
+ *           try {
+ *             for (Record r : batch) write(f.writer(), r);
+ *             f.complete();
+ *           } catch (RuntimeException e) {
+ *             f.fail(e);
+ *           }
+ *         }
+ *       });
+ *     }
+ *     for (Fragment f : parts) sx.splice(f);  // document order
+ *     sx.endDoc();
+ * }
+ * </p>
+ *
+ * <p>The fragment's writer is a StaxxasStreamWriter that writes with the native
+ * {@link Utf8XMLStreamWriter} into an in-memory buffer.  It shares its parent's
+ * namespace mappings, treating them as already declared, so prefixed elements
+ * and attributes are written without repeating namespace declarations.  It
+ * starts out with the parent's current namespace.  The parent's namespace
+ * mappings should not be changed while fragments are being written.</p>
+ *
+ * <p>A fragment should contain only complete elements, text and comments. Its
+ * writer's {@code startDoc} and {@code endDoc} methods should not be called.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>The fragment's writer may be used by one thread at a time.  Everything
+ * written before {@link #complete()} is visible to the thread that calls
+ * {@link StaxxasStreamWriter#splice(Fragment)}.</p>
+ *
+ * @author midpeter444
+ */
+public final class Fragment {
+
+  /** ByteArrayOutputStream that hands out its array rather than a copy */
+  static final class Buffer extends ByteArrayOutputStream {
+    Buffer(int size) {
+      super(size);
+    }
+
+    byte[] array() {
+      return buf;
+    }
+
+    int length() {
+      return count;
+    }
+  }
+
+  private static final int INITIAL_SIZE = 4096;
+
+  final StaxxasStreamWriter parent;
+  private final Buffer buffer;
+  private final Utf8XMLStreamWriter engine;
+  private final StaxxasStreamWriter writer;
+  private final CountDownLatch done = new CountDownLatch(1);
+  private volatile Throwable failure;
+
+  Fragment(StaxxasStreamWriter parent, Map<String,String> nsToUri,
+           String currNamespace, String defaultNamespace) {
+    this.parent = parent;
+    buffer = new Buffer(INITIAL_SIZE);
+    engine = new Utf8XMLStreamWriter(buffer);
+    try {
+      // declared by the parent: bind without writing them
+      for (Map.Entry<String,String> e : nsToUri.entrySet()) {
+        engine.setPrefix(e.getKey(), e.getValue());
+      }
+      if (defaultNamespace != null) {
+        engine.setDefaultNamespace(defaultNamespace);
+      }
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("fragment", "setPrefix", e);
+    }
+    writer = new StaxxasStreamWriter(engine, Collections.unmodifiableMap(nsToUri));
+    writer.setDefaultNamespace(defaultNamespace);
+    if (currNamespace != null) {
+      writer.setCurrentNamespace(currNamespace);
+    }
+  }
+
+  /**
+   * @return the StaxxasStreamWriter to write this fragment with
+   */
+  public StaxxasStreamWriter writer() {
+    return writer;
+  }
+
+  /**
+   * Marks the fragment as finished, allowing it to be spliced into its parent.
+   */
+  public void complete() {
+    try {
+      engine.flush();
+    } catch (XMLStreamException e) {
+      // cannot happen writing to memory, but don't leave the parent waiting
+      failure = e;
+    } finally {
+      done.countDown();
+    }
+  }
+
+  /**
+   * Marks the fragment as failed.  Splicing it throws a StaxxasStreamWriterException
+   * with the cause passed in.
+   *
+   * @param cause the reason the fragment could not be written
+   */
+  public void fail(Throwable cause) {
+    failure = cause;
+    done.countDown();
+  }
+
+  /**
+   * @return true if {@link #complete()} or {@link #fail(Throwable)} has been called
+   */
+  public boolean isDone() {
+    return done.getCount() == 0;
+  }
+
+  /**
+   * Blocks until the fragment is done.  The wait goes through
+   * {@link ForkJoinPool#managedBlock}, so that a ForkJoinPool splicing on one
+   * of its own threads can add a thread to run the fragment's writer if that
+   * is queued behind the splice.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   * @return the failure passed to {@code fail}, or null if the fragment completed
+   */
+  Throwable await() throws InterruptedException {
+    if (done.getCount() > 0) {
+      ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+        @Override
+        public boolean block() throws InterruptedException {
+          done.await();
+          return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+          return done.getCount() == 0;
+        }
+      });
+    }
+    return failure;
+  }
+
+  byte[] bytes() {
+    return buffer.array();
+  }
+
+  int length() {
+    return buffer.length();
+  }
+}
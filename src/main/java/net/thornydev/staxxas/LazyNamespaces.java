@@ -0,0 +1,240 @@
+package net.thornydev.staxxas;
+
+import java.util.Map;
+
+/**
+ * Bookkeeping for the lazy namespace declaration of a StaxxasStreamWriter
+ * (see {@link StaxxasStreamWriter#setLazyNamespaces(boolean)}): which prefixes
+ * are declared in the scope of the elements currently open, which have been
+ * hoisted onto the root element, and how many bytes the declarations took
+ * compared with declaring every mapped namespace on the root element.
+ *
+ * <p>Declarations made on an element are in scope until its end tag.  Those
+ * made on an empty element are kept until the next element is started or
+ * ended, so that attributes of the empty element can still use them.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author midpeter444
+ */
+final class LazyNamespaces {
+
+  /* results of lookup */
+  static final int DECLARED = 0;
+  static final int UNBOUND = 1;
+  static final int REBOUND = 2;
+
+  /* declarations on the open elements, innermost last */
+  private String[] prefixes = new String[8];
+  private String[] uris = new String[8];
+  private int count;
+
+  /* for each open element, the value of count before its declarations */
+  private int[] scopes = new int[16];
+  private int depth;
+  private boolean emptyOpen;
+
+  /* declarations inserted into the root element's start tag */
+  private String[] rootPrefixes = new String[8];
+  private String[] rootUris = new String[8];
+  private int rootCount;
+
+  /**
+   * Position in the native writer's output inside the root element's start tag,
+   * where declarations can be hoisted to; -1 if there is none.
+   */
+  private long rootMark = -1;
+
+  /** whether the document has a root element written with startRootElement */
+  private boolean rooted;
+  private long declaredBytes;
+
+  /** size of declaring every mapping on the root; -1 until computed */
+  private long eagerBytes = -1;
+
+  void reset() {
+    for (int i = 0; i < count; i++) {
+      prefixes[i] = null;
+      uris[i] = null;
+    }
+    for (int i = 0; i < rootCount; i++) {
+      rootPrefixes[i] = null;
+      rootUris[i] = null;
+    }
+    count = 0;
+    depth = 0;
+    rootCount = 0;
+    emptyOpen = false;
+    rootMark = -1;
+    rooted = false;
+    declaredBytes = 0;
+  }
+
+  /**
+   * Called when the namespace mappings change, so that the size of declaring
+   * them all is computed again.
+   */
+  void mappingsChanged() {
+    eagerBytes = -1;
+  }
+
+  /**
+   * Records that the root element has been started.
+   *
+   * @param nsToUri the namespace mappings that would otherwise be declared on it
+   * @param mark position inside the root's start tag in the native writer's
+   * output, or -1 if declarations cannot be hoisted to it
+   */
+  void root(Map<String,String> nsToUri, long mark) {
+    rooted = true;
+    rootMark = mark;
+    if (eagerBytes < 0) {
+      long n = 0;
+      for (Map.Entry<String,String> e : nsToUri.entrySet()) {
+        if (e.getValue() != null) {
+          n += declarationLength(e.getKey(), e.getValue());
+        }
+      }
+      eagerBytes = n;
+    }
+  }
+
+  /**
+   * @return the position to hoist declarations to, or -1 if there is none
+   */
+  long rootMark() {
+    return rootMark;
+  }
+
+  /**
+   * Opens the scope of an element that has been started.
+   */
+  void open(boolean empty) {
+    if (emptyOpen) {
+      pop();
+    }
+    if (depth == scopes.length) {
+      int[] s = new int[depth * 2];
+      System.arraycopy(scopes, 0, s, 0, depth);
+      scopes = s;
+    }
+    scopes[depth++] = count;
+    emptyOpen = empty;
+  }
+
+  /**
+   * Closes the scope of the element just ended.
+   */
+  void close() {
+    if (emptyOpen) {
+      pop();
+      emptyOpen = false;
+    }
+    pop();
+  }
+
+  private void pop() {
+    if (depth == 0) {
+      return;
+    }
+    int mark = scopes[--depth];
+    for (int i = mark; i < count; i++) {
+      prefixes[i] = null;
+      uris[i] = null;
+    }
+    count = mark;
+    if (depth == 0) {
+      rootMark = -1;
+    }
+  }
+
+  /**
+   * @return DECLARED if prefix is bound to uri where the current element is,
+   * REBOUND if it is bound to another URI, UNBOUND if it is not bound
+   */
+  int lookup(String prefix, String uri) {
+    for (int i = count - 1; i >= 0; i--) {
+      if (prefix.equals(prefixes[i])) {
+        return uri.equals(uris[i]) ? DECLARED : REBOUND;
+      }
+    }
+    for (int i = rootCount - 1; i >= 0; i--) {
+      if (prefix.equals(rootPrefixes[i])) {
+        return uri.equals(rootUris[i]) ? DECLARED : REBOUND;
+      }
+    }
+    return UNBOUND;
+  }
+
+  /**
+   * Records a declaration written on the current element.
+   */
+  void declared(String prefix, String uri) {
+    if (count == prefixes.length) {
+      prefixes = grow(prefixes);
+      uris = grow(uris);
+    }
+    prefixes[count] = prefix;
+    uris[count] = uri;
+    count++;
+    declaredBytes += declarationLength(prefix, uri);
+  }
+
+  /**
+   * Records a declaration inserted into the root element's start tag at the
+   * root mark, and moves the mark past it so the next one is inserted after it.
+   *
+   * @param length number of bytes inserted
+   */
+  void hoisted(String prefix, String uri, int length) {
+    if (rootCount == rootPrefixes.length) {
+      rootPrefixes = grow(rootPrefixes);
+      rootUris = grow(rootUris);
+    }
+    rootPrefixes[rootCount] = prefix;
+    rootUris[rootCount] = uri;
+    rootCount++;
+    rootMark += length;
+    declaredBytes += length;
+  }
+
+  /**
+   * @return bytes of namespace declarations not written compared with declaring
+   * every mapping on the root element; negative if more were written
+   */
+  long bytesSaved() {
+    return (rooted ? eagerBytes : 0) - declaredBytes;
+  }
+
+  /**
+   * @return length in UTF-8 of {@code xmlns:prefix="uri"} with a leading space
+   */
+  static int declarationLength(String prefix, String uri) {
+    return 10 + utf8Length(prefix) + utf8Length(uri);
+  }
+
+  /**
+   * @return length in UTF-8 of s escaped as an attribute value
+   */
+  private static int utf8Length(String s) {
+    int n = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '&') n += 5;
+      else if (c == '<' || c == '>') n += 4;
+      else if (c == '"') n += 6;
+      else if (c < 0x80) n += 1;
+      else if (c < 0x800) n += 2;
+      else if (Character.isSurrogate(c)) n += 2;
+      else n += 3;
+    }
+    return n;
+  }
+
+  private static String[] grow(String[] a) {
+    String[] b = new String[a.length * 2];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+}
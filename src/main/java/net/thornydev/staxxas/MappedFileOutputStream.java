@@ -0,0 +1,134 @@
+package net.thornydev.staxxas;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An OutputStream that writes a file through memory-mapped windows rather than
+ * write system calls.  Bytes are copied straight into a {@link MappedByteBuffer}
+ * over the file; when a window is full the next one is mapped.  On close the
+ * file is truncated to exactly the number of bytes written.
+ *
+ * <p>Meant for very large documents written with the native
+ * {@link Utf8XMLStreamWriter}:
+ * {@literal
+ *     StaxxasStreamWriter sx = new StaxxasStreamWriter(new MappedFileOutputStream(path));
+ * }
+ * {@link StaxxasStreamWriter#endDoc()} closes the stream and so sets the final
+ * file length.  The file is created if needed and any existing content is
+ * replaced.</p>
+ *
+ * <p>Mapped windows are released by the garbage collector rather than on close,
+ * which is fine on Linux and macOS.  On Windows a file cannot be truncated
+ * while any part of it is still mapped, so this class is not recommended there.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author midpeter444
+ */
+public class MappedFileOutputStream extends OutputStream {
+
+  static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private final FileChannel channel;
+  private final int windowSize;
+  private MappedByteBuffer window;
+  /** file offset of the start of the current window */
+  private long windowStart;
+  private boolean closed;
+
+  /**
+   * Creates a MappedFileOutputStream that maps the file 64 MiB at a time.
+   *
+   * @param path file to write
+   * @throws IOException if the file cannot be opened
+   */
+  public MappedFileOutputStream(Path path) throws IOException {
+    this(path, DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * @param path file to write
+   * @param windowSize number of bytes mapped at a time
+   * @throws IOException if the file cannot be opened or mapped
+   */
+  public MappedFileOutputStream(Path path, int windowSize) throws IOException {
+    if (windowSize < 1) {
+      throw new IllegalArgumentException("windowSize must be at least 1: " + windowSize);
+    }
+    this.windowSize = windowSize;
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                               StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      window = channel.map(FileChannel.MapMode.READ_WRITE, 0, windowSize);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    if (!window.hasRemaining()) {
+      nextWindow();
+    }
+    window.put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    while (len > 0) {
+      if (!window.hasRemaining()) {
+        nextWindow();
+      }
+      int n = Math.min(len, window.remaining());
+      window.put(b, off, n);
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * @return the number of bytes written so far
+   */
+  public long size() {
+    return windowStart + window.position();
+  }
+
+  /**
+   * Truncates the file to the number of bytes written and closes it.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) return;
+    closed = true;
+    try {
+      channel.truncate(size());
+    } finally {
+      channel.close();
+    }
+  }
+
+  /* ---[ private methods ]--- */
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  private void nextWindow() throws IOException {
+    windowStart += window.position();
+    window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, windowSize);
+  }
+}
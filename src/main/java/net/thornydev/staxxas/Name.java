@@ -0,0 +1,142 @@
+package net.thornydev.staxxas;
+
+import java.nio.charset.Charset;
+
+/**
+ * A pre-validated, pre-encoded element or attribute name.
+ *
+ * <p>Documents typically reuse a small set of names over and over.  Creating a
+ * Name once, with {@link StaxxasStreamWriter#name(String)} or one of the static
+ * {@code of} methods, and passing it to methods such as
+ * {@link StaxxasStreamWriter#startElement(Name)} means the name is checked and UTF-8
+ * encoded only once.  With the native {@link Utf8XMLStreamWriter}, writing a start
+ * tag, end tag or attribute name is then a single array copy.  Other
+ * {@code XMLStreamWriter}s are given the prefix, local name and URI as usual.</p>
+ *
+ * <p>A prefixed Name should only be used with a StaxxasStreamWriter that has
+ * its prefix mapped to the same URI.  This is not checked when writing.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>Names are immutable and can be shared across threads and writers, so
+ * they are best kept in static final fields.</p>
+ *
+ * @author midpeter444
+ */
+public final class Name {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final String prefix;
+  private final String localName;
+  private final String uri;
+
+  /* pre-encoded UTF-8 forms used by Utf8XMLStreamWriter */
+  final byte[] startTag;   // <prefix:local
+  final byte[] endTag;     // </prefix:local>
+  final byte[] attribute;  //  prefix:local="
+
+  private Name(String prefix, String localName, String uri) {
+    checkNCName(localName);
+    if (prefix != null) checkNCName(prefix);
+    this.prefix = prefix;
+    this.localName = localName;
+    this.uri = uri;
+    String qname = prefix == null ? localName : prefix + ":" + localName;
+    startTag = ("<" + qname).getBytes(UTF8);
+    endTag = ("</" + qname + ">").getBytes(UTF8);
+    attribute = (" " + qname + "=\"").getBytes(UTF8);
+  }
+
+  /**
+   * Creates an unprefixed Name.
+   *
+   * @param localName element or attribute name
+   * @return the Name
+   * @throws IllegalArgumentException if localName is not a valid XML name
+   */
+  public static Name of(String localName) {
+    return new Name(null, localName, null);
+  }
+
+  /**
+   * Creates a Name in the namespace of the {@link Namespace} handle passed in.
+   *
+   * @param ns Namespace handle from a {@link NamespaceSet}. <code>null</code>
+   * creates an unprefixed Name.
+   * @param localName element or attribute name
+   * @return the Name
+   * @throws IllegalArgumentException if localName is not a valid XML name
+   */
+  public static Name of(Namespace ns, String localName) {
+    if (ns == null) return of(localName);
+    return new Name(ns.getPrefix(), localName, ns.getUri());
+  }
+
+  /**
+   * Creates a Name with the prefix and namespace URI passed in.
+   *
+   * @param prefix namespace prefix. <code>null</code> creates an unprefixed Name.
+   * @param localName element or attribute name
+   * @param uri URI the prefix is mapped to
+   * @return the Name
+   * @throws IllegalArgumentException if the prefix or localName is not a valid
+   * XML name, or a prefix is given without a URI
+   */
+  public static Name of(String prefix, String localName, String uri) {
+    if (prefix == null) return of(localName);
+    if (uri == null) {
+      throw new IllegalArgumentException("Namespace " + prefix + " has not been mapped to a uri");
+    }
+    return new Name(prefix, localName, uri);
+  }
+
+  /**
+   * @return the namespace prefix, or null if this Name is unprefixed
+   */
+  public String getPrefix() {
+    return prefix;
+  }
+
+  /**
+   * @return the local part of the name
+   */
+  public String getLocalName() {
+    return localName;
+  }
+
+  /**
+   * @return the namespace URI, or null if this Name is unprefixed
+   */
+  public String getUri() {
+    return uri;
+  }
+
+  @Override
+  public String toString() {
+    return prefix == null ? localName : prefix + ":" + localName;
+  }
+
+  /**
+   * Checks for a name with no colon that starts with a letter or '_' and
+   * continues with letters, digits, '.', '-' or '_'.  Non-ASCII chars are
+   * allowed throughout rather than checking the full XML name char ranges.
+   */
+  private static void checkNCName(String s) {
+    if (s == null || s.length() == 0) {
+      throw new IllegalArgumentException("XML name cannot be null or empty");
+    }
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      boolean ok;
+      if (c >= 0x80) {
+        ok = true;
+      } else if (i == 0) {
+        ok = Character.isLetter(c) || c == '_';
+      } else {
+        ok = Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+      }
+      if (!ok) {
+        throw new IllegalArgumentException("Not a valid XML name: " + s);
+      }
+    }
+  }
+}
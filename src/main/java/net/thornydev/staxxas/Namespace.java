@@ -0,0 +1,43 @@
+package net.thornydev.staxxas;
+
+/**
+ * A handle to one prefix to URI mapping of a {@link NamespaceSet}.
+ * 
+ * <p>Handles are passed to the StaxxasStreamWriter methods that take a
+ * {@code Namespace}, such as {@link StaxxasStreamWriter#startElement(Namespace, String)},
+ * so that writing a prefixed element or attribute does not have to look
+ * up the namespace URI by its prefix.</p>
+ * 
+ * <p>Namespace objects are immutable and can only be obtained from a
+ * {@link NamespaceSet}.</p>
+ * 
+ * @author midpeter444
+ */
+public final class Namespace {
+  private final String prefix;
+  private final String uri;
+
+  Namespace(String prefix, String uri) {
+    this.prefix = prefix;
+    this.uri = uri;
+  }
+
+  /**
+   * @return the namespace prefix, e.g., "foo"
+   */
+  public String getPrefix() {
+    return prefix;
+  }
+
+  /**
+   * @return the namespace URI, e.g., "http://example.com/foo"
+   */
+  public String getUri() {
+    return uri;
+  }
+
+  @Override
+  public String toString() {
+    return prefix + "=" + uri;
+  }
+}
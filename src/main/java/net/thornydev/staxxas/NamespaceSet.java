@@ -0,0 +1,88 @@
+package net.thornydev.staxxas;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable, compiled set of namespace prefix to URI mappings.
+ * 
+ * <p>Build it once, at startup, from the same prefix to URI map that is given to 
+ * your StaxxasStreamWriters (see {@link #asMap()}) and look up a {@link Namespace} 
+ * handle for each prefix you write with.  The StaxxasStreamWriter methods that take
+ * a handle do no hashing or String lookups on the hot path.</p>
+ * 
+ * <p><strong>Example:</strong>
+ * {@literal
+ *     NamespaceSet nss = new NamespaceSet(mymap);
+ *     Namespace foo = nss.get("foo");
+ *     ...
+ *     StaxxasStreamWriter sx = new StaxxasStreamWriter(out, nss.asMap());
+ *     sx.startDoc();
+ *     sx.startRootElement("root");
+ *     sx.startElement(foo, "child").prefixedAttribute(foo, "id", "1").endElement();
+ *     ...
+ * }
+ * </p>
+ * 
+ * <p>A handle should only be used with a StaxxasStreamWriter that has its prefix 
+ * mapped to the same URI.  This is not checked.</p>
+ * 
+ * <h6>Thread Safety</h6>
+ * <p>This class and the handles it gives out are immutable and thread-safe.</p>
+ * 
+ * @author midpeter444
+ */
+public final class NamespaceSet {
+
+  private final Map<String,String> nsToUri;
+  private final Map<String,Namespace> handles;
+
+  /**
+   * Compiles a NamespaceSet from the map passed in.  The map is copied.
+   * 
+   * @param nsToUri Map of each namespace (prefix) to its corresponding URI
+   */
+  public NamespaceSet(Map<String,String> nsToUri) {
+    Map<String,String> m = new LinkedHashMap<String,String>(nsToUri);
+    Map<String,Namespace> h = new LinkedHashMap<String,Namespace>();
+    for (Map.Entry<String,String> e: m.entrySet()) {
+      if (e.getKey() == null || e.getValue() == null) {
+        throw new IllegalArgumentException("Namespace prefixes and URIs cannot be null: " + e);
+      }
+      h.put(e.getKey(), new Namespace(e.getKey(), e.getValue()));
+    }
+    this.nsToUri = Collections.unmodifiableMap(m);
+    this.handles = Collections.unmodifiableMap(h);
+  }
+
+  /**
+   * Returns the handle for a prefix.  Call this once per prefix, not per element.
+   * 
+   * @param prefix namespace prefix in this set
+   * @return handle for that prefix
+   * @throws IllegalArgumentException if the prefix is not in this set
+   */
+  public Namespace get(String prefix) {
+    Namespace ns = handles.get(prefix);
+    if (ns == null) {
+      throw new IllegalArgumentException("Namespace " + prefix + " has not been mapped to a uri");
+    }
+    return ns;
+  }
+
+  /**
+   * @return read-only map of prefixes to URIs, suitable to pass to the
+   * StaxxasStreamWriter constructors
+   */
+  public Map<String,String> asMap() {
+    return nsToUri;
+  }
+
+  /**
+   * @return the number of namespaces in this set
+   */
+  public int size() {
+    return handles.size();
+  }
+}
@@ -0,0 +1,276 @@
+package net.thornydev.staxxas;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An OutputStream that gzips on several threads.  The bytes written are cut
+ * into fixed size blocks and each block is compressed as a complete gzip member
+ * on a worker pool.  Members are written to the target in order, making a
+ * standard multi-member gzip stream (RFC 1952) that {@code gunzip} and
+ * {@link java.util.zip.GZIPInputStream} read back as one file.
+ *
+ * <p>Use it in place of a GZIPOutputStream when compressing is slower than
+ * generating the XML:
+ * {@literal
+ *     StaxxasStreamWriter sx = new StaxxasStreamWriter(new ParallelGzipOutputStream(out, 4));
+ * }
+ * Since each block is compressed on its own, the output is slightly larger than
+ * a single-member stream would be; larger blocks make the difference smaller.</p>
+ *
+ * <p>At most twice as many blocks as there are threads are held in memory at once.
+ * When that many are in flight, {@code write} waits for the oldest one to be
+ * compressed and written.  {@code flush} compresses and writes everything written
+ * so far, ending the current block early.  {@code close} does the same and then
+ * closes the target and, if this stream created it, the worker pool.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>This class is not thread-safe.  The worker pool may be shared.</p>
+ *
+ * @author midpeter444
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+  static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+  private static final byte[] HEADER = {
+    0x1f, (byte) 0x8b,   // magic
+    Deflater.DEFLATED,   // compression method
+    0,                   // flags
+    0, 0, 0, 0,          // modification time: none
+    0,                   // extra flags
+    (byte) 0xff          // OS: unknown
+  };
+
+  private final OutputStream out;
+  private final ExecutorService executor;
+  private final boolean ownExecutor;
+  private final int blockSize;
+  private final int level;
+  private final int maxInFlight;
+  private final ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<Future<byte[]>>();
+
+  private byte[] block;
+  private int blockLen;
+  /** whether any gzip member has been written, so an empty stream still gets one */
+  private boolean wroteMember;
+  private boolean closed;
+
+  /**
+   * Creates a ParallelGzipOutputStream with its own pool of worker threads,
+   * 1 MiB blocks and the default compression level.
+   *
+   * @param out the OutputStream to write the gzip stream to
+   * @param threads number of compression threads
+   */
+  public ParallelGzipOutputStream(OutputStream out, int threads) {
+    this(out, newPool(threads), true, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION, threads);
+  }
+
+  /**
+   * Creates a ParallelGzipOutputStream that compresses on a worker pool owned
+   * by the caller, which is not shut down on close.
+   *
+   * @param out the OutputStream to write the gzip stream to
+   * @param executor pool to compress blocks on
+   * @param parallelism number of blocks to compress at once; up to twice this
+   * many are held in memory
+   * @param blockSize number of uncompressed bytes in each gzip member
+   * @param level compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+   */
+  public ParallelGzipOutputStream(OutputStream out, ExecutorService executor,
+                                  int parallelism, int blockSize, int level) {
+    this(out, executor, false, blockSize, level, parallelism);
+  }
+
+  private ParallelGzipOutputStream(OutputStream out, ExecutorService executor, boolean ownExecutor,
+                                   int blockSize, int level, int parallelism) {
+    if (out == null || executor == null) {
+      throw new IllegalArgumentException("OutputStream and executor cannot be null");
+    }
+    if (blockSize < 1 || parallelism < 1) {
+      throw new IllegalArgumentException("blockSize and parallelism must be at least 1: "
+                                         + blockSize + ", " + parallelism);
+    }
+    if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level: " + level);
+    }
+    this.out = out;
+    this.executor = executor;
+    this.ownExecutor = ownExecutor;
+    this.blockSize = blockSize;
+    this.level = level;
+    this.maxInFlight = parallelism * 2;
+    block = new byte[blockSize];
+  }
+
+  private static ExecutorService newPool(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be at least 1: " + threads);
+    }
+    return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "staxxas-gzip");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    block[blockLen++] = (byte) b;
+    if (blockLen == blockSize) {
+      submitBlock();
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    while (len > 0) {
+      int n = Math.min(len, blockSize - blockLen);
+      System.arraycopy(b, off, block, blockLen, n);
+      blockLen += n;
+      off += n;
+      len -= n;
+      if (blockLen == blockSize) {
+        submitBlock();
+      }
+    }
+  }
+
+  /**
+   * Compresses the current partial block and writes every pending member.
+   */
+  @Override
+  public void flush() throws IOException {
+    ensureOpen();
+    if (blockLen > 0) {
+      submitBlock();
+    }
+    while (!inFlight.isEmpty()) {
+      writeOldest();
+    }
+    out.flush();
+  }
+
+  /**
+   * Writes all remaining members and closes the target.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) return;
+    try {
+      if (blockLen > 0 || !wroteMember) {
+        submitBlock();
+      }
+      while (!inFlight.isEmpty()) {
+        writeOldest();
+      }
+      out.flush();
+    } finally {
+      closed = true;
+      for (Future<byte[]> f : inFlight) {
+        f.cancel(true);
+      }
+      inFlight.clear();
+      if (ownExecutor) {
+        executor.shutdown();
+      }
+      out.close();
+    }
+  }
+
+  /* ---[ private methods ]--- */
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  /**
+   * Hands the current block to the pool, then writes out members that are
+   * already done, waiting on the oldest only if too many are in flight.
+   */
+  private void submitBlock() throws IOException {
+    final byte[] b = block;
+    final int len = blockLen;
+    final int lvl = level;
+    inFlight.addLast(executor.submit(new Callable<byte[]>() {
+        public byte[] call() {
+          return gzipMember(b, len, lvl);
+        }
+      }));
+    wroteMember = true;
+    block = new byte[blockSize];
+    blockLen = 0;
+    while (!inFlight.isEmpty() && (inFlight.size() >= maxInFlight || inFlight.peekFirst().isDone())) {
+      writeOldest();
+    }
+  }
+
+  private void writeOldest() throws IOException {
+    Future<byte[]> f = inFlight.peekFirst();
+    byte[] member;
+    try {
+      member = f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for a block to be compressed");
+    } catch (ExecutionException e) {
+      throw new IOException("Compressing a block failed", e.getCause());
+    }
+    inFlight.removeFirst();
+    out.write(member);
+  }
+
+  /**
+   * Compresses len bytes of b as a complete gzip member: header, raw deflate
+   * data and a trailer with the CRC-32 and length of the input.
+   */
+  static byte[] gzipMember(byte[] b, int len, int level) {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream(len / 2 + 64);
+    bout.write(HEADER, 0, HEADER.length);
+    Deflater deflater = new Deflater(level, true);
+    try {
+      deflater.setInput(b, 0, len);
+      deflater.finish();
+      byte[] buf = new byte[Math.min(64 * 1024, len + 64)];
+      while (!deflater.finished()) {
+        int n = deflater.deflate(buf);
+        bout.write(buf, 0, n);
+      }
+    } finally {
+      deflater.end();
+    }
+    CRC32 crc = new CRC32();
+    crc.update(b, 0, len);
+    writeIntLE(bout, (int) crc.getValue());
+    writeIntLE(bout, len);
+    return bout.toByteArray();
+  }
+
+  private static void writeIntLE(ByteArrayOutputStream bout, int v) {
+    bout.write(v);
+    bout.write(v >>> 8);
+    bout.write(v >>> 16);
+    bout.write(v >>> 24);
+  }
+}
@@ -0,0 +1,23 @@
+package net.thornydev.staxxas;
+
+/**
+ * Writes one record of a document written with
+ * {@link StaxxasStreamWriter#records(String, Iterable, RecordWriter)}, usually
+ * as a single element.
+ *
+ * <p>For a parallel Stream of records, {@code write} is called on several
+ * threads at once, each with the writer of its own {@link Fragment}, so an
+ * implementation shared by them must be thread-safe.  One with no fields, or
+ * only final ones such as pre-encoded {@link Name}s, is.</p>
+ *
+ * @param <T> type of the records
+ * @author midpeter444
+ */
+public interface RecordWriter<T> {
+
+  /**
+   * @param sx the StaxxasStreamWriter to write the record with
+   * @param record the record to write
+   */
+  void write(StaxxasStreamWriter sx, T record);
+}
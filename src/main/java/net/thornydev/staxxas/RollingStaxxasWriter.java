@@ -0,0 +1,213 @@
+package net.thornydev.staxxas;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Writes one logical stream of records as a series of well-formed XML files,
+ * starting a new file once the current one reaches a byte or record limit.
+ * Every file gets the XML declaration, the root element and the root namespace
+ * declarations, and is ended with {@code endDoc()} before the next is started.
+ *
+ * <p>Call {@link #nextRecord()} before writing each record and write the record
+ * with the StaxxasStreamWriter it returns.  Files are only switched there, so
+ * a record is never split across files:
+ * {@literal
+ *     try (RollingStaxxasWriter rw = new RollingStaxxasWriter(
+ *            RollingStaxxasWriter.files(dir, "feed-%04d.xml"), "items", nsToUri, null,
+ *            100 * 1024 * 1024, 0)) {
+ *       for (Item item : items) {
+ *         StaxxasStreamWriter sx = rw.nextRecord();
+ *         sx.startElement("item").attribute("id", item.getId()).endElement();
+ *       }
+ *     }
+ * }
+ * </p>
+ *
+ * <p>The byte limit is checked before each record, so a file ends once it has
+ * reached {@code maxBytes} and may exceed it by one record plus the root end
+ * tag.  Set it that much below any hard limit.  The current namespace of the
+ * writer is carried over to each new file.  Nothing is written if
+ * {@code nextRecord} is never called.</p>
+ *
+ * <p>Output uses the native {@link Utf8XMLStreamWriter}, reset and reused for
+ * every file.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author midpeter444
+ */
+public class RollingStaxxasWriter implements AutoCloseable {
+
+  /**
+   * Opens the OutputStream for each file in turn.
+   */
+  public interface OutputProvider {
+    /**
+     * @param index 0 for the first file, then 1, 2, ...
+     * @return the OutputStream to write that file to; it is closed by {@code endDoc()}
+     * @throws IOException if it cannot be opened
+     */
+    OutputStream open(int index) throws IOException;
+  }
+
+  /** counts bytes that reach the file */
+  private static final class CountingOutputStream extends OutputStream {
+    private final OutputStream out;
+    long count;
+
+    CountingOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  private final OutputProvider outputs;
+  private final String rootName;
+  private final Map<String,String> nsToUri;
+  private final String defaultNamespace;
+  private final long maxBytes;
+  private final long maxRecords;
+
+  private StaxxasStreamWriter sx;
+  private CountingOutputStream current;
+  private long recordsInFile;
+  private int fileCount;
+
+  /**
+   * @param outputs opens the OutputStream for each file
+   * @param rootName name of the root element written to every file
+   * @param nsToUri Map of each namespace (prefix) to its corresponding URI,
+   * declared on every root element.  May be null.
+   * @param defaultNamespace URI of the default namespace.  May be null.
+   * @param maxBytes start a new file once this many bytes have been written to
+   * the current one; 0 for no limit
+   * @param maxRecords start a new file once this many records have been written
+   * to the current one; 0 for no limit
+   */
+  public RollingStaxxasWriter(OutputProvider outputs, String rootName, Map<String,String> nsToUri,
+                              String defaultNamespace, long maxBytes, long maxRecords) {
+    if (outputs == null || rootName == null) {
+      throw new IllegalArgumentException("outputs and rootName cannot be null");
+    }
+    if (maxBytes < 0 || maxRecords < 0) {
+      throw new IllegalArgumentException("limits cannot be negative: " + maxBytes + ", " + maxRecords);
+    }
+    this.outputs = outputs;
+    this.rootName = rootName;
+    this.nsToUri = nsToUri;
+    this.defaultNamespace = defaultNamespace;
+    this.maxBytes = maxBytes;
+    this.maxRecords = maxRecords;
+  }
+
+  /**
+   * An OutputProvider that creates files in a directory, named by formatting
+   * the file index with a {@link String#format} pattern such as "feed-%04d.xml".
+   *
+   * @param dir directory to create the files in
+   * @param pattern file name pattern with one integer conversion
+   * @return the OutputProvider
+   */
+  public static OutputProvider files(final Path dir, final String pattern) {
+    return new OutputProvider() {
+      public OutputStream open(int index) throws IOException {
+        return new FileOutputStream(dir.resolve(String.format(pattern, index)).toFile());
+      }
+    };
+  }
+
+  /**
+   * Starts a new file if there is none yet or the current one has reached a
+   * limit, and returns the writer to write the next record with.
+   *
+   * @return the StaxxasStreamWriter positioned inside the root element
+   * @throws StaxxasStreamWriterException (RuntimeException) if a file cannot be
+   * opened or ending the previous one fails
+   */
+  public StaxxasStreamWriter nextRecord() {
+    if (current == null || limitReached()) {
+      String ns = null;
+      if (current != null) {
+        ns = sx.currentNamespace();
+        sx.endDoc();
+      }
+      startFile();
+      if (ns != null) {
+        sx.setCurrentNamespace(ns);
+      }
+    }
+    recordsInFile++;
+    return sx;
+  }
+
+  /**
+   * @return the number of files started so far
+   */
+  public int fileCount() {
+    return fileCount;
+  }
+
+  /**
+   * Ends the current file, if any.
+   */
+  @Override
+  public void close() {
+    if (current != null) {
+      current = null;
+      sx.endDoc();
+    }
+  }
+
+  /* ---[ private methods ]--- */
+
+  private boolean limitReached() {
+    if (maxRecords > 0 && recordsInFile >= maxRecords) return true;
+    return maxBytes > 0 && current.count + sx.bufferedBytes() >= maxBytes;
+  }
+
+  private void startFile() {
+    OutputStream out;
+    try {
+      out = outputs.open(fileCount);
+    } catch (IOException e) {
+      throw new StaxxasStreamWriterException("nextRecord", "OutputProvider.open", e);
+    }
+    current = new CountingOutputStream(out);
+    if (sx == null) {
+      sx = new StaxxasStreamWriter(current, nsToUri);
+    } else {
+      sx.reset(current);
+    }
+    sx.setDefaultNamespace(defaultNamespace);
+    sx.startDoc();
+    sx.startRootElement(rootName);
+    fileCount++;
+    recordsInFile = 0;
+  }
+}
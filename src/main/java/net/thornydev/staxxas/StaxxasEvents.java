@@ -0,0 +1,119 @@
+package net.thornydev.staxxas;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events written by StaxxasStreamWriter: one per document,
+ * from {@code startDoc} to {@code endDoc}, and one per flush and close of its
+ * output.  Both are disabled by default; enable them in the settings of a
+ * recording, e.g. in a .jfc file:
+ * {@literal
+ *     <event name="net.thornydev.staxxas.Document"><setting name="enabled">true</setting></event>
+ *     <event name="net.thornydev.staxxas.Flush"><setting name="enabled">true</setting></event>
+ * }
+ * </p>
+ *
+ * <p>This class refers to {@code jdk.jfr} types, so StaxxasStreamWriter only
+ * uses it after checking that the JVM has Flight Recorder, and passes the
+ * events around as Object.  When an event is not enabled {@code begin} returns
+ * null without keeping the event it created, which the JIT can then remove.</p>
+ *
+ * @author midpeter444
+ */
+final class StaxxasEvents {
+
+  private StaxxasEvents() {}
+
+  @Name("net.thornydev.staxxas.Document")
+  @Label("XML Document")
+  @Description("An XML document written by a StaxxasStreamWriter, from startDoc to endDoc")
+  @Category({"Staxxas", "XML"})
+  @Enabled(false)
+  @StackTrace(false)
+  static final class DocumentEvent extends Event {
+    @Label("Elements")
+    long elements;
+
+    @Label("Attributes")
+    long attributes;
+
+    @Label("Characters")
+    long characters;
+
+    @Label("Bytes Written")
+    @Description("Bytes written by the native UTF-8 writer; 0 for StAX XMLStreamWriters")
+    @DataAmount
+    long bytes;
+  }
+
+  @Name("net.thornydev.staxxas.Flush")
+  @Label("XML Flush")
+  @Description("Flushing the output of a StaxxasStreamWriter, between record batches or while it is read, and closing it at the end of a document")
+  @Category({"Staxxas", "XML"})
+  @Enabled(false)
+  @StackTrace(false)
+  static final class FlushEvent extends Event {
+    @Label("Bytes Written")
+    @Description("Bytes written by the native UTF-8 writer so far in the document")
+    @DataAmount
+    long bytes;
+  }
+
+  /**
+   * @return a started DocumentEvent, or null if the event is not enabled
+   */
+  static Object beginDocument() {
+    DocumentEvent e = new DocumentEvent();
+    if (!e.isEnabled()) {
+      return null;
+    }
+    e.begin();
+    return e;
+  }
+
+  /**
+   * Ends and commits an event from {@link #beginDocument()}.
+   */
+  static void commitDocument(Object event, long elements, long attributes, long characters, long bytes) {
+    DocumentEvent e = (DocumentEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.elements = elements;
+      e.attributes = attributes;
+      e.characters = characters;
+      e.bytes = bytes;
+      e.commit();
+    }
+  }
+
+  /**
+   * @return a started FlushEvent, or null if the event is not enabled
+   */
+  static Object beginFlush() {
+    FlushEvent e = new FlushEvent();
+    if (!e.isEnabled()) {
+      return null;
+    }
+    e.begin();
+    return e;
+  }
+
+  /**
+   * Ends and commits an event from {@link #beginFlush()}.
+   */
+  static void commitFlush(Object event, long bytes) {
+    FlushEvent e = (FlushEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.bytes = bytes;
+      e.commit();
+    }
+  }
+}
@@ -0,0 +1,262 @@
+package net.thornydev.staxxas;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * An InputStream that generates an XML document as it is read, for handing
+ * Staxxas output to APIs that take an InputStream, such as HTTP clients and
+ * storage SDKs, without a piped thread or building the whole document in memory.
+ *
+ * <p>The document is written by a {@link Generator} in steps, typically one
+ * record per step.  Steps are only run when a read asks for more bytes than
+ * have been generated, so generation keeps pace with the consumer:
+ * {@literal
+ *     final Iterator<Order> it = orders.iterator();
+ *     InputStream in = new StaxxasInputStream(new StaxxasInputStream.Generator() {
+ *       boolean started;
+ *       public boolean step(StaxxasStreamWriter sx) {
+ *         if (!started) { sx.startDoc().startRootElement("orders"); started = true; }
+ *         if (it.hasNext()) { writeOrder(sx, it.next()); return true; }
+ *         sx.endDoc();
+ *         return false;
+ *       }
+ *     });
+ *     httpRequest.setBody(in);
+ * }
+ * </p>
+ *
+ * <p>The document is written with the native {@link Utf8XMLStreamWriter} into
+ * a buffer that the reads consume.  The memory used is that buffer and the
+ * writer's own, 8K each, and the first grows only if a single step writes more
+ * than it holds.</p>
+ *
+ * <p>If a step throws a RuntimeException, including a
+ * {@link StaxxasStreamWriterException}, the read fails with an IOException
+ * whose cause it is, and the stream then reads as ended.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author midpeter444
+ */
+public class StaxxasInputStream extends InputStream {
+
+  static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  /**
+   * Writes a document in steps.
+   */
+  public interface Generator {
+    /**
+     * Writes the next part of the document: the first step usually calls
+     * {@code startDoc()} and the last one {@code endDoc()}.
+     *
+     * @param sx the StaxxasStreamWriter to write with; the same one for every step
+     * @return true if there is more to write, false once the document is complete
+     */
+    boolean step(StaxxasStreamWriter sx);
+  }
+
+  private final Generator generator;
+  private final Buffer buffer;
+  private final StaxxasStreamWriter sx;
+  private boolean done;
+
+  /**
+   * @param generator writes the document
+   */
+  public StaxxasInputStream(Generator generator) {
+    this(null, generator);
+  }
+
+  /**
+   * @param nsToUri Map of each namespace (prefix) to its corresponding URI.  May be null.
+   * @param generator writes the document
+   */
+  public StaxxasInputStream(Map<String,String> nsToUri, Generator generator) {
+    if (generator == null) {
+      throw new IllegalArgumentException("generator cannot be null");
+    }
+    this.generator = generator;
+    buffer = new Buffer(DEFAULT_BUFFER_SIZE);
+    sx = nsToUri == null ? new StaxxasStreamWriter(buffer) : new StaxxasStreamWriter(buffer, nsToUri);
+  }
+
+  /**
+   * @return the StaxxasStreamWriter the generator writes with, for configuring
+   * it before the first read
+   */
+  public StaxxasStreamWriter writer() {
+    return sx;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill(1)) {
+      return -1;
+    }
+    return buffer.read();
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (len == 0) {
+      return 0;
+    }
+    if (!fill(Math.min(len, DEFAULT_BUFFER_SIZE))) {
+      return -1;
+    }
+    return buffer.read(b, off, len);
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = 0;
+    while (skipped < n && fill((int) Math.min(n - skipped, DEFAULT_BUFFER_SIZE))) {
+      skipped += buffer.skip((int) Math.min(n - skipped, Integer.MAX_VALUE));
+    }
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return buffer.available();
+  }
+
+  /**
+   * Stops generating the document.  The generator is not called again.
+   */
+  @Override
+  public void close() {
+    if (!done) {
+      done = true;
+      sx.close();
+    }
+    buffer.clear();
+  }
+
+  /**
+   * @return true once the document is complete and all of it has been read,
+   * or the stream has been closed
+   */
+  boolean finished() {
+    return done && buffer.available() == 0;
+  }
+
+  /**
+   * @return capacity of the buffer between the writer and the reads
+   */
+  int bufferCapacity() {
+    return buffer.capacity();
+  }
+
+  /**
+   * Runs generator steps until the bytes generated, including those still in
+   * the writer's own buffer, make up the number wanted, or the document is
+   * complete, then flushes the writer if needed.
+   *
+   * @param want number of bytes the read asks for, at most the buffer size
+   * @return false if there is nothing more to read
+   */
+  private boolean fill(int want) throws IOException {
+    if (buffer.available() >= want) {
+      return true;
+    }
+    try {
+      while (!done && buffer.available() + sx.bufferedBytes() < want) {
+        if (!generator.step(sx)) {
+          done = true;
+          sx.close();
+        }
+      }
+      if (!done && buffer.available() < want) {
+        sx.flush();
+      }
+    } catch (RuntimeException e) {
+      // from the writer or from the generator's own code
+      done = true;
+      buffer.clear();
+      throw new IOException("Generating the XML document failed", e);
+    }
+    return buffer.available() > 0;
+  }
+
+  /**
+   * The bytes written but not yet read.  Consumed bytes are dropped by moving
+   * the rest to the front when more room is needed, and the array only grows
+   * when a single step writes more than it holds.
+   */
+  private static final class Buffer extends OutputStream {
+    private byte[] buf;
+    private int start;
+    private int end;
+
+    Buffer(int size) {
+      buf = new byte[size];
+    }
+
+    int capacity() {
+      return buf.length;
+    }
+
+    int available() {
+      return end - start;
+    }
+
+    void clear() {
+      start = end = 0;
+    }
+
+    int read() {
+      return buf[start++] & 0xFF;
+    }
+
+    int read(byte[] b, int off, int len) {
+      int n = Math.min(len, end - start);
+      System.arraycopy(buf, start, b, off, n);
+      start += n;
+      return n;
+    }
+
+    int skip(int len) {
+      int n = Math.min(len, end - start);
+      start += n;
+      return n;
+    }
+
+    @Override
+    public void write(int b) {
+      room(1);
+      buf[end++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      room(len);
+      System.arraycopy(b, off, buf, end, len);
+      end += len;
+    }
+
+    private void room(int len) {
+      if (end + len <= buf.length) {
+        return;
+      }
+      int n = end - start;
+      if (n + len > buf.length) {
+        byte[] b = new byte[Math.max(buf.length * 2, n + len)];
+        System.arraycopy(buf, start, b, 0, n);
+        buf = b;
+      } else {
+        System.arraycopy(buf, start, buf, 0, n);
+      }
+      start = 0;
+      end = n;
+    }
+  }
+}
@@ -0,0 +1,319 @@
+package net.thornydev.staxxas;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts what StaxxasStreamWriters write: documents, elements, attributes,
+ * text characters and bytes, and how long flushing and closing each document
+ * takes.  Enable it on a writer with
+ * {@link StaxxasStreamWriter#setMetrics(StaxxasMetrics)}, or on every writer
+ * handed out by a pool with {@link StaxxasWriterPool#setMetrics(StaxxasMetrics)}.
+ * One instance is normally shared by all the writers of an application:
+ * {@literal
+ *     StaxxasMetrics metrics = new StaxxasMetrics();
+ *     metrics.register("orders-feed");   // optional: publish as a JMX MBean
+ *     pool.setMetrics(metrics);
+ *     ...
+ *     StaxxasMetrics.Snapshot s = metrics.snapshot();
+ *     log.info(s.getDocuments() + " docs, " + s.getBytesPerSecond() + " bytes/s");
+ * }
+ * </p>
+ *
+ * <p>Writers count into plain fields of their own as they go and add them here
+ * once per document, when it is ended or closed, so the per-call cost is one
+ * field increment whether metrics are enabled or not, with no allocation or
+ * locking.  The flush and close time is only measured when metrics are enabled.</p>
+ *
+ * <p>Bytes are only counted for the native {@link Utf8XMLStreamWriter}, which
+ * is used when writing to an OutputStream or channel; a StAX XMLStreamWriter
+ * does not report what it writes.  Flush times are kept in a histogram with
+ * power-of-two microsecond buckets, so percentiles are upper bounds accurate
+ * to a factor of two.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>This class is thread-safe.</p>
+ *
+ * @author midpeter444
+ */
+public class StaxxasMetrics implements StaxxasMetricsMXBean {
+
+  /** bucket k counts flushes taking [2^(k-1), 2^k) microseconds; bucket 0 under 1 */
+  private static final int BUCKETS = 40;
+
+  private final AtomicLong documents = new AtomicLong();
+  private final AtomicLong elements = new AtomicLong();
+  private final AtomicLong attributes = new AtomicLong();
+  private final AtomicLong characters = new AtomicLong();
+  private final AtomicLong bytes = new AtomicLong();
+  private final AtomicLong namespaceBytesSaved = new AtomicLong();
+  private final AtomicLong flushNanos = new AtomicLong();
+  private final AtomicLong flushMaxNanos = new AtomicLong();
+  private final AtomicLongArray flushBuckets = new AtomicLongArray(BUCKETS);
+  private volatile long startNanos = System.nanoTime();
+  private volatile ObjectName registeredAs;
+
+  /**
+   * An immutable copy of the counts at one point in time.
+   */
+  public static final class Snapshot {
+    private final long documents;
+    private final long elements;
+    private final long attributes;
+    private final long characters;
+    private final long bytes;
+    private final long namespaceBytesSaved;
+    private final long elapsedNanos;
+    private final long flushNanos;
+    private final long flushMaxNanos;
+    private final long[] flushBuckets;
+
+    Snapshot(StaxxasMetrics m) {
+      documents = m.documents.get();
+      elements = m.elements.get();
+      attributes = m.attributes.get();
+      characters = m.characters.get();
+      bytes = m.bytes.get();
+      namespaceBytesSaved = m.namespaceBytesSaved.get();
+      elapsedNanos = System.nanoTime() - m.startNanos;
+      flushNanos = m.flushNanos.get();
+      flushMaxNanos = m.flushMaxNanos.get();
+      flushBuckets = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        flushBuckets[i] = m.flushBuckets.get(i);
+      }
+    }
+
+    /** @return documents ended or closed */
+    public long getDocuments() { return documents; }
+
+    /** @return elements started, including empty elements */
+    public long getElements() { return elements; }
+
+    /** @return attributes written */
+    public long getAttributes() { return attributes; }
+
+    /**
+     * @return text characters written with the {@code characters},
+     * {@code utf8Characters} and {@code cdata} methods, counted as UTF-16 chars
+     * whatever form the text was passed in
+     */
+    public long getCharacters() { return characters; }
+
+    /** @return bytes written by the native UTF-8 writer */
+    public long getBytes() { return bytes; }
+
+    /**
+     * @return bytes of namespace declarations not written thanks to lazy
+     * namespace declaration; see {@link StaxxasStreamWriter#setLazyNamespaces(boolean)}
+     */
+    public long getNamespaceBytesSaved() { return namespaceBytesSaved; }
+
+    /** @return nanoseconds from when the metrics were created or reset to this snapshot */
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /** @return bytes written per second over {@link #getElapsedNanos()} */
+    public double getBytesPerSecond() {
+      return elapsedNanos <= 0 ? 0 : bytes * 1e9 / elapsedNanos;
+    }
+
+    /** @return mean time taken to flush and close a document, in microseconds */
+    public double getFlushMeanMicros() {
+      return documents == 0 ? 0 : flushNanos / 1000.0 / documents;
+    }
+
+    /** @return longest time taken to flush and close a document, in microseconds */
+    public long getFlushMaxMicros() {
+      return flushMaxNanos / 1000;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return time in microseconds that the given percentage of flushes took
+     * less than, as the upper bound of its histogram bucket
+     */
+    public long getFlushPercentileMicros(double percentile) {
+      long total = 0;
+      for (long n : flushBuckets) total += n;
+      if (total == 0) return 0;
+      long rank = (long) Math.ceil(total * percentile / 100.0);
+      long seen = 0;
+      for (int k = 0; k < BUCKETS; k++) {
+        seen += flushBuckets[k];
+        if (seen >= rank && flushBuckets[k] > 0) {
+          return 1L << k;
+        }
+      }
+      return 1L << (BUCKETS - 1);
+    }
+
+    /**
+     * @return copy of the flush time histogram: element k counts the flushes that
+     * took from 2^(k-1) up to 2^k microseconds, and element 0 those under 1
+     */
+    public long[] getFlushHistogram() {
+      return flushBuckets.clone();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("documents=%d elements=%d attributes=%d characters=%d bytes=%d "
+                           + "bytesPerSecond=%.0f flushMeanMicros=%.1f flushMaxMicros=%d",
+                           documents, elements, attributes, characters, bytes,
+                           getBytesPerSecond(), getFlushMeanMicros(), getFlushMaxMicros());
+    }
+  }
+
+  /**
+   * Adds the counts of one document.
+   */
+  void record(long elements, long attributes, long characters, long bytes,
+              long namespaceBytesSaved, long flushNanos) {
+    documents.incrementAndGet();
+    this.elements.addAndGet(elements);
+    this.attributes.addAndGet(attributes);
+    this.characters.addAndGet(characters);
+    this.bytes.addAndGet(bytes);
+    this.namespaceBytesSaved.addAndGet(namespaceBytesSaved);
+    this.flushNanos.addAndGet(flushNanos);
+    long max;
+    while (flushNanos > (max = flushMaxNanos.get())
+           && !flushMaxNanos.compareAndSet(max, flushNanos)) {
+      // retry
+    }
+    long micros = flushNanos / 1000;
+    int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    flushBuckets.incrementAndGet(bucket);
+  }
+
+  /**
+   * @return a copy of the current counts
+   */
+  public Snapshot snapshot() {
+    return new Snapshot(this);
+  }
+
+  /**
+   * Sets all counts back to zero and restarts the throughput clock.  Counts
+   * added by other threads while resetting may be lost.
+   */
+  @Override
+  public void reset() {
+    documents.set(0);
+    elements.set(0);
+    attributes.set(0);
+    characters.set(0);
+    bytes.set(0);
+    namespaceBytesSaved.set(0);
+    flushNanos.set(0);
+    flushMaxNanos.set(0);
+    for (int i = 0; i < BUCKETS; i++) {
+      flushBuckets.set(i, 0);
+    }
+    startNanos = System.nanoTime();
+  }
+
+  /**
+   * Registers these metrics with the platform MBean server as
+   * {@code net.thornydev.staxxas:type=StaxxasMetrics,name=<name>}.
+   *
+   * @param name value of the name key of the ObjectName
+   * @return the ObjectName registered
+   * @throws IllegalStateException if the name is invalid or already registered
+   */
+  public ObjectName register(String name) {
+    try {
+      ObjectName on = new ObjectName("net.thornydev.staxxas:type=StaxxasMetrics,name="
+                                     + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+      registeredAs = on;
+      return on;
+    } catch (JMException e) {
+      throw new IllegalStateException("Cannot register StaxxasMetrics as " + name, e);
+    }
+  }
+
+  /**
+   * Removes these metrics from the platform MBean server, if registered.
+   */
+  public void unregister() {
+    ObjectName on = registeredAs;
+    if (on == null) return;
+    registeredAs = null;
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      if (server.isRegistered(on)) {
+        server.unregisterMBean(on);
+      }
+    } catch (JMException e) {
+      throw new IllegalStateException("Cannot unregister " + on, e);
+    }
+  }
+
+  /* ---[ StaxxasMetricsMXBean ]--- */
+
+  @Override
+  public long getDocuments() {
+    return documents.get();
+  }
+
+  @Override
+  public long getElements() {
+    return elements.get();
+  }
+
+  @Override
+  public long getAttributes() {
+    return attributes.get();
+  }
+
+  @Override
+  public long getCharacters() {
+    return characters.get();
+  }
+
+  @Override
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  @Override
+  public long getNamespaceBytesSaved() {
+    return namespaceBytesSaved.get();
+  }
+
+  @Override
+  public double getBytesPerSecond() {
+    return snapshot().getBytesPerSecond();
+  }
+
+  @Override
+  public double getFlushMeanMicros() {
+    return snapshot().getFlushMeanMicros();
+  }
+
+  @Override
+  public long getFlushMaxMicros() {
+    return flushMaxNanos.get() / 1000;
+  }
+
+  @Override
+  public long getFlushMedianMicros() {
+    return snapshot().getFlushPercentileMicros(50);
+  }
+
+  @Override
+  public long getFlush99thPercentileMicros() {
+    return snapshot().getFlushPercentileMicros(99);
+  }
+
+  @Override
+  public String toString() {
+    return "StaxxasMetrics[" + snapshot() + "]";
+  }
+}
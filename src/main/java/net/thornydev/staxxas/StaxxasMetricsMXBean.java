@@ -0,0 +1,46 @@
+package net.thornydev.staxxas;
+
+/**
+ * JMX view of a {@link StaxxasMetrics}.  Registered with
+ * {@link StaxxasMetrics#register(String)}.
+ *
+ * @author midpeter444
+ */
+public interface StaxxasMetricsMXBean {
+
+  /** @return documents ended or closed */
+  long getDocuments();
+
+  /** @return elements started, including empty elements */
+  long getElements();
+
+  /** @return attributes written */
+  long getAttributes();
+
+  /** @return text characters written */
+  long getCharacters();
+
+  /** @return bytes written by the native UTF-8 writer */
+  long getBytes();
+
+  /** @return bytes of namespace declarations not written thanks to lazy namespace declaration */
+  long getNamespaceBytesSaved();
+
+  /** @return bytes written per second since the metrics were created or reset */
+  double getBytesPerSecond();
+
+  /** @return mean time taken to flush and close a document, in microseconds */
+  double getFlushMeanMicros();
+
+  /** @return longest time taken to flush and close a document, in microseconds */
+  long getFlushMaxMicros();
+
+  /** @return median time taken to flush and close a document, in microseconds */
+  long getFlushMedianMicros();
+
+  /** @return 99th percentile time taken to flush and close a document, in microseconds */
+  long getFlush99thPercentileMicros();
+
+  /** Sets all counts back to zero. */
+  void reset();
+}
@@ -0,0 +1,231 @@
+package net.thornydev.staxxas;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Flow.Publisher} of the bytes of an XML document, for non-blocking
+ * HTTP stacks and other reactive consumers.  The document is written by a
+ * {@link StaxxasInputStream.Generator} in steps, and is only generated as far as
+ * the subscriber has requested: each ByteBuffer requested is generated just
+ * before it is delivered.  A slow subscriber therefore holds back generation
+ * instead of making bytes pile up, and memory stays bounded to the buffers of
+ * a {@link StaxxasInputStream} and one chunk.
+ * {@literal
+ *     Flow.Publisher<ByteBuffer> body = new StaxxasPublisher(generator);
+ *     HttpRequest.BodyPublishers.fromPublisher(body);
+ * }
+ * </p>
+ *
+ * <p>Generation and delivery run on an Executor, the common ForkJoinPool by
+ * default, never on the thread calling {@code request}, so an event loop thread
+ * requesting more data does not do the serialization work.</p>
+ *
+ * <p>If generation fails, or {@code onNext} throws, the subscription ends and
+ * the subscriber is sent the exception with {@code onError}, as
+ * {@code SubmissionPublisher} does.</p>
+ *
+ * <p>A StaxxasPublisher generates one document and so allows one subscriber; any
+ * later subscriber is sent an IllegalStateException with {@code onError}.  Each
+ * ByteBuffer delivered is a new one, which the subscriber may keep.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>This class is thread-safe.  The generator is only called by one thread at
+ * a time, with happens-before ordering between calls.</p>
+ *
+ * @author midpeter444
+ */
+public class StaxxasPublisher implements Flow.Publisher<ByteBuffer> {
+
+  static final int DEFAULT_CHUNK_SIZE = 8192;
+
+  private final StaxxasInputStream in;
+  private final Executor executor;
+  private final int chunkSize;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+
+  /**
+   * Creates a publisher that delivers 8K ByteBuffers using the common ForkJoinPool.
+   *
+   * @param generator writes the document
+   */
+  public StaxxasPublisher(StaxxasInputStream.Generator generator) {
+    this(null, generator, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * @param nsToUri Map of each namespace (prefix) to its corresponding URI.  May be null.
+   * @param generator writes the document
+   * @param executor runs generation and delivery to the subscriber
+   * @param chunkSize the size in bytes of the ByteBuffers delivered, except the last
+   */
+  public StaxxasPublisher(Map<String,String> nsToUri, StaxxasInputStream.Generator generator,
+                          Executor executor, int chunkSize) {
+    if (executor == null) {
+      throw new IllegalArgumentException("executor cannot be null");
+    }
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize must be at least 1: " + chunkSize);
+    }
+    this.in = new StaxxasInputStream(nsToUri, generator);
+    this.executor = executor;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * @return the StaxxasStreamWriter the generator writes with, for configuring
+   * it before subscribing
+   */
+  public StaxxasStreamWriter writer() {
+    return in.writer();
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("subscriber cannot be null");
+    }
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override public void request(long n) {}
+        @Override public void cancel() {}
+      });
+      subscriber.onError(new IllegalStateException("A StaxxasPublisher allows only one subscriber"));
+      return;
+    }
+    subscriber.onSubscribe(new Subscription(subscriber));
+  }
+
+  /**
+   * @return the stream the document is generated with
+   */
+  StaxxasInputStream stream() {
+    return in;
+  }
+
+  /**
+   * Delivers chunks while there is demand.  Calls to request and cancel add to
+   * {@code wip}, and only the call that raises it from zero schedules
+   * {@link #run()}, which loops until it has seen all of them.  Once the
+   * subscription ends, wip is left above zero so that it is never run again,
+   * and the stream is closed whichever way it ended.
+   */
+  private final class Subscription implements Flow.Subscription, Runnable {
+    private final Flow.Subscriber<? super ByteBuffer> subscriber;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile Throwable badRequest;
+
+    Subscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        badRequest = new IllegalArgumentException("request must be positive: " + n);
+      } else {
+        long r;
+        long u;
+        do {
+          r = requested.get();
+          u = r + n < 0 ? Long.MAX_VALUE : r + n;
+        } while (!requested.compareAndSet(r, u));
+      }
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      schedule();
+    }
+
+    private void schedule() {
+      if (wip.getAndIncrement() == 0) {
+        executor.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      int missed = 1;
+      for (;;) {
+        long r = requested.get();
+        long e = 0;
+        for (;;) {
+          if (cancelled) {
+            in.close();
+            return;
+          }
+          if (badRequest != null) {
+            fail(badRequest);
+            return;
+          }
+          if (in.finished()) {
+            cancelled = true;
+            in.close();
+            subscriber.onComplete();
+            return;
+          }
+          if (e == r) {
+            break;
+          }
+          try {
+            byte[] chunk = new byte[chunkSize];
+            int n = readChunk(chunk);
+            if (n > 0) {
+              subscriber.onNext(ByteBuffer.wrap(chunk, 0, n));
+              e++;
+            }
+          } catch (Throwable ex) {
+            fail(ex);
+            return;
+          }
+        }
+        if (e != 0 && r != Long.MAX_VALUE) {
+          requested.addAndGet(-e);
+        }
+        missed = wip.addAndGet(-missed);
+        if (missed == 0) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * Ends the subscription with onError, closing the stream first.
+     */
+    private void fail(Throwable t) {
+      cancelled = true;
+      try {
+        in.close();
+      } finally {
+        subscriber.onError(t);
+      }
+    }
+
+    /**
+     * Reads a full chunk unless the document ends first.
+     */
+    private int readChunk(byte[] chunk) throws IOException {
+      int n = 0;
+      while (n < chunk.length) {
+        int k = in.read(chunk, n, chunk.length - n);
+        if (k < 0) {
+          break;
+        }
+        n += k;
+      }
+      return n;
+    }
+  }
+}
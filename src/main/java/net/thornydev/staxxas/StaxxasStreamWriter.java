@@ -1,9 +1,23 @@
 package net.thornydev.staxxas;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLOutputFactory;
@@ -96,21 +110,94 @@ import javax.xml.stream.XMLStreamWriter;
  * {@link javax.xml.stream.XMLStreamWriter} is a state machine that cannot be 
  * used successfully by more than one thread at a time.</p>
  * 
+ * <h6>Reuse</h6>
+ * <p>A StaxxasStreamWriter can be reused for another document by calling
+ * {@link #reset(Writer)} or {@link #reset(OutputStream)}.  Its namespace mappings 
+ * and, with the native UTF-8 writer, its buffers are kept.  For high document 
+ * rates, a {@link StaxxasWriterPool} hands out reset writers, which are returned
+ * to the pool by {@link #close()}, typically in a try-with-resources block.</p>
+ * 
+ * <h6>Native UTF-8 output</h6>
+ * <p>If you construct a StaxxasStreamWriter with an {@link java.io.OutputStream},
+ * the JDK's StAX implementation is bypassed and a {@link Utf8XMLStreamWriter} 
+ * is used instead. It escapes and UTF-8 encodes directly into a reusable byte
+ * buffer, avoiding the {@code Writer} and {@code CharsetEncoder} layers. Its
+ * output is the same as the JDK's UTF-8 output.</p>
+ * 
+ * <h6>Asynchronous output</h6>
+ * <p>To keep disk or socket writes off the thread generating the document, 
+ * pass in an {@link AsyncOutputStream} wrapping the real destination.  
+ * {@link #endDoc()} then returns once all output has been written to it.</p>
+ * 
+ * <h6>Lazy namespace declaration</h6>
+ * <p>By default, every mapped namespace is declared on the root element.  When
+ * only a few of many mapped namespaces are used in each document, call 
+ * {@link #setLazyNamespaces(boolean)} to have namespaces declared only where
+ * they are first used.</p>
+ * 
+ * <h6>Metrics</h6>
+ * <p>Counts of the elements, attributes, text and bytes written, and the time
+ * taken to flush each document, can be collected in a {@link StaxxasMetrics}
+ * passed to {@link #setMetrics(StaxxasMetrics)} and published over JMX.
+ * On JVMs with Flight Recorder, each document and each flush at its end is also
+ * recorded as a JFR event, {@code net.thornydev.staxxas.Document} and
+ * {@code net.thornydev.staxxas.Flush}; both are disabled by default.</p>
+ * 
  * @author midpeter444
  *
  */
-public class StaxxasStreamWriter {
+public class StaxxasStreamWriter implements AutoCloseable {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  static final int DEFAULT_RECORD_BATCH_SIZE = 1000;
+
+  /**
+   * Whether the JVM has Flight Recorder, so that {@link StaxxasEvents} can be used.
+   */
+  private static final boolean JFR = isJfrAvailable();
   /**
    * The JAXP XMLStreamWriter - it does all the actual writing of the XML doc.
    */
-  private final XMLStreamWriter w;
+  private XMLStreamWriter w;
+
+  /**
+   * Same object as w when the underlying writer is the native Utf8XMLStreamWriter,
+   * otherwise null.  Used for the fast paths that only it supports, such as 
+   * writing pre-encoded {@link Name}s.
+   */
+  private Utf8XMLStreamWriter utf8;
 
   /**
    * The java.io.Writer underlying the XMLStreamWriter.
    * Keep a reference to this if it is passed to the constructor, so we
    * can close it when endDoc() is called.  Optional.
    */
-  private final Writer writer;
+  private Writer writer;
+
+  /**
+   * The java.io.OutputStream the native {@link Utf8XMLStreamWriter} writes to.
+   * Kept so that it can be closed when endDoc() is called.  Optional.
+   */
+  private OutputStream os;
+
+  /**
+   * The XMLOutputFactory passed to the constructor, if any.  Used to create
+   * a new XMLStreamWriter when {@link #reset(Writer)} is called.
+   */
+  private XMLOutputFactory factory;
+
+  /**
+   * Set once endDoc() has flushed and closed the underlying writers, so
+   * that close() does not do it a second time.
+   */
+  private boolean docEnded;
+
+  /**
+   * The pool this StaxxasStreamWriter was acquired from and must be returned
+   * to when it is closed.  Null if it is not currently checked out of a pool.
+   */
+  StaxxasWriterPool pool;
 
   /**
    * Map of namespace prefixes to URIs that should be written to the document.
@@ -125,6 +212,12 @@ public class StaxxasStreamWriter {
    * started will be prefixed with this namespace prefix.
    */
   private String currNamespace;
+
+  /**
+   * The URI that currNamespace maps to, looked up once when the current namespace
+   * is set rather than once per element.
+   */
+  private String currNamespaceUri;
     
   /**
    * If the user is using a default namespace (which has no prefix), then this
@@ -134,6 +227,48 @@ public class StaxxasStreamWriter {
    */
   private String defaultNamespace;
 
+  /**
+   * Scratch space for passing a CharSequence to an XMLStreamWriter other than
+   * the native one in chunks.  Allocated on first use.
+   */
+  private char[] chars;
+
+  /**
+   * Whether the {@code utf8Characters} methods check their input is well-formed UTF-8.
+   */
+  private boolean validateUtf8;
+
+  /**
+   * Number of records written together by the {@code records} methods, and 
+   * whether the output is flushed after each batch.
+   */
+  private int recordBatchSize = DEFAULT_RECORD_BATCH_SIZE;
+  private boolean flushRecordBatches;
+
+  /**
+   * Tracks namespace declarations when namespaces are declared lazily,
+   * otherwise null.
+   */
+  private LazyNamespaces lazyNs;
+
+  /**
+   * Where the counts below are added when a document is ended or closed.  Optional.
+   */
+  private StaxxasMetrics metrics;
+
+  /**
+   * The Flight Recorder event for the current document, started in startDoc()
+   * if it is enabled.  Typed as Object so that this class does not depend on jdk.jfr.
+   */
+  private Object docEvent;
+
+  /* counts for the current document, kept whether or not metrics are enabled */
+  private long elementCount;
+  private long attributeCount;
+  private long charCount;
+  /** set on the writer of a fragment whose parent counts pre-encoded text */
+  private boolean countUtf8Chars;
+
   /* ---[ Constructors ]--- */
     
   /**
@@ -149,8 +284,9 @@ public class StaxxasStreamWriter {
    * @param nsToUri Map of each namespace (prefix) to its corresponding URI
    */
   public StaxxasStreamWriter(XMLStreamWriter sw, Map<String,String> nsToUri) {
-    w = sw;
+    setWriter(sw);
     writer = null;
+    os = null;
     if (nsToUri == null) m = new HashMap<String,String>();
     else               m = nsToUri;
   }
@@ -167,10 +303,11 @@ public class StaxxasStreamWriter {
    * is called it will also flush and close the {@code Writer}, not just the 
    * {@code XMLStreamWriter}.</p>
    * 
-   * <p>The disadvantage of using this constructor is that the caller will 
-   * not have access to the {@link XMLOutputFactory} that creates the 
-   * {@code XMLStreamWriter}, and so cannot modify any settings on those objects.
-   * </p>
+   * <p>The {@code XMLStreamWriter} is created by the shared {@link XMLOutputFactory}
+   * held by {@link XMLOutputFactoryProvider}, so the factory lookup is only done 
+   * once.  To change the settings of that factory, install a preconfigured one 
+   * with {@link XMLOutputFactoryProvider#setFactory(XMLOutputFactory)} or use the
+   * constructor that takes an {@code XMLOutputFactory}.</p>
    * 
    * @param writer the Writer object to write the XML document to
    * writing of the XML elements and content
@@ -181,15 +318,41 @@ public class StaxxasStreamWriter {
    * {@code XMLStreamWriter}.
    */
   public StaxxasStreamWriter(Writer writer, Map<String,String> nsToUri) {
+    this(writer, nsToUri, null);
+  }
+
+  /**
+   * Creates a StaxxasStreamWriter with a Writer that gets passed to a StAX 
+   * {@link javax.xml.stream.XMLStreamWriter} created by the {@link XMLOutputFactory}
+   * passed in, and accepting a filled out set of mappings of namespace prefixes 
+   * to namespace URIs.
+   * 
+   * <p>See additional documentation in the other constructor that takes
+   * a Writer and a Map.</p>
+   * 
+   * @param writer the Writer object to write the XML document to
+   * @param nsToUri Map of each namespace (prefix) to its corresponding URI
+   * @param factory preconfigured XMLOutputFactory to create the {@code XMLStreamWriter}
+   * with. If null, the shared factory from {@link XMLOutputFactoryProvider} is used.
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying 
+   * StAX library throws an {@code XMLStreamException} or the {@link XMLOutputFactory}
+   * throws a {@link FactoryConfigurationError} when creating the 
+   * {@code XMLStreamWriter}.
+   */
+  public StaxxasStreamWriter(Writer writer, Map<String,String> nsToUri, 
+                             XMLOutputFactory factory) {
+    this.os = null;
+    this.factory = factory;
     try {
       this.writer = writer;
-      w = XMLOutputFactory.newFactory().createXMLStreamWriter(writer);
+      if (factory == null) factory = XMLOutputFactoryProvider.getFactory();
+      setWriter(factory.createXMLStreamWriter(writer));
     } catch (XMLStreamException e) {
       throw new StaxxasStreamWriterException("StaxxasStreamWriter constructor",
-                                             "XMLOutputFactory.newFactory().createXMLStreamWriter(writer)", e);
+                                             "XMLOutputFactory.createXMLStreamWriter(writer)", e);
     } catch (FactoryConfigurationError e) {
       throw new StaxxasStreamWriterException("StaxxasStreamWriter constructor",
-                                             "XMLOutputFactory.newFactory().createXMLStreamWriter(writer)", e);
+                                             "XMLOutputFactory.createXMLStreamWriter(writer)", e);
     }
     if (nsToUri == null) m = new HashMap<String,String>();
     else               m = nsToUri;
@@ -227,6 +390,247 @@ public class StaxxasStreamWriter {
     this(sw, null);
   }
 
+  /**
+   * Creates a StaxxasStreamWriter that writes UTF-8 encoded XML directly to an
+   * {@link java.io.OutputStream} using the native {@link Utf8XMLStreamWriter}
+   * rather than a JDK StAX {@code XMLStreamWriter}, and accepting a filled out 
+   * set of mappings of namespace prefixes to namespace URIs.
+   * 
+   * <p>When {@code endDoc()} is called the {@code OutputStream} will be 
+   * flushed and closed.</p>
+   * 
+   * @param out the OutputStream to write the XML document to
+   * @param nsToUri Map of each namespace (prefix) to its corresponding URI
+   */
+  public StaxxasStreamWriter(OutputStream out, Map<String,String> nsToUri) {
+    setWriter(new Utf8XMLStreamWriter(out));
+    writer = null;
+    os = out;
+    if (nsToUri == null) m = new HashMap<String,String>();
+    else               m = nsToUri;
+  }
+
+  /**
+   * Creates a StaxxasStreamWriter that writes UTF-8 encoded XML directly to an
+   * {@link java.io.OutputStream} using the native {@link Utf8XMLStreamWriter}.
+   * 
+   * <p>See additional documentation in the other constructor that takes
+   * an OutputStream.</p>
+   * 
+   * @param out the OutputStream to write the XML document to
+   */
+  public StaxxasStreamWriter(OutputStream out) {
+    this(out, null);
+  }
+
+  /**
+   * Creates a StaxxasStreamWriter that writes UTF-8 encoded XML to an NIO
+   * {@link WritableByteChannel} using the native {@link Utf8XMLStreamWriter}
+   * and a {@link ChannelOutputStream} with its default direct buffers, and 
+   * accepting a filled out set of mappings of namespace prefixes to namespace URIs.
+   * Non-blocking channels are supported.  For other buffer settings, pass a 
+   * ChannelOutputStream to the OutputStream constructor instead.
+   * 
+   * <p>When {@code endDoc()} is called everything buffered is written and the
+   * channel is closed.</p>
+   * 
+   * @param channel the channel to write the XML document to
+   * @param nsToUri Map of each namespace (prefix) to its corresponding URI
+   */
+  public StaxxasStreamWriter(WritableByteChannel channel, Map<String,String> nsToUri) {
+    this(new ChannelOutputStream(channel), nsToUri);
+  }
+
+  /**
+   * Creates a StaxxasStreamWriter that writes UTF-8 encoded XML to an NIO
+   * {@link WritableByteChannel}.  See the other constructor that takes a channel.
+   * 
+   * @param channel the channel to write the XML document to
+   */
+  public StaxxasStreamWriter(WritableByteChannel channel) {
+    this(channel, null);
+  }
+
+  /* ---[ Reuse ]--- */
+
+  /**
+   * Discards the state of the current document and prepares this StaxxasStreamWriter
+   * to write a new document to the Writer passed in.  A new StAX 
+   * {@code XMLStreamWriter} is created with the XMLOutputFactory given to the
+   * constructor, or the shared one from {@link XMLOutputFactoryProvider}.
+   * 
+   * <p>The namespace mappings and default namespace are kept; the current namespace
+   * is unset.  As with the constructor that takes a Writer, {@code endDoc()} will 
+   * flush and close the Writer.</p>
+   * 
+   * @param writer the Writer object to write the next XML document to
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying 
+   * StAX library throws an {@code XMLStreamException} when creating the 
+   * {@code XMLStreamWriter}.
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter reset(Writer writer) {
+    try {
+      XMLOutputFactory f = factory;
+      if (f == null) f = XMLOutputFactoryProvider.getFactory();
+      setWriter(f.createXMLStreamWriter(writer));
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("reset",
+                                             "XMLOutputFactory.createXMLStreamWriter(writer)", e);
+    }
+    this.writer = writer;
+    this.os = null;
+    resetState();
+    return this;
+  }
+
+  /**
+   * Discards the state of the current document and prepares this StaxxasStreamWriter
+   * to write a new document to the OutputStream passed in using the native
+   * {@link Utf8XMLStreamWriter}.  If that is already the underlying writer, it
+   * is reset and its buffers are reused.
+   * 
+   * <p>The namespace mappings and default namespace are kept; the current namespace
+   * is unset.  As with the constructor that takes an OutputStream, {@code endDoc()} will 
+   * flush and close the OutputStream.</p>
+   * 
+   * @param out the OutputStream to write the next XML document to
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter reset(OutputStream out) {
+    if (utf8 != null) {
+      utf8.reset(out);
+    } else {
+      setWriter(new Utf8XMLStreamWriter(out));
+    }
+    this.writer = null;
+    this.os = out;
+    resetState();
+    return this;
+  }
+
+  /**
+   * Closes this StaxxasStreamWriter.  If {@link #endDoc()} has not been called, the 
+   * underlying writers are flushed and closed without ending the document. 
+   * 
+   * <p>If this StaxxasStreamWriter was acquired from a {@link StaxxasWriterPool}, 
+   * it is returned to that pool and must not be used again until it is handed out
+   * by the pool again.</p>
+   * 
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException or the underlying stream throws an IOException
+   */
+  @Override
+  public void close() {
+    try {
+      if (!docEnded) {
+        docEnded = true;
+        finish();
+      }
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("close", "flush/close", e);       
+    } catch (IOException e) {
+      throw new StaxxasStreamWriterException("close", "flush/close", e);       
+    } finally {
+      StaxxasWriterPool p = pool;
+      pool = null;
+      if (p != null) {
+        p.release(this);
+      }
+    }
+  }
+
+  /**
+   * Flushes what has been written so far to the underlying output, without 
+   * ending the document.  Like the flush at the end of a document, it is
+   * recorded as a Flight Recorder flush event when that is enabled.
+   * 
+   * @throws StaxxasStreamWriterException (RuntimeException) if the 
+   * underlying StAX library throws an XMLStreamException 
+   */
+  void flush() {
+    Object flushEvent = JFR ? StaxxasEvents.beginFlush() : null;
+    try {
+      w.flush();
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("flush", "flush", e);
+    }
+    if (flushEvent != null) {
+      StaxxasEvents.commitFlush(flushEvent, utf8 == null ? 0 : utf8.bytesWritten());
+    }
+  }
+
+  /* ---[ Fragments ]--- */
+
+  /**
+   * Creates a {@link Fragment}: a part of this document that can be written
+   * on another thread with its own StaxxasStreamWriter and then spliced into
+   * this one with {@link #splice(Fragment)}.  The fragment shares this writer's
+   * namespace mappings and current namespace.
+   * 
+   * @return a new Fragment of this document
+   */
+  public Fragment fragment() {
+    Fragment f = new Fragment(this, m, currNamespace, defaultNamespace);
+    f.writer().setLazyNamespaces(lazyNs != null);
+    f.writer().countUtf8Chars = countingUtf8Chars();
+    return f;
+  }
+
+  /**
+   * Writes a {@link Fragment} of this document at the current position, first
+   * waiting for it to be completed.  Fragments appear in the document in the
+   * order they are spliced.
+   * 
+   * <p>Splicing needs direct access to the output, so it is supported when this
+   * StaxxasStreamWriter was created with an OutputStream or a Writer, but not
+   * when it wraps an XMLStreamWriter passed in by the caller.</p>
+   * 
+   * @param f a Fragment created by this writer's {@link #fragment()} method
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   * @throws IllegalArgumentException if the Fragment was created by a different writer
+   * @throws IllegalStateException if this writer wraps a caller's XMLStreamWriter
+   * @throws StaxxasStreamWriterException (RuntimeException) if the fragment failed, 
+   * the thread is interrupted while waiting, or writing the fragment fails
+   */
+  public StaxxasStreamWriter splice(Fragment f) {
+    if (f.parent != this) {
+      throw new IllegalArgumentException("Fragment was created by a different StaxxasStreamWriter");
+    }
+    if (utf8 == null && writer == null) {
+      throw new IllegalStateException("Fragments need a StaxxasStreamWriter created with a Writer or OutputStream");
+    }
+    Throwable failure;
+    try {
+      failure = f.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new StaxxasStreamWriterException("splice", "writeRawUtf8", e);
+    }
+    if (failure != null) {
+      throw new StaxxasStreamWriterException("splice", "writeRawUtf8", failure);
+    }
+    StaxxasStreamWriter fw = f.writer();
+    elementCount += fw.elementCount;
+    attributeCount += fw.attributeCount;
+    charCount += fw.charCount;
+    try {
+      if (utf8 != null) {
+        utf8.writeRawUtf8(f.bytes(), 0, f.length());
+      } else {
+        // an empty text write makes the StAX writer finish any open start tag
+        w.writeCharacters("");
+        w.flush();
+        writer.write(new String(f.bytes(), 0, f.length(), UTF8));
+      }
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("splice", "writeRawUtf8", e);
+    } catch (IOException e) {
+      throw new StaxxasStreamWriterException("splice", "flush/write", e);
+    }
+  }
+
   /* ---[ Helper setter/mapper functions ]--- */
     
   /**
@@ -250,6 +654,10 @@ public class StaxxasStreamWriter {
    */
   public void mapNamespaceToUri(String ns, String uri) {
     m.put(ns, uri);
+    if (lazyNs != null) lazyNs.mappingsChanged();
+    if (ns != null && ns.equals(currNamespace)) {
+      currNamespaceUri = uri;
+    }
   }
 
   /**
@@ -264,6 +672,10 @@ public class StaxxasStreamWriter {
    */
   public void mapNamespaceToUri(Map<String,String> nsToUri) {
     m.putAll(nsToUri);
+    if (lazyNs != null) lazyNs.mappingsChanged();
+    if (currNamespace != null && nsToUri.containsKey(currNamespace)) {
+      currNamespaceUri = nsToUri.get(currNamespace);
+    }
   }
 
   /**
@@ -282,6 +694,98 @@ public class StaxxasStreamWriter {
   public void setDefaultNamespace(String nsUri) {
     defaultNamespace = nsUri;
   }
+
+  /**
+   * Turns on counting of what this writer writes into the {@link StaxxasMetrics}
+   * passed in.  The counts of each document are added to it when the document
+   * is ended with {@link #endDoc()} or the writer is closed, together with the
+   * time taken to flush and close the output.  Fragments spliced into the
+   * document are counted with it.
+   * 
+   * @param metrics metrics to add to, usually shared by many writers; null
+   * turns counting off
+   */
+  public void setMetrics(StaxxasMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Sets whether the {@code utf8Characters} methods check that the bytes passed
+   * in are well-formed UTF-8 before writing them.  Off by default, in which case
+   * the bytes are trusted and malformed input is written as is by the native
+   * {@link Utf8XMLStreamWriter}, or decoded with replacement chars for other
+   * {@code XMLStreamWriter}s.
+   * 
+   * @param validate true to reject malformed UTF-8 with a StaxxasStreamWriterException
+   */
+  public void setValidateUtf8(boolean validate) {
+    validateUtf8 = validate;
+  }
+
+  /**
+   * Sets the number of records the {@code records} methods write as a batch.
+   * For a parallel Stream of records, each batch is written as a {@link Fragment}
+   * on its own thread.  The default is 1000.
+   * 
+   * @param batchSize records per batch, at least 1
+   */
+  public void setRecordBatchSize(int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize must be at least 1: " + batchSize);
+    }
+    recordBatchSize = batchSize;
+  }
+
+  /**
+   * Sets whether the {@code records} methods flush the output after each batch
+   * of records, so that a consumer at the other end of a socket or pipe 
+   * receives a long document in steady parts.  Off by default.  Leave it off
+   * when writing to an {@link AsyncOutputStream}, whose flush waits for all
+   * output to be written.
+   * 
+   * @param flush true to flush after each batch
+   */
+  public void setFlushRecordBatches(boolean flush) {
+    flushRecordBatches = flush;
+  }
+
+  /**
+   * Sets whether namespaces are declared only where they are used, rather than
+   * all the mapped namespaces being declared on the root element.  Off by default.
+   * 
+   * <p>When on, {@link #startRootElement(String)} declares only the default
+   * namespace, and each prefix is declared when an element or attribute first
+   * uses it.  With the native {@link Utf8XMLStreamWriter}, the declaration is
+   * inserted into the root element's start tag if that is still in the output
+   * buffer, as it is for documents smaller than the buffer, so that each
+   * namespace used is declared once.  Otherwise it is declared on the element
+   * using it and is in scope for that element only, so it may be repeated on
+   * later elements.  {@link #getNamespaceBytesSaved()} tells how well this worked.</p>
+   * 
+   * <p>Markup written by a {@link Template} is not tracked, so it should only 
+   * use namespaces declared on the elements around it.</p>
+   * 
+   * <p>Call this method before {@link #startDoc()}.</p>
+   * 
+   * @param lazy true to declare namespaces where they are used
+   */
+  public void setLazyNamespaces(boolean lazy) {
+    if (lazy && lazyNs == null) {
+      lazyNs = new LazyNamespaces();
+    } else if (!lazy) {
+      lazyNs = null;
+    }
+  }
+
+  /**
+   * @return the number of bytes of namespace declarations the current or last 
+   * document did not write, compared with declaring every mapped namespace on
+   * the root element, because lazy namespaces are on; negative if repeating 
+   * declarations on elements wrote more.  0 if lazy namespaces are off.
+   */
+  public long getNamespaceBytesSaved() {
+    return lazyNs == null ? 0 : lazyNs.bytesSaved();
+  }
     
   /**
    * Sets the current prefixed namespace for the XML document.
@@ -319,16 +823,69 @@ public class StaxxasStreamWriter {
    * registered to a URI
    */
   public void setCurrentNamespace(String ns) {
+    String uri = null;
+    if (ns != null) {
+      uri = m.get(ns);
+      if (uri == null && !m.containsKey(ns)) {
+        throw new IllegalArgumentException("Namespace " + ns + " has not been mapped to a uri");
+      }
+    }
+    currNamespace = ns;
+    currNamespaceUri = uri;
+  }
+
+  /**
+   * Sets the current prefixed namespace for the XML document using a precompiled
+   * {@link Namespace} handle from a {@link NamespaceSet}.  Unlike 
+   * {@link #setCurrentNamespace(String)}, the prefix is not checked against the 
+   * registered mappings.
+   * 
+   * <p>This is not an overload of {@code setCurrentNamespace} so that 
+   * {@code setCurrentNamespace(null)} stays unambiguous.</p>
+   * 
+   * @param ns Namespace handle, or {@code null} to unset the current namespace
+   */
+  public void useNamespace(Namespace ns) {
     if (ns == null) {
       currNamespace = null;
-    } else if (!m.containsKey(ns)) {
-      throw new IllegalArgumentException("Namespace " + ns + " has not been mapped to a uri");
+      currNamespaceUri = null;
+    } else {
+      currNamespace = ns.getPrefix();
+      currNamespaceUri = ns.getUri();
     }
-    currNamespace = ns;
   }
 
     
     
+  /**
+   * Creates a pre-encoded, unprefixed {@link Name} token for use with 
+   * {@link #startElement(Name)}, {@link #emptyElement(Name)} and 
+   * {@link #attribute(Name, String)}.  Create Names once and reuse them; 
+   * they are not tied to this StaxxasStreamWriter.
+   * 
+   * @param localName element or attribute name
+   * @return the Name token
+   * @throws IllegalArgumentException if localName is not a valid XML name
+   */
+  public Name name(String localName) {
+    return Name.of(localName);
+  }
+
+  /**
+   * Creates a pre-encoded, prefixed {@link Name} token using a namespace prefix
+   * already registered with this StaxxasStreamWriter.
+   * 
+   * @param nsPrefix registered namespace prefix. <code>null</code> creates an 
+   * unprefixed Name.
+   * @param localName element or attribute name
+   * @return the Name token
+   * @throws IllegalArgumentException if localName is not a valid XML name or
+   * the prefix has not been registered to a URI
+   */
+  public Name name(String nsPrefix, String localName) {
+    return Name.of(nsPrefix, localName, nsPrefix == null ? null : m.get(nsPrefix));
+  }
+
   /* ---[ "Writer" delegating functions ]--- */
 
   /**
@@ -346,6 +903,7 @@ public class StaxxasStreamWriter {
     try {
       w.writeStartDocument();
       setPrefixes();
+      if (JFR) docEvent = StaxxasEvents.beginDocument();
       return this;
           
     } catch (XMLStreamException e) {
@@ -372,6 +930,7 @@ public class StaxxasStreamWriter {
     try {
       w.writeStartDocument(version);
       setPrefixes();
+      if (JFR) docEvent = StaxxasEvents.beginDocument();
       return this;
           
     } catch (XMLStreamException e) {
@@ -406,6 +965,7 @@ public class StaxxasStreamWriter {
     try {
       w.writeStartDocument(encoding, version);
       setPrefixes();
+      if (JFR) docEvent = StaxxasEvents.beginDocument();
       return this;
           
     } catch (XMLStreamException e) {
@@ -430,14 +990,8 @@ public class StaxxasStreamWriter {
   public StaxxasStreamWriter endDoc() {
     try {
       w.writeEndDocument();
-      w.flush();
-      w.close();
-      // if user gave us the java.io.Writer directly, we also 
-      // flush and close that
-      if (writer != null) {
-        writer.flush();
-        writer.close();
-      }
+      docEnded = true;
+      finish();
       return this;
     } catch (XMLStreamException e) {
       throw new StaxxasStreamWriterException("endDoc", 
@@ -510,41 +1064,218 @@ public class StaxxasStreamWriter {
    */
   public StaxxasStreamWriter startElement(String localName, String nsPrefix) {
     String hold = currNamespace;
+    String holdUri = currNamespaceUri;
     currNamespace = nsPrefix;
-    writeElement(localName);
-    currNamespace = hold;
+    currNamespaceUri = nsPrefix == null ? null : m.get(nsPrefix);
+    try {
+      writeElement(localName);
+    } finally {
+      currNamespace = hold;
+      currNamespaceUri = holdUri;
+    }
     return this;
   }
 
   /**
-   * Writes an empty XML element as a single tag: e.g., 
-   * <code>{@literal <foo/>}</code>.
+   * Starts a new XML element in the namespace of the {@link Namespace} handle 
+   * passed in.  Like {@link #startElement(String, String)}, the namespace only
+   * applies to this element, but no lookup of the prefix is needed.
    * 
-   * @param localName name of element
+   * @param ns Namespace handle from a {@link NamespaceSet}. <code>null</code>
+   * is allowed to write an unprefixed element.
+   * @param localName name of XML element to start
    * @throws StaxxasStreamWriterException (RuntimeException) if the underlying 
    * StAX library throws an XMLStreamException 
    * @return this StaxxasStreamWriter in order to allow method chaining
    */
-  public StaxxasStreamWriter emptyElement(String localName) {
-    writeEmptyElement(localName);
-    return this;
+  public StaxxasStreamWriter startElement(Namespace ns, String localName) {
+    elementCount++;
+    try {
+      if (ns == null) {
+        w.writeStartElement(localName);
+      } else {
+        w.writeStartElement(ns.getPrefix(), localName, ns.getUri());
+      }
+      if (lazyNs != null) opened(false, ns == null ? null : ns.getPrefix(), ns == null ? null : ns.getUri());
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("startElement", "writeStartElement", e);       
+    }
   }
 
   /**
-   * Convenience method to write a closing tag. It can be self-documenting to say which 
-   * tag you are closing if the {@code startElement()} call is far away.  The string
-   * passed in is ignored and not validated in any way.  It is only there to have 
-   * self-documenting code.
+   * Starts a new XML element using a pre-encoded {@link Name} token.  The
+   * current namespace is ignored: the element is prefixed only if the Name is.
+   * With the native {@link Utf8XMLStreamWriter}, the start and end tags are 
+   * copied straight from the Name's encoded bytes.
    * 
-   * @param localName ignored: It is for documentation purposes only.
+   * @param name element name token
    * @throws StaxxasStreamWriterException (RuntimeException) if the underlying 
    * StAX library throws an XMLStreamException 
    * @return this StaxxasStreamWriter in order to allow method chaining
    */
-  public StaxxasStreamWriter endElement(String localName) {
-    return endElement();
+  public StaxxasStreamWriter startElement(Name name) {
+    elementCount++;
+    try {
+      if (utf8 != null) {
+        utf8.writeStartElement(name);
+      } else if (name.getPrefix() == null) {
+        w.writeStartElement(name.getLocalName());
+      } else {
+        w.writeStartElement(name.getPrefix(), name.getLocalName(), name.getUri());
+      }
+      if (lazyNs != null) opened(false, name.getPrefix(), name.getUri());
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("startElement", "writeStartElement", e);       
+    }
   }
-    
+
+  /**
+   * Writes an empty XML element as a single tag: e.g., 
+   * <code>{@literal <foo/>}</code>.
+   * 
+   * @param localName name of element
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying 
+   * StAX library throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter emptyElement(String localName) {
+    writeEmptyElement(localName);
+    return this;
+  }
+
+  /**
+   * Writes an empty XML element in the namespace of the {@link Namespace} handle 
+   * passed in, regardless of the current namespace.
+   * 
+   * @param ns Namespace handle from a {@link NamespaceSet}. <code>null</code>
+   * is allowed to write an unprefixed element.
+   * @param localName name of element
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying 
+   * StAX library throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter emptyElement(Namespace ns, String localName) {
+    elementCount++;
+    try {
+      if (ns == null) {
+        w.writeEmptyElement(localName);
+      } else {
+        w.writeEmptyElement(ns.getPrefix(), localName, ns.getUri());
+      }
+      if (lazyNs != null) opened(true, ns == null ? null : ns.getPrefix(), ns == null ? null : ns.getUri());
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("emptyElement", "writeEmptyElement", e);       
+    }
+  }
+
+  /**
+   * Writes an empty XML element using a pre-encoded {@link Name} token.  
+   * The current namespace is ignored: the element is prefixed only if the Name is.
+   * 
+   * @param name element name token
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying 
+   * StAX library throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter emptyElement(Name name) {
+    elementCount++;
+    try {
+      if (utf8 != null) {
+        utf8.writeEmptyElement(name);
+      } else if (name.getPrefix() == null) {
+        w.writeEmptyElement(name.getLocalName());
+      } else {
+        w.writeEmptyElement(name.getPrefix(), name.getLocalName(), name.getUri());
+      }
+      if (lazyNs != null) opened(true, name.getPrefix(), name.getUri());
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("emptyElement", "writeEmptyElement", e);       
+    }
+  }
+
+  /**
+   * Writes a root element containing every record of the Iterable passed in,
+   * each written by the RecordWriter: 
+   * {@literal
+   *     sx.startDoc().records("orders", orders, new RecordWriter<Order>() {
+   *       public void write(StaxxasStreamWriter sx, Order o) {
+   *         sx.startElement(ORDER).attribute(ID, o.getId()).characters(o.getCustomer()).endElement();
+   *       }
+   *     }).endDoc();
+   * }
+   * </p>
+   * 
+   * <p>Records are written in batches of {@link #setRecordBatchSize(int)}, after
+   * each of which the output is flushed if {@link #setFlushRecordBatches(boolean)}
+   * is on.  The root element is written with {@link #startRootElement(String)},
+   * so it declares the namespaces.</p>
+   * 
+   * @param rootName name of the root element
+   * @param records the records, read once
+   * @param recordWriter writes each record
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying 
+   * StAX library throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public <T> StaxxasStreamWriter records(String rootName, Iterable<? extends T> records,
+                                         RecordWriter<? super T> recordWriter) {
+    startRootElement(rootName);
+    writeRecords(records.iterator(), recordWriter);
+    return endElement();
+  }
+
+  /**
+   * Writes a root element containing every record of the Stream passed in, 
+   * each written by the RecordWriter, in the order of the Stream.  See 
+   * {@link #records(String, Iterable, RecordWriter)}.
+   * 
+   * <p>If the Stream is parallel, the records are taken from it in batches of
+   * {@link #setRecordBatchSize(int)} and each batch is written as a 
+   * {@link Fragment} on the common ForkJoinPool, which parallel streams also
+   * use, while this thread splices the finished ones into the document in
+   * order.  At most twice as many batches as the pool has threads are in memory
+   * at once.  The RecordWriter must then be thread-safe.  This needs a 
+   * StaxxasStreamWriter created with an OutputStream, channel or Writer; with
+   * an XMLStreamWriter the records are written on this thread.</p>
+   * 
+   * @param rootName name of the root element
+   * @param records the records; a terminal operation is applied to it
+   * @param recordWriter writes each record
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying 
+   * StAX library throws an XMLStreamException, or with the cause if writing 
+   * a record on another thread fails
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public <T> StaxxasStreamWriter records(String rootName, Stream<? extends T> records,
+                                         RecordWriter<? super T> recordWriter) {
+    startRootElement(rootName);
+    if (records.isParallel() && (utf8 != null || writer != null)) {
+      writeRecordsInParallel(records.iterator(), recordWriter);
+    } else {
+      writeRecords(records.iterator(), recordWriter);
+    }
+    return endElement();
+  }
+
+  /**
+   * Convenience method to write a closing tag. It can be self-documenting to say which 
+   * tag you are closing if the {@code startElement()} call is far away.  The string
+   * passed in is ignored and not validated in any way.  It is only there to have 
+   * self-documenting code.
+   * 
+   * @param localName ignored: It is for documentation purposes only.
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying 
+   * StAX library throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter endElement(String localName) {
+    return endElement();
+  }
+    
   /**
    * Write the end tag (element) of the last tag that was started.
    * 
@@ -555,6 +1286,7 @@ public class StaxxasStreamWriter {
   public StaxxasStreamWriter endElement() {
     try {
       w.writeEndElement();
+      if (lazyNs != null) lazyNs.close();
       return this;
     } catch (XMLStreamException e) {
       throw new StaxxasStreamWriterException("endDoc", "writeEndElement", e);
@@ -579,6 +1311,7 @@ public class StaxxasStreamWriter {
    * @return this StaxxasStreamWriter in order to allow method chaining
    */
   public StaxxasStreamWriter attribute(String localName, String value) {
+    attributeCount++;
     try {
       w.writeAttribute(localName, value);
       return this;
@@ -587,6 +1320,285 @@ public class StaxxasStreamWriter {
     }
   }
 
+  /**
+   * Writes an attribute into the last element started using a pre-encoded 
+   * {@link Name} token.  The attribute is prefixed only if the Name is.
+   * 
+   * @param name attribute name token
+   * @param value value of attribute
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter attribute(Name name, String value) {
+    attributeCount++;
+    try {
+      if (utf8 != null) {
+        utf8.writeAttribute(name, value);
+      } else if (name.getPrefix() == null) {
+        w.writeAttribute(name.getLocalName(), value);
+      } else {
+        w.writeAttribute(name.getPrefix(), name.getUri(), name.getLocalName(), value);
+      }
+      if (lazyNs != null) declare(name.getPrefix(), name.getUri());
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("writeAttribute", "writeAttribute", e);
+    }
+  }
+
+  /**
+   * Writes an attribute with an int value into the last element started.
+   * See {@link #attribute(String, long)}.
+   * 
+   * @param localName name of attribute
+   * @param value value of attribute
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter attribute(String localName, int value) {
+    return attribute(localName, (long) value);
+  }
+
+  /**
+   * Writes an attribute with a long value into the last element started.  With
+   * the native {@link Utf8XMLStreamWriter} the digits are written straight into
+   * its output buffer; other {@code XMLStreamWriter}s are passed the value as a String.
+   * 
+   * @param localName name of attribute
+   * @param value value of attribute
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter attribute(String localName, long value) {
+    attributeCount++;
+    try {
+      if (utf8 != null) utf8.writeAttribute(localName, value);
+      else              w.writeAttribute(localName, Long.toString(value));
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("writeAttribute", "writeAttribute", e);
+    }
+  }
+
+  /**
+   * Writes an attribute with a double value, formatted as by {@link Double#toString(double)},
+   * into the last element started.  With the native {@link Utf8XMLStreamWriter} most
+   * everyday values are formatted without creating a String 
+   * (see {@link Utf8XMLStreamWriter#writeAttribute(String, double)}).
+   * 
+   * @param localName name of attribute
+   * @param value value of attribute
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter attribute(String localName, double value) {
+    attributeCount++;
+    try {
+      if (utf8 != null) utf8.writeAttribute(localName, value);
+      else              w.writeAttribute(localName, Double.toString(value));
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("writeAttribute", "writeAttribute", e);
+    }
+  }
+
+  /**
+   * Writes an attribute with the value "true" or "false" into the last element started.
+   * 
+   * @param localName name of attribute
+   * @param value value of attribute
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter attribute(String localName, boolean value) {
+    return attribute(localName, value ? "true" : "false");
+  }
+
+  /**
+   * Writes an attribute with an int value using a pre-encoded {@link Name} token.
+   * 
+   * @param name attribute name token
+   * @param value value of attribute
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter attribute(Name name, int value) {
+    return attribute(name, (long) value);
+  }
+
+  /**
+   * Writes an attribute with a long value using a pre-encoded {@link Name} token.
+   * See {@link #attribute(String, long)}.
+   * 
+   * @param name attribute name token
+   * @param value value of attribute
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter attribute(Name name, long value) {
+    if (utf8 == null) return attribute(name, Long.toString(value));
+    attributeCount++;
+    try {
+      utf8.writeAttribute(name, value);
+      if (lazyNs != null) declare(name.getPrefix(), name.getUri());
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("writeAttribute", "writeAttribute", e);
+    }
+  }
+
+  /**
+   * Writes an attribute with a double value using a pre-encoded {@link Name} token.
+   * See {@link #attribute(String, double)}.
+   * 
+   * @param name attribute name token
+   * @param value value of attribute
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter attribute(Name name, double value) {
+    if (utf8 == null) return attribute(name, Double.toString(value));
+    attributeCount++;
+    try {
+      utf8.writeAttribute(name, value);
+      if (lazyNs != null) declare(name.getPrefix(), name.getUri());
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("writeAttribute", "writeAttribute", e);
+    }
+  }
+
+  /**
+   * Writes an attribute with the value "true" or "false" using a pre-encoded
+   * {@link Name} token.
+   * 
+   * @param name attribute name token
+   * @param value value of attribute
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter attribute(Name name, boolean value) {
+    return attribute(name, value ? "true" : "false");
+  }
+
+  /**
+   * Writes an attribute with a CharSequence value, such as a StringBuilder, into
+   * the last element started.  With the native {@link Utf8XMLStreamWriter} the 
+   * value is escaped straight from the CharSequence; other {@code XMLStreamWriter}s
+   * only accept a String, so they are passed {@code value.toString()}.
+   * 
+   * @param localName name of attribute
+   * @param value value of attribute
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter attribute(String localName, CharSequence value) {
+    if (utf8 == null) return attribute(localName, value.toString());
+    attributeCount++;
+    try {
+      utf8.writeAttribute(localName, value);
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("writeAttribute", "writeAttribute", e);
+    }
+  }
+
+  /**
+   * Writes an attribute with a CharSequence value using a pre-encoded {@link Name}
+   * token.  See {@link #attribute(String, CharSequence)}.
+   * 
+   * @param name attribute name token
+   * @param value value of attribute
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter attribute(Name name, CharSequence value) {
+    if (utf8 == null) return attribute(name, value.toString());
+    attributeCount++;
+    try {
+      utf8.writeAttribute(name, value);
+      if (lazyNs != null) declare(name.getPrefix(), name.getUri());
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("writeAttribute", "writeAttribute", e);
+    }
+  }
+
+  /**
+   * Writes an attribute whose value is already UTF-8 encoded into the last element
+   * started.  As with {@link #utf8Characters(byte[], int, int)}, the native 
+   * {@link Utf8XMLStreamWriter} escapes the bytes at the byte level without decoding
+   * them and other {@code XMLStreamWriter}s are passed the decoded value.
+   * 
+   * @param localName name of attribute
+   * @param utf8 UTF-8 encoded value
+   * @param off index of the first byte of the value
+   * @param len number of bytes in the value
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException or validation is on and the bytes are malformed
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter utf8Attribute(String localName, byte[] utf8, int off, int len) {
+    if (this.utf8 == null) return attribute(localName, decodeUtf8(utf8, off, len));
+    attributeCount++;
+    try {
+      this.utf8.writeUtf8Attribute(localName, utf8, off, len, validateUtf8);
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("utf8Attribute", "writeAttribute", e);
+    }
+  }
+
+  /**
+   * Writes an attribute whose value is already UTF-8 encoded using a pre-encoded
+   * {@link Name} token.  See {@link #utf8Attribute(String, byte[], int, int)}.
+   * 
+   * @param name attribute name token
+   * @param utf8 UTF-8 encoded value
+   * @param off index of the first byte of the value
+   * @param len number of bytes in the value
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException or validation is on and the bytes are malformed
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter utf8Attribute(Name name, byte[] utf8, int off, int len) {
+    if (this.utf8 == null) return attribute(name, decodeUtf8(utf8, off, len));
+    attributeCount++;
+    try {
+      this.utf8.writeUtf8Attribute(name, utf8, off, len, validateUtf8);
+      if (lazyNs != null) declare(name.getPrefix(), name.getUri());
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("utf8Attribute", "writeAttribute", e);
+    }
+  }
+
+  /**
+   * Decodes UTF-8 for an XMLStreamWriter other than the native one, checking it
+   * first if validation is on.
+   */
+  private String decodeUtf8(byte[] utf8, int off, int len) {
+    if (validateUtf8) {
+      int bad = Utf8XMLStreamWriter.malformedIndex(utf8, off, len);
+      if (bad >= 0) {
+        throw new StaxxasStreamWriterException("utf8Attribute", "writeAttribute",
+          new XMLStreamException("Malformed UTF-8 at byte " + (bad - off)));
+      }
+    }
+    return new String(utf8, off, len, UTF8);
+  }
+
   /**
    * Writes a prefixed attribute into the last element started. 
    * 
@@ -609,8 +1621,39 @@ public class StaxxasStreamWriter {
    */
   public StaxxasStreamWriter prefixedAttribute(String prefix, 
                                                String localName, String value) {
+    attributeCount++;
     try {
-      w.writeAttribute(m.get(prefix), localName, value);
+      String uri = m.get(prefix);
+      if (lazyNs == null || uri == null) {
+        w.writeAttribute(uri, localName, value);
+      } else {
+        // the prefixes are not set on the writer in lazy mode, so pass it in
+        w.writeAttribute(prefix, uri, localName, value);
+        declare(prefix, uri);
+      }
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("writePrefixedAttribute", "writeAttribute", e);
+    }
+  }
+
+  /**
+   * Writes a prefixed attribute into the last element started, using the
+   * {@link Namespace} handle passed in rather than looking up the prefix.
+   * 
+   * @param ns Namespace handle from a {@link NamespaceSet}
+   * @param localName name of attribute
+   * @param value value of attribute
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   */
+  public StaxxasStreamWriter prefixedAttribute(Namespace ns, 
+                                               String localName, String value) {
+    attributeCount++;
+    try {
+      w.writeAttribute(ns.getPrefix(), ns.getUri(), localName, value);
+      if (lazyNs != null) declare(ns.getPrefix(), ns.getUri());
       return this;
     } catch (XMLStreamException e) {
       throw new StaxxasStreamWriterException("writePrefixedAttribute", "writeAttribute", e);
@@ -626,6 +1669,7 @@ public class StaxxasStreamWriter {
    * @return this StaxxasStreamWriter in order to allow method chaining
    */
   public StaxxasStreamWriter characters(String text) {
+    if (text != null) charCount += text.length();
     try {
       w.writeCharacters(text);
       return this;
@@ -647,6 +1691,7 @@ public class StaxxasStreamWriter {
    * @return this StaxxasStreamWriter in order to allow method chaining
    */
   public StaxxasStreamWriter characters(char[] text, int start, int len) {
+    charCount += len;
     try {
       w.writeCharacters(text, start, len);
       return this;
@@ -655,6 +1700,167 @@ public class StaxxasStreamWriter {
     }
   }
 
+  /**
+   * Writes text content held in a CharSequence, such as a StringBuilder or a 
+   * CharBuffer, inside the most recently opened XML element without turning it
+   * into a String.  A CharBuffer is read from its position to its limit and 
+   * its position is left unchanged.
+   * 
+   * <p>The native {@link Utf8XMLStreamWriter} escapes straight from the CharSequence.
+   * Other {@code XMLStreamWriter}s are passed the backing array of a CharBuffer 
+   * directly and any other CharSequence in chunks through a reusable char array.</p>
+   * 
+   * @param text text to write
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter characters(CharSequence text) {
+    if (text != null) charCount += text.length();
+    try {
+      if (utf8 != null) {
+        utf8.writeCharacters(text);
+      } else if (text instanceof String) {
+        w.writeCharacters((String) text);
+      } else if (text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+        CharBuffer cb = (CharBuffer) text;
+        w.writeCharacters(cb.array(), cb.arrayOffset() + cb.position(), cb.remaining());
+      } else {
+        writeChunks(text);
+      }
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("characters", "writeCharacters", e);
+    }
+  }
+
+  /**
+   * Writes text content that is already UTF-8 encoded, such as a message payload,
+   * inside the most recently opened XML element.
+   * 
+   * <p>The native {@link Utf8XMLStreamWriter} escapes the bytes at the byte level
+   * and otherwise copies them straight through without decoding them.  Other
+   * {@code XMLStreamWriter}s are passed the decoded text.  See 
+   * {@link #setValidateUtf8(boolean)} for how malformed input is handled.</p>
+   * 
+   * @param utf8 UTF-8 encoded text
+   * @param off index of the first byte to write
+   * @param len number of bytes to write
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException or validation is on and the bytes are malformed
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter utf8Characters(byte[] utf8, int off, int len) {
+    try {
+      if (this.utf8 != null) {
+        this.utf8.writeUtf8Characters(utf8, off, len, validateUtf8);
+        if (countingUtf8Chars()) charCount += EscapeScanner.utf16Length(utf8, off, len);
+      } else {
+        if (validateUtf8) {
+          int bad = Utf8XMLStreamWriter.malformedIndex(utf8, off, len);
+          if (bad >= 0) {
+            throw new XMLStreamException("Malformed UTF-8 at byte " + (bad - off));
+          }
+        }
+        String s = new String(utf8, off, len, UTF8);
+        w.writeCharacters(s);
+        charCount += s.length();
+      }
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("utf8Characters", "writeCharacters", e);
+    }
+  }
+
+  /**
+   * Writes text content that is already UTF-8 encoded from a ByteBuffer, from its
+   * position to its limit, inside the most recently opened XML element.  The buffer's
+   * position is left unchanged.  See {@link #utf8Characters(byte[], int, int)}.
+   * 
+   * @param utf8 UTF-8 encoded text
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException or validation is on and the bytes are malformed
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter utf8Characters(ByteBuffer utf8) {
+    if (utf8.hasArray()) {
+      return utf8Characters(utf8.array(), utf8.arrayOffset() + utf8.position(), utf8.remaining());
+    }
+    if (this.utf8 == null) {
+      byte[] b = new byte[utf8.remaining()];
+      utf8.duplicate().get(b);
+      return utf8Characters(b, 0, b.length);
+    }
+    try {
+      this.utf8.writeUtf8Characters(utf8, validateUtf8);
+      if (countingUtf8Chars()) charCount += EscapeScanner.utf16Length(utf8);
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("utf8Characters", "writeCharacters", e);
+    }
+  }
+
+  /**
+   * Writes an int as text content inside the most recently opened XML element.
+   * 
+   * @param value number to write
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter characters(int value) {
+    return characters((long) value);
+  }
+
+  /**
+   * Writes a long as text content inside the most recently opened XML element.
+   * With the native {@link Utf8XMLStreamWriter} the digits are written straight
+   * into its output buffer.
+   * 
+   * @param value number to write
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter characters(long value) {
+    try {
+      if (utf8 != null) {
+        charCount += utf8.writeCharacters(value);
+      } else {
+        String s = Long.toString(value);
+        w.writeCharacters(s);
+        charCount += s.length();
+      }
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("characters", "writeCharacters", e);
+    }
+  }
+
+  /**
+   * Writes a double, formatted as by {@link Double#toString(double)}, as text 
+   * content inside the most recently opened XML element.
+   * 
+   * @param value number to write
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying StAX library 
+   * throws an XMLStreamException 
+   * @return this StaxxasStreamWriter in order to allow method chaining
+   */
+  public StaxxasStreamWriter characters(double value) {
+    try {
+      if (utf8 != null) {
+        charCount += utf8.writeCharacters(value);
+      } else {
+        String s = Double.toString(value);
+        w.writeCharacters(s);
+        charCount += s.length();
+      }
+      return this;
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("characters", "writeCharacters", e);
+    }
+  }
+
   /**
    * Writes an XML comment inside the most recently started XML element (or at the top
    * level if no XML element is started). 
@@ -769,6 +1975,7 @@ public class StaxxasStreamWriter {
    * throws an XMLStreamException 
    */    
   public StaxxasStreamWriter cdata(String cdata) {
+    if (cdata != null) charCount += cdata.length();
     try {
       w.writeCData(cdata);
       return this;
@@ -777,13 +1984,142 @@ public class StaxxasStreamWriter {
     }
   }
     
+  /**
+   * @return bytes held in the native writer's buffer and not yet written to
+   * its OutputStream; 0 for other XMLStreamWriters
+   */
+  int bufferedBytes() {
+    return utf8 == null ? 0 : utf8.buffered();
+  }
+
+  /**
+   * @return the current namespace prefix, or null
+   */
+  String currentNamespace() {
+    return currNamespace;
+  }
+
   /* ---[ private methods ]--- */
+
+  private void setWriter(XMLStreamWriter sw) {
+    w = sw;
+    utf8 = (sw instanceof Utf8XMLStreamWriter) ? (Utf8XMLStreamWriter) sw : null;
+  }
+
+  /**
+   * If user gave us the java.io.Writer or OutputStream directly, we also 
+   * flush and close that.
+   */
+  private void closeSink() throws IOException {
+    if (writer != null) {
+      writer.flush();
+      writer.close();
+    } else if (os != null) {
+      os.flush();
+      os.close();
+    }
+  }
+
+  private void writeChunks(CharSequence text) throws XMLStreamException {
+    if (chars == null) chars = new char[256];
+    final int len = text.length();
+    int off = 0;
+    while (off < len) {
+      int n = Math.min(chars.length, len - off);
+      for (int i = 0; i < n; i++) {
+        chars[i] = text.charAt(off + i);
+      }
+      // keep surrogate pairs together in one call
+      if (off + n < len && Character.isHighSurrogate(chars[n - 1])) {
+        n--;
+      }
+      w.writeCharacters(chars, 0, n);
+      off += n;
+    }
+  }
+
+  /**
+   * Puts the settings a user of a pooled writer may have changed back to their
+   * defaults, so that they do not carry over to the next user.  The default
+   * namespace and metrics are set by the pool itself.
+   */
+  void restoreDefaultSettings() {
+    validateUtf8 = false;
+    recordBatchSize = DEFAULT_RECORD_BATCH_SIZE;
+    flushRecordBatches = false;
+    lazyNs = null;
+    countUtf8Chars = false;
+  }
+
+  private void resetState() {
+    currNamespace = null;
+    currNamespaceUri = null;
+    docEnded = false;
+    docEvent = null;
+    if (lazyNs != null) lazyNs.reset();
+    elementCount = 0;
+    attributeCount = 0;
+    charCount = 0;
+  }
+
+  /**
+   * Flushes and closes the output at the end of a document, adding the document's
+   * counts to the metrics and Flight Recorder events when they are enabled.
+   */
+  private void finish() throws XMLStreamException, IOException {
+    long start = metrics == null ? 0 : System.nanoTime();
+    Object flushEvent = JFR ? StaxxasEvents.beginFlush() : null;
+    w.flush();
+    w.close();
+    closeSink();
+    if (metrics == null && flushEvent == null && docEvent == null) {
+      return;
+    }
+    long bytes = utf8 == null ? 0 : utf8.bytesWritten();
+    if (flushEvent != null) {
+      StaxxasEvents.commitFlush(flushEvent, bytes);
+    }
+    if (docEvent != null) {
+      StaxxasEvents.commitDocument(docEvent, elementCount, attributeCount, charCount, bytes);
+      docEvent = null;
+    }
+    if (metrics != null) {
+      metrics.record(elementCount, attributeCount, charCount, bytes,
+                     lazyNs == null ? 0 : lazyNs.bytesSaved(), System.nanoTime() - start);
+    }
+    elementCount = 0;
+    attributeCount = 0;
+    charCount = 0;
+  }
+
+  /**
+   * Counting the chars in pre-encoded text takes a pass over the bytes, so it
+   * is only done when the count will be reported.
+   */
+  private boolean countingUtf8Chars() {
+    return metrics != null || docEvent != null || countUtf8Chars;
+  }
+
+  private static boolean isJfrAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    } catch (LinkageError e) {
+      return false;
+    }
+  }
     
   private void writeRootNamespaces(String name) {
     try {
       if (defaultNamespace != null) {
         w.writeDefaultNamespace(defaultNamespace);
       }
+      if (lazyNs != null) {
+        lazyNs.root(m, utf8 == null ? -1 : utf8.bytesWritten());
+        return;
+      }
       for (String ns: m.keySet()) {
         w.writeNamespace(ns, m.get(ns));
       }
@@ -793,30 +2129,157 @@ public class StaxxasStreamWriter {
   }    
 
   private void writeEmptyElement(String name) {
+    elementCount++;
     try {
-      if (currNamespace != null) {
-        w.writeEmptyElement(m.get(currNamespace), name);
+      if (currNamespaceUri != null) {
+        w.writeEmptyElement(currNamespace, name, currNamespaceUri);
+      } else if (currNamespace != null) {
+        // prefix not mapped to a URI: let the underlying writer report it
+        w.writeEmptyElement(currNamespaceUri, name);
       } else {
         w.writeEmptyElement(name);
       }       
+      if (lazyNs != null) opened(true, currNamespace, currNamespaceUri);
     } catch (XMLStreamException e) {
       throw new StaxxasStreamWriterException("emptyElement", "writeEmptyElement", e);       
     }
   }
     
   private void writeElement(String name) {
+    elementCount++;
     try {
-      if (currNamespace != null) {
-        w.writeStartElement(m.get(currNamespace), name);
+      if (currNamespaceUri != null) {
+        w.writeStartElement(currNamespace, name, currNamespaceUri);
+      } else if (currNamespace != null) {
+        // prefix not mapped to a URI: let the underlying writer report it
+        w.writeStartElement(currNamespaceUri, name);
       } else {
         w.writeStartElement(name);
       }
+      if (lazyNs != null) opened(false, currNamespace, currNamespaceUri);
     } catch (XMLStreamException e) {
       throw new StaxxasStreamWriterException("startElement", "writeStartElement", e);       
     }
   }
 
     
+  private <T> void writeRecords(Iterator<? extends T> it, RecordWriter<? super T> recordWriter) {
+    while (it.hasNext()) {
+      for (int i = recordBatchSize; i > 0 && it.hasNext(); i--) {
+        recordWriter.write(this, it.next());
+      }
+      if (flushRecordBatches) {
+        flush();
+      }
+    }
+  }
+
+  /**
+   * Writes each batch as a Fragment on the common pool and splices them in
+   * order, keeping at most two batches per pool thread in flight.  If a batch
+   * fails, the batches still in flight are told to stop and are waited for
+   * before the failure is thrown, so that no RecordWriter is still running on
+   * the caller's records once this returns.
+   */
+  private <T> void writeRecordsInParallel(Iterator<? extends T> it,
+                                          final RecordWriter<? super T> recordWriter) {
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    int window = 2 * pool.getParallelism();
+    ArrayDeque<Fragment> inFlight = new ArrayDeque<Fragment>(window);
+    ArrayDeque<ForkJoinTask<?>> tasks = new ArrayDeque<ForkJoinTask<?>>(window);
+    final AtomicBoolean abandoned = new AtomicBoolean();
+    try {
+      while (it.hasNext()) {
+        final List<T> batch = new ArrayList<T>(recordBatchSize);
+        for (int i = recordBatchSize; i > 0 && it.hasNext(); i--) {
+          batch.add(it.next());
+        }
+        final Fragment f = fragment();
+        inFlight.add(f);
+        tasks.add(pool.submit(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              for (T r : batch) {
+                if (abandoned.get()) {
+                  f.fail(new CancellationException("an earlier batch of records failed"));
+                  return;
+                }
+                recordWriter.write(f.writer(), r);
+              }
+              f.complete();
+            } catch (Throwable e) {
+              f.fail(e);
+            }
+          }
+        }));
+        if (inFlight.size() >= window) {
+          spliceRecordBatch(inFlight.poll(), tasks.poll());
+        }
+      }
+      while (!inFlight.isEmpty()) {
+        spliceRecordBatch(inFlight.poll(), tasks.poll());
+      }
+    } finally {
+      if (!tasks.isEmpty()) {
+        abandoned.set(true);
+        for (ForkJoinTask<?> t : tasks) {
+          t.quietlyJoin();
+        }
+      }
+    }
+  }
+
+  /**
+   * Joining the batch's task before splicing runs it on this thread if no
+   * pool thread has taken it yet, so a caller that is itself on a common pool
+   * thread, such as in a CompletableFuture or another parallel stream, never
+   * waits on work queued behind it.
+   */
+  private void spliceRecordBatch(Fragment f, ForkJoinTask<?> task) {
+    task.quietlyJoin();
+    splice(f);
+    if (flushRecordBatches) {
+      flush();
+    }
+  }
+
+  /**
+   * In lazy namespace mode, records that an element has been started and 
+   * declares its prefix if needed.
+   */
+  private void opened(boolean empty, String prefix, String uri) throws XMLStreamException {
+    lazyNs.open(empty);
+    declare(prefix, uri);
+  }
+
+  /**
+   * In lazy namespace mode, declares a prefix used by the current element unless
+   * it is already in scope.  While the root element's start tag is still in the
+   * native writer's buffer, the declaration is inserted there, so that it is
+   * written once for the whole document; otherwise it is written on the 
+   * current element.
+   */
+  private void declare(String prefix, String uri) throws XMLStreamException {
+    if (prefix == null || prefix.length() == 0 || uri == null) {
+      return;
+    }
+    int state = lazyNs.lookup(prefix, uri);
+    if (state == LazyNamespaces.DECLARED) {
+      return;
+    }
+    long mark = lazyNs.rootMark();
+    if (state == LazyNamespaces.UNBOUND && mark >= 0) {
+      int n = utf8.insertRootNamespace(mark, prefix, uri);
+      if (n > 0) {
+        lazyNs.hoisted(prefix, uri, n);
+        return;
+      }
+    }
+    w.writeNamespace(prefix, uri);
+    lazyNs.declared(prefix, uri);
+  }
+
   /**
    * Sets the mappings of prefixes to URIs on the XMLStreamWriter.
    * Should only be called from startDoc() after calling
@@ -827,6 +2290,10 @@ public class StaxxasStreamWriter {
    * StAX library throws an XMLStreamException 
    */
   private void setPrefixes() {
+    if (lazyNs != null) {
+      // declared as they are used instead; see declare()
+      return;
+    }
     try {
       for (String p: m.keySet()) {
         w.setPrefix(p, m.get(p));
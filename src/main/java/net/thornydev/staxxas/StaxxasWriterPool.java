@@ -0,0 +1,148 @@
+package net.thornydev.staxxas;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of StaxxasStreamWriters for applications that write a high
+ * rate of small documents.  Each writer handed out has already been reset to
+ * the Writer or OutputStream passed to {@code acquire} and has the pool's
+ * namespace configuration.  When the native {@link Utf8XMLStreamWriter} is used
+ * (by acquiring with an OutputStream), its buffers are reused as well.
+ *
+ * <p>A writer is returned to the pool by calling its {@link StaxxasStreamWriter#close()}
+ * method, most easily with try-with-resources:
+ * {@literal
+ *     try (StaxxasStreamWriter sx = pool.acquire(out)) {
+ *       sx.startDoc();
+ *       ...
+ *       sx.endDoc();
+ *     }
+ * }
+ * </p>
+ *
+ * <p>The bound is on the number of idle writers kept for reuse: {@code acquire}
+ * never blocks and creates a new writer when none is idle, and writers returned
+ * to a full pool are discarded.</p>
+ *
+ * <p>The namespace mappings are shared by all writers from the pool and are read-only,
+ * so calling {@code mapNamespaceToUri} on a pooled writer throws an
+ * {@link UnsupportedOperationException}.  The default namespace is restored each
+ * time a writer is acquired, and settings such as {@code setValidateUtf8},
+ * {@code setLazyNamespaces}, {@code setRecordBatchSize} and
+ * {@code setFlushRecordBatches} go back to their defaults, so that nothing one
+ * user of a writer changed carries over to the next.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>The pool is thread-safe.  The writers it hands out are not, and must only be
+ * used by one thread between {@code acquire} and {@code close}.</p>
+ *
+ * @author midpeter444
+ */
+public class StaxxasWriterPool {
+
+  private final BlockingQueue<StaxxasStreamWriter> idle;
+  private final Map<String,String> nsToUri;
+  private final String defaultNamespace;
+  private volatile StaxxasMetrics metrics;
+
+  /**
+   * Creates a pool of writers that do not use namespaces.
+   *
+   * @param maxIdle maximum number of idle writers kept for reuse
+   */
+  public StaxxasWriterPool(int maxIdle) {
+    this(maxIdle, null, null);
+  }
+
+  /**
+   * Creates a pool of writers with the namespace mappings and default namespace
+   * passed in.
+   *
+   * @param maxIdle maximum number of idle writers kept for reuse
+   * @param nsToUri Map of each namespace (prefix) to its corresponding URI; copied.
+   * May be null.
+   * @param defaultNamespace URI of the default namespace.  May be null.
+   */
+  public StaxxasWriterPool(int maxIdle, Map<String,String> nsToUri, String defaultNamespace) {
+    if (maxIdle < 1) {
+      throw new IllegalArgumentException("maxIdle must be at least 1: " + maxIdle);
+    }
+    idle = new ArrayBlockingQueue<StaxxasStreamWriter>(maxIdle);
+    if (nsToUri == null) this.nsToUri = Collections.emptyMap();
+    else                 this.nsToUri = Collections.unmodifiableMap(new HashMap<String,String>(nsToUri));
+    this.defaultNamespace = defaultNamespace;
+  }
+
+  /**
+   * Hands out a StaxxasStreamWriter that writes to the OutputStream passed in
+   * using the native {@link Utf8XMLStreamWriter}.
+   *
+   * @param out the OutputStream to write the XML document to
+   * @return a StaxxasStreamWriter ready for {@code startDoc()}; close it to return it
+   */
+  public StaxxasStreamWriter acquire(OutputStream out) {
+    StaxxasStreamWriter sx = idle.poll();
+    if (sx == null) {
+      sx = new StaxxasStreamWriter(out, nsToUri);
+    } else {
+      sx.reset(out);
+    }
+    return prepare(sx);
+  }
+
+  /**
+   * Hands out a StaxxasStreamWriter that writes to the Writer passed in
+   * using a StAX {@code XMLStreamWriter} from the shared {@link XMLOutputFactoryProvider}.
+   *
+   * @param writer the Writer to write the XML document to
+   * @return a StaxxasStreamWriter ready for {@code startDoc()}; close it to return it
+   * @throws StaxxasStreamWriterException (RuntimeException) if the underlying
+   * StAX library cannot create the {@code XMLStreamWriter}
+   */
+  public StaxxasStreamWriter acquire(Writer writer) {
+    StaxxasStreamWriter sx = idle.poll();
+    if (sx == null) {
+      sx = new StaxxasStreamWriter(writer, nsToUri);
+    } else {
+      sx.reset(writer);
+    }
+    return prepare(sx);
+  }
+
+  /**
+   * Sets the {@link StaxxasMetrics} that writers acquired from now on count into.
+   *
+   * @param metrics metrics to add to; null turns counting off
+   */
+  public void setMetrics(StaxxasMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * @return the number of writers currently idle in the pool
+   */
+  public int idleCount() {
+    return idle.size();
+  }
+
+  /**
+   * Called by {@link StaxxasStreamWriter#close()}.
+   */
+  void release(StaxxasStreamWriter sx) {
+    idle.offer(sx);
+  }
+
+  private StaxxasStreamWriter prepare(StaxxasStreamWriter sx) {
+    sx.restoreDefaultSettings();
+    sx.setDefaultNamespace(defaultNamespace);
+    sx.setMetrics(metrics);
+    sx.pool = this;
+    return sx;
+  }
+}
@@ -0,0 +1,236 @@
+package net.thornydev.staxxas;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * A compiled document: the markup of a document with a fixed shape stored as
+ * pre-encoded UTF-8 bytes, with named slots for the values that change.
+ * Rendering copies the stored bytes and escapes only the slot values, which is
+ * much faster than making every StaxxasStreamWriter call again.
+ *
+ * <p>The document is recorded once by writing it with a StaxxasStreamWriter
+ * and marking each varying value with a {@link Slots} method in place of the
+ * {@code characters} or {@code attribute} call:
+ * {@literal
+ *     Template t = Template.compile(nsToUri, null, new Template.Body() {
+ *         public void write(StaxxasStreamWriter sx, Template.Slots slots) {
+ *           sx.startDoc().startRootElement("envelope");
+ *           sx.startElement("header");
+ *           sx.startElement("id");
+ *           slots.text("id");
+ *           sx.endElement();
+ *           sx.emptyElement("sent");
+ *           slots.attribute("at", "timestamp");
+ *           sx.endElement();
+ *           sx.endDoc();
+ *         }
+ *       });
+ *
+ *     t.render(out, "12345", "2013-05-01T10:00:00Z");  // values in slot order
+ * }
+ * </p>
+ *
+ * <p>Slots are numbered in the order their names first appear; a name used
+ * twice takes the same value both times.  Values are escaped as text content
+ * or attribute values as the slot requires.  A null value is written as empty.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>Templates are immutable and can be rendered by many threads at once.</p>
+ *
+ * @author midpeter444
+ */
+public final class Template {
+
+  /**
+   * Writes the document being compiled.
+   */
+  public interface Body {
+    /**
+     * @param sx the StaxxasStreamWriter to record the document with
+     * @param slots marks where values go
+     */
+    void write(StaxxasStreamWriter sx, Slots slots);
+  }
+
+  /**
+   * Marks the places in a document being compiled where values are inserted
+   * when it is rendered.
+   */
+  public static final class Slots {
+    private final StaxxasStreamWriter sx;
+    private final Utf8XMLStreamWriter engine;
+    private final ByteArrayOutputStream bytes;
+    private final Map<String,Integer> names = new LinkedHashMap<String,Integer>();
+    private final List<int[]> slots = new ArrayList<int[]>();
+
+    Slots(StaxxasStreamWriter sx, Utf8XMLStreamWriter engine, ByteArrayOutputStream bytes) {
+      this.sx = sx;
+      this.engine = engine;
+      this.bytes = bytes;
+    }
+
+    /**
+     * Marks a text content slot inside the most recently started element.
+     *
+     * @param slotName name of the value
+     * @return the StaxxasStreamWriter being recorded, to allow method chaining
+     */
+    public StaxxasStreamWriter text(String slotName) {
+      // empty text closes any open start tag
+      sx.characters("");
+      add(slotName, 0, false);
+      return sx;
+    }
+
+    /**
+     * Marks an attribute, with its value in a slot, on the element most
+     * recently started.
+     *
+     * @param attrName name of the attribute
+     * @param slotName name of the value
+     * @return the StaxxasStreamWriter being recorded, to allow method chaining
+     */
+    public StaxxasStreamWriter attribute(String attrName, String slotName) {
+      sx.attribute(attrName, "");
+      // the value goes before the closing quote
+      add(slotName, 1, true);
+      return sx;
+    }
+
+    private void add(String slotName, int back, boolean attribute) {
+      try {
+        engine.flush();
+      } catch (XMLStreamException e) {
+        throw new StaxxasStreamWriterException("Template.compile", "flush", e);
+      }
+      Integer index = names.get(slotName);
+      if (index == null) {
+        index = names.size();
+        names.put(slotName, index);
+      }
+      slots.add(new int[] {bytes.size() - back, index, attribute ? 1 : 0});
+    }
+  }
+
+  /** holds onto each thread's writer so that rendering does not allocate one */
+  private static final ThreadLocal<Utf8XMLStreamWriter> ENGINES = new ThreadLocal<Utf8XMLStreamWriter>() {
+      @Override
+      protected Utf8XMLStreamWriter initialValue() {
+        return new Utf8XMLStreamWriter(null);
+      }
+    };
+
+  private final byte[] markup;
+  /** offset in markup of each slot */
+  private final int[] offsets;
+  /** index in the values of each slot */
+  private final int[] valueIndexes;
+  private final boolean[] attributes;
+  private final List<String> slotNames;
+
+  private Template(byte[] markup, Slots s) {
+    this.markup = markup;
+    int n = s.slots.size();
+    offsets = new int[n];
+    valueIndexes = new int[n];
+    attributes = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      int[] slot = s.slots.get(i);
+      offsets[i] = slot[0];
+      valueIndexes[i] = slot[1];
+      attributes[i] = slot[2] == 1;
+    }
+    slotNames = Collections.unmodifiableList(new ArrayList<String>(s.names.keySet()));
+  }
+
+  /**
+   * Records a document and compiles it into a Template.
+   *
+   * @param nsToUri Map of each namespace (prefix) to its corresponding URI.  May be null.
+   * @param defaultNamespace URI of the default namespace.  May be null.
+   * @param body writes the document, marking values with its Slots
+   * @return the Template
+   */
+  public static Template compile(Map<String,String> nsToUri, String defaultNamespace, Body body) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Utf8XMLStreamWriter engine = new Utf8XMLStreamWriter(bytes);
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(
+      engine, nsToUri == null ? null : new LinkedHashMap<String,String>(nsToUri));
+    sx.setDefaultNamespace(defaultNamespace);
+    Slots slots = new Slots(sx, engine, bytes);
+    body.write(sx, slots);
+    try {
+      engine.flush();
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("Template.compile", "flush", e);
+    }
+    return new Template(bytes.toByteArray(), slots);
+  }
+
+  /**
+   * @return the slot names, in the order their values are passed to {@code render}
+   */
+  public List<String> getSlotNames() {
+    return slotNames;
+  }
+
+  /**
+   * Writes the document to an OutputStream, which is flushed but not closed.
+   *
+   * @param out the OutputStream to write to
+   * @param values a value for each slot name, in the order of {@link #getSlotNames()}
+   * @throws IllegalArgumentException if the number of values is wrong
+   * @throws StaxxasStreamWriterException (RuntimeException) if writing to the
+   * OutputStream fails
+   */
+  public void render(OutputStream out, CharSequence... values) {
+    if (values.length != slotNames.size()) {
+      throw new IllegalArgumentException("Template has " + slotNames.size()
+                                         + " slots but " + values.length + " values were given");
+    }
+    Utf8XMLStreamWriter w = ENGINES.get();
+    w.reset(out);
+    try {
+      int from = 0;
+      for (int i = 0; i < offsets.length; i++) {
+        w.writeRawUtf8(markup, from, offsets[i] - from);
+        CharSequence v = values[valueIndexes[i]];
+        if (v != null) {
+          w.writeValue(v, attributes[i]);
+        }
+        from = offsets[i];
+      }
+      w.writeRawUtf8(markup, from, markup.length - from);
+      w.flush();
+    } catch (XMLStreamException e) {
+      throw new StaxxasStreamWriterException("Template.render", "writeRawUtf8/flush", e);
+    } finally {
+      w.reset(null);
+    }
+  }
+
+  /**
+   * Renders the document into a byte array.
+   *
+   * @param values a value for each slot name, in the order of {@link #getSlotNames()}
+   * @return the UTF-8 encoded document
+   */
+  public byte[] render(CharSequence... values) {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream(markup.length + 64 * values.length);
+    render(bout, values);
+    return bout.toByteArray();
+  }
+
+  @Override
+  public String toString() {
+    return "Template" + slotNames + " (" + markup.length + " bytes of markup)";
+  }
+}
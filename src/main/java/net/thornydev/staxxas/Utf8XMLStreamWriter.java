@@ -0,0 +1,1391 @@
+package net.thornydev.staxxas;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Iterator;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * A lightweight, non-repairing {@link XMLStreamWriter} that escapes and UTF-8 encodes
+ * straight into a reusable byte array and writes that array to an
+ * {@link java.io.OutputStream}.  It bypasses the {@link java.io.Writer} and
+ * {@link java.nio.charset.CharsetEncoder} layers used by the JDK StAX implementation.
+ *
+ * <p>The output is intended to be byte-for-byte identical to the JDK's built-in
+ * {@code XMLStreamWriter} writing UTF-8: the same XML declarations, the same
+ * escaping rules (text escapes {@code & < >}; attribute values also escape
+ * {@code "}) and start tags are not collapsed into empty tags unless
+ * {@code writeEmptyElement} is called.</p>
+ *
+ * <p>Normally you will not use this class directly. It is the engine behind the
+ * {@link StaxxasStreamWriter} constructors that take an {@link java.io.OutputStream}.
+ * It can, however, be passed to the {@link StaxxasStreamWriter} constructors
+ * that accept an {@link XMLStreamWriter} or used on its own.</p>
+ *
+ * <p>Like all StAX writers, {@link #close()} does <strong>not</strong> close the
+ * underlying {@code OutputStream}.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p><strong>This class is not thread-safe.</strong></p>
+ *
+ * @author midpeter444
+ */
+public class Utf8XMLStreamWriter implements XMLStreamWriter {
+
+  static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /** Largest number of bytes a single escaped or encoded char can expand to. */
+  private static final int MAX_CHAR_BYTES = 6;
+
+  /** Strings up to this length are escaped without copying out their chars. */
+  private static final int SHORT_STRING = 32;
+
+  /* escape tables for the ASCII range: non-null entry means escape it */
+  private static final byte[][] TEXT_ESCAPES = new byte[128][];
+  private static final byte[][] ATTR_ESCAPES = new byte[128][];
+  private static final byte[][] NO_ESCAPES = new byte[128][];
+  static {
+    TEXT_ESCAPES['&'] = ATTR_ESCAPES['&'] = ascii("&amp;");
+    TEXT_ESCAPES['<'] = ATTR_ESCAPES['<'] = ascii("&lt;");
+    TEXT_ESCAPES['>'] = ATTR_ESCAPES['>'] = ascii("&gt;");
+    ATTR_ESCAPES['"'] = ascii("&quot;");
+  }
+
+  private static final byte[] DECL_DEFAULT = ascii("<?xml version=\"1.0\" ?>");
+  private static final byte[] DECL_VERSION = ascii("<?xml version=\"");
+  private static final byte[] DECL_ENCODING = ascii("\" encoding=\"");
+  private static final byte[] DECL_END = ascii("\"?>");
+  private static final byte[] XMLNS = ascii(" xmlns");
+
+  /** Most chars a long can be formatted to: "-9223372036854775808" */
+  private static final int MAX_LONG_CHARS = 20;
+  private static final byte[] LONG_MIN = ascii(Long.toString(Long.MIN_VALUE));
+
+  /** Powers of ten for the fractional digits the double fast path handles */
+  private static final long[] POW10 = {1L, 10L, 100L, 1000L};
+
+  /** Where the encoded bytes go once the buffer fills up or is flushed. */
+  private OutputStream out;
+
+  private final byte[] buf;
+  private int pos;
+  /** bytes handed to out since construction or the last reset */
+  private long flushed;
+
+  /** Scratch space for copying the chars out of Strings. */
+  private final char[] cbuf = new char[512];
+
+  /** chunk buffer for copying bytes out of ByteBuffers with no backing array; allocated on first use */
+  private byte[] bbuf;
+
+  /*
+   * Stack of open elements.  The prefix is null for unprefixed elements.
+   * Elements started with a Name token have its pre-encoded end tag on
+   * the nameStack instead.
+   */
+  private String[] prefixStack = new String[16];
+  private String[] localStack = new String[16];
+  private byte[][] nameStack = new byte[16][];
+  private int depth;
+
+  /**
+   * Set when a start tag (or empty tag) has been written but its closing
+   * '>' (or "/>") has not, so that attributes and namespaces can still be added.
+   */
+  private boolean startTagOpen;
+  private boolean emptyTagOpen;
+
+  /*
+   * Namespace bindings: parallel arrays of prefix, URI and the element
+   * depth at which the binding was made.  The default namespace uses "" as prefix.
+   */
+  private String[] nsPrefixes = new String[16];
+  private String[] nsUris = new String[16];
+  private int[] nsDepths = new int[16];
+  private int nsCount;
+
+  /** Optional root namespace context supplied via setNamespaceContext. */
+  private NamespaceContext rootContext;
+
+  /* ---[ Constructors ]--- */
+
+  /**
+   * Creates a Utf8XMLStreamWriter with an 8K output buffer.
+   *
+   * @param out the OutputStream to write the UTF-8 encoded XML document to
+   */
+  public Utf8XMLStreamWriter(OutputStream out) {
+    this(out, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a Utf8XMLStreamWriter with an output buffer of the specified size.
+   *
+   * @param out the OutputStream to write the UTF-8 encoded XML document to
+   * @param bufferSize size in bytes of the internal buffer, at least 64
+   */
+  public Utf8XMLStreamWriter(OutputStream out, int bufferSize) {
+    if (bufferSize < 64) {
+      throw new IllegalArgumentException("bufferSize must be at least 64: " + bufferSize);
+    }
+    this.out = out;
+    this.buf = new byte[bufferSize];
+  }
+
+  /**
+   * Discards all state of the current document and points this writer at a
+   * new OutputStream, keeping the internal buffers so that they are not
+   * reallocated for every document.  Any bytes still buffered are dropped,
+   * so call {@link #close()} or {@link #flush()} first if they are wanted.
+   *
+   * @param out the OutputStream to write the next XML document to
+   */
+  public void reset(OutputStream out) {
+    this.out = out;
+    pos = 0;
+    flushed = 0;
+    for (int i = 0; i < depth; i++) {
+      prefixStack[i] = null;
+      localStack[i] = null;
+      nameStack[i] = null;
+    }
+    depth = 0;
+    startTagOpen = false;
+    emptyTagOpen = false;
+    popBindings(-1);
+    rootContext = null;
+  }
+
+  /**
+   * @return number of bytes written but still held in the buffer
+   */
+  int buffered() {
+    return pos;
+  }
+
+  /**
+   * @return the number of bytes written, including those still buffered, since
+   * construction or the last reset
+   */
+  long bytesWritten() {
+    return flushed + pos;
+  }
+
+  /**
+   * Inserts a namespace declaration into the start tag of the root element
+   * after it has been written, if it is still in the buffer.  Used to hoist 
+   * namespaces declared lazily by StaxxasStreamWriter to the root element.
+   *
+   * @param mark value of {@link #bytesWritten()} at a point between the root
+   * element's name and the end of its start tag
+   * @param prefix namespace prefix
+   * @param uri namespace URI
+   * @return the number of bytes inserted, or 0 if the mark has already been
+   * flushed or the buffer has no room, in which case nothing is written
+   */
+  int insertRootNamespace(long mark, String prefix, String uri) {
+    if (mark < flushed) {
+      return 0;
+    }
+    byte[] decl = declaration(prefix, uri);
+    if (pos + decl.length > buf.length) {
+      return 0;
+    }
+    int at = (int) (mark - flushed);
+    System.arraycopy(buf, at, buf, at + decl.length, pos - at);
+    System.arraycopy(decl, 0, buf, at, decl.length);
+    pos += decl.length;
+
+    // keep the bindings ordered by depth, so bind at the root below any deeper ones
+    int i = nsCount;
+    bind(prefix, uri, 1);
+    while (i > 0 && nsDepths[i - 1] > 1) {
+      nsPrefixes[i] = nsPrefixes[i - 1];
+      nsUris[i] = nsUris[i - 1];
+      nsDepths[i] = nsDepths[i - 1];
+      i--;
+    }
+    nsPrefixes[i] = prefix;
+    nsUris[i] = uri;
+    nsDepths[i] = 1;
+    return decl.length;
+  }
+
+  /* ---[ Document ]--- */
+
+  @Override
+  public void writeStartDocument() throws XMLStreamException {
+    writeRaw(DECL_DEFAULT);
+  }
+
+  @Override
+  public void writeStartDocument(String version) throws XMLStreamException {
+    writeRaw(DECL_VERSION);
+    writeAscii(version);
+    writeRaw(DECL_END);
+  }
+
+  @Override
+  public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+    writeRaw(DECL_VERSION);
+    writeAscii(version);
+    if (encoding != null) {
+      writeRaw(DECL_ENCODING);
+      writeAscii(encoding);
+    }
+    writeRaw(DECL_END);
+  }
+
+  @Override
+  public void writeEndDocument() throws XMLStreamException {
+    closeStartTag();
+    while (depth > 0) {
+      writeEndElement();
+    }
+  }
+
+  @Override
+  public void flush() throws XMLStreamException {
+    try {
+      flushBuffer();
+      out.flush();
+    } catch (IOException e) {
+      throw new XMLStreamException(e);
+    }
+  }
+
+  /**
+   * Flushes any buffered bytes to the OutputStream.  As required by the
+   * {@link XMLStreamWriter} contract, the underlying OutputStream is
+   * not closed.
+   */
+  @Override
+  public void close() throws XMLStreamException {
+    closeStartTag();
+    try {
+      flushBuffer();
+    } catch (IOException e) {
+      throw new XMLStreamException(e);
+    }
+  }
+
+  /* ---[ Elements ]--- */
+
+  @Override
+  public void writeStartElement(String localName) throws XMLStreamException {
+    openTag(null, localName);
+    push(null, localName);
+  }
+
+  @Override
+  public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+    String prefix = prefixFor(namespaceURI);
+    openTag(prefix, localName);
+    push(prefix, localName);
+  }
+
+  @Override
+  public void writeStartElement(String prefix, String localName, String namespaceURI)
+    throws XMLStreamException {
+    openTag(prefix, localName);
+    push(prefix, localName);
+  }
+
+  @Override
+  public void writeEmptyElement(String localName) throws XMLStreamException {
+    openTag(null, localName);
+    emptyTagOpen = true;
+  }
+
+  @Override
+  public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+    String prefix = prefixFor(namespaceURI);
+    openTag(prefix, localName);
+    emptyTagOpen = true;
+  }
+
+  @Override
+  public void writeEmptyElement(String prefix, String localName, String namespaceURI)
+    throws XMLStreamException {
+    openTag(prefix, localName);
+    emptyTagOpen = true;
+  }
+
+  @Override
+  public void writeEndElement() throws XMLStreamException {
+    closeStartTag();
+    if (depth == 0) {
+      throw new XMLStreamException("No element was found to write");
+    }
+    depth--;
+    byte[] endTag = nameStack[depth];
+    if (endTag != null) {
+      writeRaw(endTag);
+      nameStack[depth] = null;
+    } else {
+      ensure(2);
+      buf[pos++] = '<';
+      buf[pos++] = '/';
+      writeQName(prefixStack[depth], localStack[depth]);
+      ensure(1);
+      buf[pos++] = '>';
+      prefixStack[depth] = null;
+      localStack[depth] = null;
+    }
+    popBindings(depth);
+  }
+
+  /* ---[ Pre-encoded names ]--- */
+
+  /**
+   * Writes a start tag using a pre-encoded {@link Name}.  The end tag will
+   * also be copied from the Name when {@link #writeEndElement()} is called.
+   * Like the other prefixed write methods, no namespace lookup is done.
+   *
+   * @param name element name
+   * @throws XMLStreamException if the underlying OutputStream throws an IOException
+   */
+  public void writeStartElement(Name name) throws XMLStreamException {
+    closeStartTag();
+    writeRaw(name.startTag);
+    startTagOpen = true;
+    if (depth == localStack.length) {
+      grow();
+    }
+    nameStack[depth++] = name.endTag;
+  }
+
+  /**
+   * Writes an empty element tag using a pre-encoded {@link Name}.
+   *
+   * @param name element name
+   * @throws XMLStreamException if the underlying OutputStream throws an IOException
+   */
+  public void writeEmptyElement(Name name) throws XMLStreamException {
+    closeStartTag();
+    writeRaw(name.startTag);
+    startTagOpen = true;
+    emptyTagOpen = true;
+  }
+
+  /**
+   * Writes an attribute using a pre-encoded {@link Name}.
+   *
+   * @param name attribute name
+   * @param value attribute value, which is escaped
+   * @throws XMLStreamException if no start tag is open or the underlying 
+   * OutputStream throws an IOException
+   */
+  public void writeAttribute(Name name, String value) throws XMLStreamException {
+    requireStartTag();
+    writeRaw(name.attribute);
+    writeEscaped(value, ATTR_ESCAPES);
+    ensure(1);
+    buf[pos++] = '"';
+  }
+
+  /* ---[ Attributes and namespaces ]--- */
+
+  @Override
+  public void writeAttribute(String localName, String value) throws XMLStreamException {
+    attributeName(null, localName);
+    writeEscaped(value, ATTR_ESCAPES);
+    ensure(1);
+    buf[pos++] = '"';
+  }
+
+  @Override
+  public void writeAttribute(String namespaceURI, String localName, String value)
+    throws XMLStreamException {
+    attributeName(prefixFor(namespaceURI), localName);
+    writeEscaped(value, ATTR_ESCAPES);
+    ensure(1);
+    buf[pos++] = '"';
+  }
+
+  @Override
+  public void writeAttribute(String prefix, String namespaceURI, String localName, String value)
+    throws XMLStreamException {
+    attributeName(prefix, localName);
+    writeEscaped(value, ATTR_ESCAPES);
+    ensure(1);
+    buf[pos++] = '"';
+  }
+
+  @Override
+  public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+    if (prefix == null || prefix.length() == 0 || "xmlns".equals(prefix)) {
+      writeDefaultNamespace(namespaceURI);
+      return;
+    }
+    requireStartTag();
+    writeRaw(XMLNS);
+    ensure(1);
+    buf[pos++] = ':';
+    writeUtf8(prefix);
+    ensure(2);
+    buf[pos++] = '=';
+    buf[pos++] = '"';
+    writeEscaped(namespaceURI, ATTR_ESCAPES);
+    ensure(1);
+    buf[pos++] = '"';
+    bind(prefix, namespaceURI, tagDepth());
+  }
+
+  @Override
+  public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+    requireStartTag();
+    writeRaw(XMLNS);
+    ensure(2);
+    buf[pos++] = '=';
+    buf[pos++] = '"';
+    writeEscaped(namespaceURI, ATTR_ESCAPES);
+    ensure(1);
+    buf[pos++] = '"';
+    bind("", namespaceURI, tagDepth());
+  }
+
+  /* ---[ Content ]--- */
+
+  @Override
+  public void writeCharacters(String text) throws XMLStreamException {
+    closeStartTag();
+    writeEscaped(text, TEXT_ESCAPES);
+  }
+
+  @Override
+  public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+    closeStartTag();
+    writeEscaped(text, start, len, TEXT_ESCAPES);
+  }
+
+  @Override
+  public void writeComment(String data) throws XMLStreamException {
+    closeStartTag();
+    writeAscii("<!--");
+    writeUtf8(data);
+    writeAscii("-->");
+  }
+
+  @Override
+  public void writeProcessingInstruction(String target) throws XMLStreamException {
+    closeStartTag();
+    writeAscii("<?");
+    writeUtf8(target);
+    writeAscii("?>");
+  }
+
+  @Override
+  public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+    closeStartTag();
+    writeAscii("<?");
+    writeUtf8(target);
+    ensure(1);
+    buf[pos++] = ' ';
+    writeUtf8(data);
+    writeAscii("?>");
+  }
+
+  @Override
+  public void writeCData(String data) throws XMLStreamException {
+    closeStartTag();
+    writeAscii("<![CDATA[");
+    writeUtf8(data);
+    writeAscii("]]>");
+  }
+
+  @Override
+  public void writeDTD(String dtd) throws XMLStreamException {
+    writeUtf8(dtd);
+  }
+
+  @Override
+  public void writeEntityRef(String name) throws XMLStreamException {
+    closeStartTag();
+    ensure(1);
+    buf[pos++] = '&';
+    writeUtf8(name);
+    ensure(1);
+    buf[pos++] = ';';
+  }
+
+  /* ---[ CharSequence values ]--- */
+
+  /**
+   * Writes text content escaped straight from a CharSequence, such as a 
+   * StringBuilder or CharBuffer, without first turning it into a String.
+   * A CharBuffer is read from its position to its limit and its position
+   * is left unchanged.
+   *
+   * @param text text to write
+   * @throws XMLStreamException if the underlying OutputStream throws an IOException
+   */
+  public void writeCharacters(CharSequence text) throws XMLStreamException {
+    closeStartTag();
+    writeEscaped(text, TEXT_ESCAPES);
+  }
+
+  /**
+   * Writes an attribute with its value escaped straight from a CharSequence.
+   *
+   * @param localName name of attribute
+   * @param value value of attribute
+   * @throws XMLStreamException if no start tag is open or the underlying 
+   * OutputStream throws an IOException
+   */
+  public void writeAttribute(String localName, CharSequence value) throws XMLStreamException {
+    attributeName(null, localName);
+    writeEscaped(value, ATTR_ESCAPES);
+    ensure(1);
+    buf[pos++] = '"';
+  }
+
+  /**
+   * Writes an attribute named by a pre-encoded {@link Name} with its value
+   * escaped straight from a CharSequence.
+   *
+   * @param name attribute name
+   * @param value value of attribute
+   * @throws XMLStreamException if no start tag is open or the underlying 
+   * OutputStream throws an IOException
+   */
+  public void writeAttribute(Name name, CharSequence value) throws XMLStreamException {
+    requireStartTag();
+    writeRaw(name.attribute);
+    writeEscaped(value, ATTR_ESCAPES);
+    ensure(1);
+    buf[pos++] = '"';
+  }
+
+  /* ---[ Pre-encoded UTF-8 text ]--- */
+
+  /**
+   * Writes text content that is already UTF-8 encoded.  The bytes are escaped
+   * at the byte level and otherwise copied straight to the output, with no 
+   * decoding to chars.
+   *
+   * @param utf8 UTF-8 encoded text
+   * @param off index of the first byte to write
+   * @param len number of bytes to write
+   * @param validate if true, the bytes are first checked to be well-formed UTF-8
+   * and nothing is written if they are not
+   * @throws XMLStreamException if validating and the bytes are malformed, or
+   * the underlying OutputStream throws an IOException
+   */
+  public void writeUtf8Characters(byte[] utf8, int off, int len, boolean validate) 
+    throws XMLStreamException {
+    checkUtf8(utf8, off, len, validate);
+    closeStartTag();
+    writeEscapedUtf8(utf8, off, len);
+  }
+
+  /**
+   * Writes an attribute whose value is already UTF-8 encoded.  As with
+   * {@link #writeUtf8Characters(byte[], int, int, boolean)}, the bytes are
+   * escaped at the byte level and otherwise copied straight to the output.
+   *
+   * @param localName name of attribute
+   * @param utf8 UTF-8 encoded value
+   * @param off index of the first byte of the value
+   * @param len number of bytes in the value
+   * @param validate if true, the bytes are first checked to be well-formed UTF-8
+   * and nothing is written if they are not
+   * @throws XMLStreamException if no start tag is open, validating and the bytes
+   * are malformed, or the underlying OutputStream throws an IOException
+   */
+  public void writeUtf8Attribute(String localName, byte[] utf8, int off, int len, boolean validate)
+    throws XMLStreamException {
+    checkUtf8(utf8, off, len, validate);
+    attributeName(null, localName);
+    writeEscapedUtf8Attribute(utf8, off, len);
+    ensure(1);
+    buf[pos++] = '"';
+  }
+
+  /**
+   * Writes an attribute named by a pre-encoded {@link Name} whose value is
+   * already UTF-8 encoded.  See {@link #writeUtf8Attribute(String, byte[], int, int, boolean)}.
+   *
+   * @param name attribute name
+   * @param utf8 UTF-8 encoded value
+   * @param off index of the first byte of the value
+   * @param len number of bytes in the value
+   * @param validate if true, the bytes are first checked to be well-formed UTF-8
+   * @throws XMLStreamException if no start tag is open, validating and the bytes
+   * are malformed, or the underlying OutputStream throws an IOException
+   */
+  public void writeUtf8Attribute(Name name, byte[] utf8, int off, int len, boolean validate)
+    throws XMLStreamException {
+    checkUtf8(utf8, off, len, validate);
+    requireStartTag();
+    writeRaw(name.attribute);
+    writeEscapedUtf8Attribute(utf8, off, len);
+    ensure(1);
+    buf[pos++] = '"';
+  }
+
+  private static void checkUtf8(byte[] utf8, int off, int len, boolean validate)
+    throws XMLStreamException {
+    if (off < 0 || len < 0 || off + len > utf8.length) {
+      throw new IndexOutOfBoundsException("off=" + off + ", len=" + len + ", length=" + utf8.length);
+    }
+    if (validate) {
+      int bad = malformedIndex(utf8, off, len);
+      if (bad >= 0) {
+        throw new XMLStreamException("Malformed UTF-8 at byte " + (bad - off));
+      }
+    }
+  }
+
+  /**
+   * Writes text content that is already UTF-8 encoded from a ByteBuffer, from 
+   * its position to its limit.  The buffer's position is left unchanged.  
+   * See {@link #writeUtf8Characters(byte[], int, int, boolean)}.
+   *
+   * @param utf8 UTF-8 encoded text
+   * @param validate if true, the bytes are checked to be well-formed UTF-8
+   * @throws XMLStreamException if validating and the bytes are malformed, or
+   * the underlying OutputStream throws an IOException
+   */
+  public void writeUtf8Characters(ByteBuffer utf8, boolean validate) throws XMLStreamException {
+    if (utf8.hasArray()) {
+      writeUtf8Characters(utf8.array(), utf8.arrayOffset() + utf8.position(), 
+                          utf8.remaining(), validate);
+      return;
+    }
+    if (bbuf == null) bbuf = new byte[512];
+    final byte[] b = bbuf;
+    final int lim = utf8.limit();
+    int p = utf8.position();
+    if (validate) {
+      // check it all before writing anything
+      int q = p;
+      while (q < lim) {
+        int n = fill(utf8, q, lim, b);
+        int bad = malformedIndex(b, 0, n);
+        if (bad >= 0) {
+          throw new XMLStreamException("Malformed UTF-8 at byte " + (q + bad - utf8.position()));
+        }
+        q += n;
+      }
+    }
+    closeStartTag();
+    while (p < lim) {
+      int n = fill(utf8, p, lim, b);
+      writeEscapedUtf8(b, 0, n);
+      p += n;
+    }
+  }
+
+  /**
+   * Copies bytes from index p of the ByteBuffer into b, stopping at a sequence 
+   * boundary unless a single sequence is all that is left.
+   */
+  private static int fill(ByteBuffer bb, int p, int lim, byte[] b) {
+    int n = Math.min(b.length, lim - p);
+    for (int i = 0; i < n; i++) {
+      b[i] = bb.get(p + i);
+    }
+    if (p + n < lim) {
+      int whole = wholeSequences(b, n);
+      if (whole > 0) n = whole;
+    }
+    return n;
+  }
+
+  /**
+   * Writes bytes that are already well-formed, escaped UTF-8 markup, such as 
+   * a {@link Fragment}, exactly as they are.
+   *
+   * @param markup UTF-8 encoded markup
+   * @param off index of the first byte to write
+   * @param len number of bytes to write
+   * @throws XMLStreamException if the underlying OutputStream throws an IOException
+   */
+  public void writeRawUtf8(byte[] markup, int off, int len) throws XMLStreamException {
+    closeStartTag();
+    writeRaw(markup, off, len);
+  }
+
+  /**
+   * Escapes a value as text content or, with attribute true, as an attribute
+   * value, writing nothing else.  Used to fill {@link Template} slots.
+   */
+  void writeValue(CharSequence value, boolean attribute) throws XMLStreamException {
+    writeEscaped(value, attribute ? ATTR_ESCAPES : TEXT_ESCAPES);
+  }
+
+  /* ---[ Primitive values ]--- */
+
+  /**
+   * Writes the decimal digits of a long as text content without creating a String.
+   *
+   * @param value number to write
+   * @return number of chars written
+   * @throws XMLStreamException if the underlying OutputStream throws an IOException
+   */
+  public int writeCharacters(long value) throws XMLStreamException {
+    closeStartTag();
+    long start = bytesWritten();
+    writeLong(value);
+    return (int) (bytesWritten() - start);
+  }
+
+  /**
+   * Writes a double as text content in the same format as {@link Double#toString(double)}.
+   * See {@link #writeAttribute(String, double)} for when a String is created.
+   *
+   * @param value number to write
+   * @return number of chars written
+   * @throws XMLStreamException if the underlying OutputStream throws an IOException
+   */
+  public int writeCharacters(double value) throws XMLStreamException {
+    closeStartTag();
+    long start = bytesWritten();
+    writeDouble(value);
+    return (int) (bytesWritten() - start);
+  }
+
+  /**
+   * Writes an attribute with the decimal digits of a long as its value without
+   * creating a String.
+   *
+   * @param localName name of attribute
+   * @param value number to write
+   * @throws XMLStreamException if no start tag is open or the underlying 
+   * OutputStream throws an IOException
+   */
+  public void writeAttribute(String localName, long value) throws XMLStreamException {
+    attributeName(null, localName);
+    writeLong(value);
+    ensure(1);
+    buf[pos++] = '"';
+  }
+
+  /**
+   * Writes an attribute with a double value in the same format as
+   * {@link Double#toString(double)}, which reads back to exactly the same double.
+   * 
+   * <p>Values that are whole numbers or have at most three decimal places, with
+   * a magnitude from 10<sup>-3</sup> up to 10<sup>7</sup> (where Double.toString
+   * uses plain rather than scientific notation), are formatted straight into the
+   * buffer.  Any other value falls back to {@code Double.toString}.</p>
+   *
+   * @param localName name of attribute
+   * @param value number to write
+   * @throws XMLStreamException if no start tag is open or the underlying 
+   * OutputStream throws an IOException
+   */
+  public void writeAttribute(String localName, double value) throws XMLStreamException {
+    attributeName(null, localName);
+    writeDouble(value);
+    ensure(1);
+    buf[pos++] = '"';
+  }
+
+  /**
+   * Writes an attribute named by a pre-encoded {@link Name} with the decimal 
+   * digits of a long as its value.
+   *
+   * @param name attribute name
+   * @param value number to write
+   * @throws XMLStreamException if no start tag is open or the underlying 
+   * OutputStream throws an IOException
+   */
+  public void writeAttribute(Name name, long value) throws XMLStreamException {
+    requireStartTag();
+    writeRaw(name.attribute);
+    writeLong(value);
+    ensure(1);
+    buf[pos++] = '"';
+  }
+
+  /**
+   * Writes an attribute named by a pre-encoded {@link Name} with a double value.
+   * See {@link #writeAttribute(String, double)} for the format.
+   *
+   * @param name attribute name
+   * @param value number to write
+   * @throws XMLStreamException if no start tag is open or the underlying 
+   * OutputStream throws an IOException
+   */
+  public void writeAttribute(Name name, double value) throws XMLStreamException {
+    requireStartTag();
+    writeRaw(name.attribute);
+    writeDouble(value);
+    ensure(1);
+    buf[pos++] = '"';
+  }
+
+  /* ---[ Namespace context ]--- */
+
+  @Override
+  public String getPrefix(String uri) throws XMLStreamException {
+    return lookupPrefix(uri);
+  }
+
+  @Override
+  public void setPrefix(String prefix, String uri) throws XMLStreamException {
+    bind(prefix, uri, depth);
+  }
+
+  @Override
+  public void setDefaultNamespace(String uri) throws XMLStreamException {
+    bind("", uri, depth);
+  }
+
+  @Override
+  public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+    rootContext = context;
+  }
+
+  @Override
+  public NamespaceContext getNamespaceContext() {
+    return new NamespaceContext() {
+      @Override public String getNamespaceURI(String prefix) {
+        return lookupUri(prefix);
+      }
+      @Override public String getPrefix(String namespaceURI) {
+        return lookupPrefix(namespaceURI);
+      }
+      @Override public Iterator<String> getPrefixes(String namespaceURI) {
+        String p = lookupPrefix(namespaceURI);
+        if (p == null) return Collections.<String>emptyList().iterator();
+        return Collections.singletonList(p).iterator();
+      }
+    };
+  }
+
+  /**
+   * No implementation specific properties are supported.
+   *
+   * @throws IllegalArgumentException always
+   */
+  @Override
+  public Object getProperty(String name) throws IllegalArgumentException {
+    throw new IllegalArgumentException("Property not supported: " + name);
+  }
+
+  /* ---[ private methods ]--- */
+
+  private static byte[] ascii(String s) {
+    byte[] b = new byte[s.length()];
+    for (int i = 0; i < b.length; i++) {
+      b[i] = (byte) s.charAt(i);
+    }
+    return b;
+  }
+
+  /**
+   * Depth at which namespaces written into the currently open tag are scoped.
+   */
+  private int tagDepth() {
+    return emptyTagOpen ? depth + 1 : depth;
+  }
+
+  private void openTag(String prefix, String localName) throws XMLStreamException {
+    closeStartTag();
+    ensure(1);
+    buf[pos++] = '<';
+    writeQName(prefix, localName);
+    startTagOpen = true;
+  }
+
+  private void closeStartTag() throws XMLStreamException {
+    if (startTagOpen) {
+      if (emptyTagOpen) {
+        ensure(2);
+        buf[pos++] = '/';
+        buf[pos++] = '>';
+        emptyTagOpen = false;
+        popBindings(depth);
+      } else {
+        ensure(1);
+        buf[pos++] = '>';
+      }
+      startTagOpen = false;
+    }
+  }
+
+  private void requireStartTag() throws XMLStreamException {
+    if (!startTagOpen) {
+      throw new XMLStreamException("Attribute not associated with any element");
+    }
+  }
+
+  private void attributeName(String prefix, String localName) throws XMLStreamException {
+    requireStartTag();
+    ensure(1);
+    buf[pos++] = ' ';
+    writeQName(prefix, localName);
+    ensure(2);
+    buf[pos++] = '=';
+    buf[pos++] = '"';
+  }
+
+  private void writeQName(String prefix, String localName) throws XMLStreamException {
+    if (prefix != null && prefix.length() > 0) {
+      writeUtf8(prefix);
+      ensure(1);
+      buf[pos++] = ':';
+    }
+    writeUtf8(localName);
+  }
+
+  private void push(String prefix, String localName) {
+    if (depth == localStack.length) {
+      grow();
+    }
+    prefixStack[depth] = prefix;
+    localStack[depth] = localName;
+    depth++;
+  }
+
+  private void grow() {
+    prefixStack = copyOf(prefixStack, depth * 2);
+    localStack = copyOf(localStack, depth * 2);
+    byte[][] n = new byte[depth * 2][];
+    System.arraycopy(nameStack, 0, n, 0, depth);
+    nameStack = n;
+  }
+
+  private String prefixFor(String namespaceURI) throws XMLStreamException {
+    String prefix = lookupPrefix(namespaceURI);
+    if (prefix == null) {
+      throw new XMLStreamException("Prefix cannot be null");
+    }
+    return prefix;
+  }
+
+  private void bind(String prefix, String uri, int atDepth) {
+    if (nsCount == nsPrefixes.length) {
+      nsPrefixes = copyOf(nsPrefixes, nsCount * 2);
+      nsUris = copyOf(nsUris, nsCount * 2);
+      int[] d = new int[nsCount * 2];
+      System.arraycopy(nsDepths, 0, d, 0, nsCount);
+      nsDepths = d;
+    }
+    nsPrefixes[nsCount] = prefix;
+    nsUris[nsCount] = uri;
+    nsDepths[nsCount] = atDepth;
+    nsCount++;
+  }
+
+  /**
+   * Removes all namespace bindings made deeper than the given element depth.
+   */
+  private void popBindings(int toDepth) {
+    while (nsCount > 0 && nsDepths[nsCount - 1] > toDepth) {
+      nsCount--;
+      nsPrefixes[nsCount] = null;
+      nsUris[nsCount] = null;
+    }
+  }
+
+  private String lookupPrefix(String uri) {
+    if (uri == null) return null;
+    for (int i = nsCount - 1; i >= 0; i--) {
+      if (uri.equals(nsUris[i])) {
+        return nsPrefixes[i];
+      }
+    }
+    return rootContext == null ? null : rootContext.getPrefix(uri);
+  }
+
+  private String lookupUri(String prefix) {
+    if (prefix == null) return null;
+    for (int i = nsCount - 1; i >= 0; i--) {
+      if (prefix.equals(nsPrefixes[i])) {
+        return nsUris[i];
+      }
+    }
+    return rootContext == null ? null : rootContext.getNamespaceURI(prefix);
+  }
+
+  /**
+   * @return {@code xmlns:prefix="uri"} with a leading space, UTF-8 encoded and escaped
+   */
+  private static byte[] declaration(String prefix, String uri) {
+    StringBuilder sb = new StringBuilder(uri.length() + prefix.length() + 10);
+    sb.append(" xmlns:").append(prefix).append("=\"");
+    for (int i = 0; i < uri.length(); i++) {
+      char c = uri.charAt(i);
+      byte[] esc = c < 128 ? ATTR_ESCAPES[c] : null;
+      if (esc == null) {
+        sb.append(c);
+      } else {
+        for (byte b : esc) sb.append((char) b);
+      }
+    }
+    sb.append('"');
+    return sb.toString().getBytes(UTF8);
+  }
+
+  private static String[] copyOf(String[] a, int len) {
+    String[] b = new String[len];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+
+  /* ---[ byte level output ]--- */
+
+  private void ensure(int n) throws XMLStreamException {
+    if (pos + n > buf.length) {
+      try {
+        flushBuffer();
+      } catch (IOException e) {
+        throw new XMLStreamException(e);
+      }
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    if (pos > 0) {
+      out.write(buf, 0, pos);
+      flushed += pos;
+      pos = 0;
+    }
+  }
+
+  private void writeRaw(byte[] b) throws XMLStreamException {
+    writeRaw(b, 0, b.length);
+  }
+
+  private void writeRaw(byte[] b, int off, int len) throws XMLStreamException {
+    if (len > buf.length - pos) {
+      ensure(buf.length);
+      if (len > buf.length) {
+        try {
+          out.write(b, off, len);
+          flushed += len;
+        } catch (IOException e) {
+          throw new XMLStreamException(e);
+        }
+        return;
+      }
+    }
+    System.arraycopy(b, off, buf, pos, len);
+    pos += len;
+  }
+
+  /**
+   * Copies runs of bytes that need no escaping straight to the buffer, finding
+   * the end of each run eight bytes at a time with {@link EscapeScanner}.  Only
+   * ASCII bytes can need escaping; the bytes of multi-byte UTF-8 sequences 
+   * are all negative as Java bytes and are copied through.
+   */
+  private void writeEscapedUtf8(byte[] b, int off, int len) throws XMLStreamException {
+    final int end = off + len;
+    int run = off;
+    while (run < end) {
+      int i = EscapeScanner.nextSpecialByte(b, run, end);
+      writeRaw(b, run, i - run);
+      if (i == end) break;
+      writeRaw(TEXT_ESCAPES[b[i]]);
+      run = i + 1;
+    }
+  }
+
+  /**
+   * As {@link #writeEscapedUtf8(byte[], int, int)}, escaping {@code "} as well.
+   */
+  private void writeEscapedUtf8Attribute(byte[] b, int off, int len) throws XMLStreamException {
+    final int end = off + len;
+    int run = off;
+    while (run < end) {
+      int i = EscapeScanner.nextSpecialAttributeByte(b, run, end);
+      writeRaw(b, run, i - run);
+      if (i == end) break;
+      writeRaw(ATTR_ESCAPES[b[i]]);
+      run = i + 1;
+    }
+  }
+
+  /**
+   * Checks for well-formed UTF-8 as defined by RFC 3629: no overlong forms,
+   * no surrogates and nothing above U+10FFFF.
+   *
+   * @return index of the first byte of the first malformed sequence, or -1 if
+   * the bytes are well-formed
+   */
+  static int malformedIndex(byte[] b, int off, int len) {
+    final int end = off + len;
+    int i = off;
+    while (i < end) {
+      int c = b[i];
+      if (c >= 0) {
+        i++;
+        continue;
+      }
+      c &= 0xFF;
+      int n;
+      int lo = 0x80;
+      int hi = 0xBF;
+      if (c >= 0xC2 && c <= 0xDF) {
+        n = 1;
+      } else if (c >= 0xE0 && c <= 0xEF) {
+        n = 2;
+        if (c == 0xE0) lo = 0xA0;
+        if (c == 0xED) hi = 0x9F;
+      } else if (c >= 0xF0 && c <= 0xF4) {
+        n = 3;
+        if (c == 0xF0) lo = 0x90;
+        if (c == 0xF4) hi = 0x8F;
+      } else {
+        return i;
+      }
+      if (i + n >= end) return i;
+      int c1 = b[i + 1] & 0xFF;
+      if (c1 < lo || c1 > hi) return i;
+      for (int k = 2; k <= n; k++) {
+        if ((b[i + k] & 0xC0) != 0x80) return i;
+      }
+      i += n + 1;
+    }
+    return -1;
+  }
+
+  /**
+   * @return the length of the chunk b[0..n) cut back, if needed, so that it does
+   * not end part way through a multi-byte sequence
+   */
+  private static int wholeSequences(byte[] b, int n) {
+    for (int k = 1; k <= 3 && k <= n; k++) {
+      int c = b[n - k] & 0xFF;
+      if (c < 0x80) return n;
+      if (c >= 0xC0) {
+        int seqLen = c >= 0xF0 ? 4 : c >= 0xE0 ? 3 : 2;
+        return seqLen > k ? n - k : n;
+      }
+    }
+    return n;
+  }
+
+  private void writeLong(long v) throws XMLStreamException {
+    ensure(MAX_LONG_CHARS);
+    if (v == Long.MIN_VALUE) {
+      writeRaw(LONG_MIN);
+      return;
+    }
+    if (v < 0) {
+      buf[pos++] = '-';
+      v = -v;
+    }
+    int p = pos + digitCount(v);
+    pos = p;
+    do {
+      buf[--p] = (byte) ('0' + (int) (v % 10));
+      v /= 10;
+    } while (v != 0);
+  }
+
+  private static int digitCount(long v) {
+    int n = 1;
+    long limit = 10;
+    while (n < 19 && v >= limit) {
+      n++;
+      limit *= 10;
+    }
+    return n;
+  }
+
+  /**
+   * Tries to find the fewest decimal places k (at most 3) for which m / 10^k,
+   * with m a whole number, gives back exactly the same double.  Since m and 10^k
+   * are both exact doubles and IEEE division rounds correctly, the digits of m 
+   * are then a round-trip exact and, having the fewest decimals, the same as 
+   * Double.toString prints.
+   */
+  private void writeDouble(double v) throws XMLStreamException {
+    double a = Math.abs(v);
+    if (a >= 1e-3 && a < 1e7) {
+      for (int k = 0; k < POW10.length; k++) {
+        long m = (long) Math.rint(a * POW10[k]);
+        if ((double) m / POW10[k] == a) {
+          ensure(MAX_LONG_CHARS + 2);
+          if (v < 0) {
+            buf[pos++] = '-';
+          }
+          writeLong(m / POW10[k]);
+          buf[pos++] = '.';
+          if (k == 0) {
+            buf[pos++] = '0';
+          } else {
+            long frac = m % POW10[k];
+            for (int d = k - 1; d >= 0; d--) {
+              buf[pos++] = (byte) ('0' + (int) (frac / POW10[d] % 10));
+            }
+          }
+          return;
+        }
+      }
+    }
+    writeAscii(Double.toString(v));
+  }
+
+  /**
+   * Writes a String known to hold only 7-bit ASCII chars.
+   */
+  private void writeAscii(String s) throws XMLStreamException {
+    int len = s.length();
+    for (int i = 0; i < len; i++) {
+      ensure(1);
+      buf[pos++] = (byte) s.charAt(i);
+    }
+  }
+
+  /**
+   * UTF-8 encodes a String without escaping anything.
+   */
+  private void writeUtf8(String s) throws XMLStreamException {
+    writeEscaped(s, NO_ESCAPES);
+  }
+
+  /**
+   * Short ASCII Strings, such as names and most attribute values, are escaped
+   * straight from the String after a single check that the buffer has room,
+   * provided the buffer can hold them fully escaped.  Anything else is copied in chunks into a scratch char array with
+   * {@link String#getChars}, which is much cheaper than going through
+   * {@code charAt} for every char.
+   */
+  private void writeEscaped(String s, byte[][] escapes) throws XMLStreamException {
+    final int len = s.length();
+    if (len <= SHORT_STRING && len * MAX_CHAR_BYTES <= buf.length) {
+      ensure(len * MAX_CHAR_BYTES);
+      final byte[] b = buf;
+      int p = pos;
+      for (int i = 0; i < len; i++) {
+        char c = s.charAt(i);
+        if (c >= 0x80) {
+          pos = p;
+          writeEscapedChunks(s, i, escapes);
+          return;
+        }
+        byte[] esc = escapes[c];
+        if (esc == null) {
+          b[p++] = (byte) c;
+        } else {
+          for (int k = 0; k < esc.length; k++) {
+            b[p++] = esc[k];
+          }
+        }
+      }
+      pos = p;
+    } else {
+      writeEscapedChunks(s, 0, escapes);
+    }
+  }
+
+  private void writeEscapedChunks(String s, int off, byte[][] escapes) throws XMLStreamException {
+    final int len = s.length();
+    final char[] cs = cbuf;
+    while (off < len) {
+      int n = Math.min(cs.length, len - off);
+      s.getChars(off, off + n, cs, 0);
+      // don't split a surrogate pair across two chunks
+      if (off + n < len && Character.isHighSurrogate(cs[n - 1])) {
+        n--;
+      }
+      writeEscaped(cs, 0, n, escapes);
+      off += n;
+    }
+  }
+
+  /**
+   * Strings and array-backed CharBuffers are escaped in place.  Any other
+   * CharSequence is copied a chunk at a time into cbuf, using getChars for
+   * StringBuilders and charAt otherwise.
+   */
+  private void writeEscaped(CharSequence s, byte[][] escapes) throws XMLStreamException {
+    if (s instanceof String) {
+      writeEscaped((String) s, escapes);
+      return;
+    }
+    if (s instanceof CharBuffer && ((CharBuffer) s).hasArray()) {
+      CharBuffer cb = (CharBuffer) s;
+      writeEscaped(cb.array(), cb.arrayOffset() + cb.position(), cb.remaining(), escapes);
+      return;
+    }
+    final int len = s.length();
+    final char[] cs = cbuf;
+    int off = 0;
+    while (off < len) {
+      int n = Math.min(cs.length, len - off);
+      if (s instanceof StringBuilder) {
+        ((StringBuilder) s).getChars(off, off + n, cs, 0);
+      } else {
+        for (int i = 0; i < n; i++) {
+          cs[i] = s.charAt(off + i);
+        }
+      }
+      if (off + n < len && Character.isHighSurrogate(cs[n - 1])) {
+        n--;
+      }
+      writeEscaped(cs, 0, n, escapes);
+      off += n;
+    }
+  }
+
+  /**
+   * Escapes and encodes chars into the byte buffer.  Rather than checking
+   * for room on every char, each pass of the outer loop only takes as many
+   * chars as are guaranteed to fit, and the inner loop works on a local copy
+   * of pos so that it can stay in a register.
+   */
+  private void writeEscaped(char[] cs, int start, int len, byte[][] escapes)
+    throws XMLStreamException {
+    final int end = start + len;
+    final byte[] b = buf;
+    int i = start;
+    while (i < end) {
+      int room = (b.length - pos) / MAX_CHAR_BYTES;
+      if (room == 0) {
+        ensure(b.length);
+        continue;
+      }
+      final int stop = Math.min(end, i + room);
+      int p = pos;
+      for (; i < stop; i++) {
+        char c = cs[i];
+        if (c < 0x80) {
+          byte[] esc = escapes[c];
+          if (esc == null) {
+            b[p++] = (byte) c;
+          } else {
+            for (int k = 0; k < esc.length; k++) {
+              b[p++] = esc[k];
+            }
+          }
+        } else if (c < 0x800) {
+          b[p++] = (byte) (0xC0 | (c >> 6));
+          b[p++] = (byte) (0x80 | (c & 0x3F));
+        } else if (!Character.isSurrogate(c)) {
+          b[p++] = (byte) (0xE0 | (c >> 12));
+          b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          b[p++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < end
+                   && Character.isLowSurrogate(cs[i + 1])) {
+          // a pair takes 4 bytes, which fits in the room reserved for one char
+          int cp = Character.toCodePoint(c, cs[++i]);
+          b[p++] = (byte) (0xF0 | (cp >> 18));
+          b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+          b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+          b[p++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+          // unpaired surrogate: replaced with '?' as the JDK's UTF-8 encoder does
+          b[p++] = '?';
+        }
+      }
+      pos = p;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package net.thornydev.staxxas;
+
+import javax.xml.stream.FactoryConfigurationError;
+import javax.xml.stream.XMLOutputFactory;
+
+/**
+ * Holds the shared {@link XMLOutputFactory} used by the StaxxasStreamWriter
+ * constructors that take a {@link java.io.Writer}.
+ *
+ * <p>{@link XMLOutputFactory#newFactory()} does a system property and
+ * ServiceLoader lookup every time it is called, which is far too expensive
+ * to do once per document.  This class looks up the factory once, lazily,
+ * and caches it.</p>
+ *
+ * <p>A preconfigured factory (for example Woodstox or Aalto with tuned
+ * properties) can be installed with {@link #setFactory(XMLOutputFactory)}.
+ * Since the factory is shared across threads, it must not be reconfigured
+ * after it has been installed.</p>
+ *
+ * <h6>Thread Safety</h6>
+ * <p>This class is thread-safe.</p>
+ *
+ * @author midpeter444
+ */
+public final class XMLOutputFactoryProvider {
+
+  private static volatile XMLOutputFactory factory;
+
+  private XMLOutputFactoryProvider() {}
+
+  /**
+   * Returns the shared XMLOutputFactory, creating it with
+   * {@link XMLOutputFactory#newFactory()} on first use if none has been set.
+   *
+   * @return the shared XMLOutputFactory
+   * @throws FactoryConfigurationError if the default factory cannot be created
+   */
+  public static XMLOutputFactory getFactory() {
+    XMLOutputFactory f = factory;
+    if (f == null) {
+      synchronized (XMLOutputFactoryProvider.class) {
+        f = factory;
+        if (f == null) {
+          f = XMLOutputFactory.newFactory();
+          factory = f;
+        }
+      }
+    }
+    return f;
+  }
+
+  /**
+   * Installs the XMLOutputFactory to be shared by all StaxxasStreamWriters
+   * created from this point on.  Passing in {@code null} discards the
+   * current factory so that the default one is looked up again on next use.
+   *
+   * @param f fully configured XMLOutputFactory, or null
+   */
+  public static void setFactory(XMLOutputFactory f) {
+    factory = f;
+  }
+}
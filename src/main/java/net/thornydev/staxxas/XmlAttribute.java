@@ -0,0 +1,23 @@
+package net.thornydev.staxxas;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Writes a field of an {@link XmlWritable} class as an unprefixed attribute
+ * rather than a child element.  Only fields with a text value can be attributes.
+ *
+ * @author midpeter444
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface XmlAttribute {
+  /**
+   * @return attribute name; defaults to the field name
+   */
+  String value() default "";
+}
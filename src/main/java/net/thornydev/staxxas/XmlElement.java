@@ -0,0 +1,24 @@
+package net.thornydev.staxxas;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Names the child element written for a field of an {@link XmlWritable}
+ * class, when it should not be the field name.  For arrays and Iterables it
+ * names each repeated element.
+ *
+ * @author midpeter444
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface XmlElement {
+  /**
+   * @return element name
+   */
+  String value();
+}
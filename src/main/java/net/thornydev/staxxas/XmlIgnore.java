@@ -0,0 +1,18 @@
+package net.thornydev.staxxas;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Leaves a field of an {@link XmlWritable} class out of the generated writer.
+ *
+ * @author midpeter444
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface XmlIgnore {
+}
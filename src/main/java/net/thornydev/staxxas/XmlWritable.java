@@ -0,0 +1,58 @@
+package net.thornydev.staxxas;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class for which the staxxas-processor annotation processor generates
+ * a writer class at compile time.  For a class {@code Order} the generated class
+ * is {@code OrderXmlWriter} in the same package, with static methods that write
+ * an Order with direct StaxxasStreamWriter calls and pre-encoded {@link Name}s:
+ * {@literal
+ *     @XmlWritable(name = "order")
+ *     public class Order {
+ *       @XmlAttribute long id;
+ *       String customer;
+ *       List<LineItem> items;   // LineItem is also @XmlWritable
+ *     }
+ *
+ *     OrderXmlWriter.write(sx, order);
+ * }
+ * </p>
+ *
+ * <p>Every non-static, non-transient field declared in the class that is not
+ * marked {@link XmlIgnore} is written, in declaration order, as a child element
+ * named after the field, or as an attribute if it is marked {@link XmlAttribute}.
+ * Fields are read directly unless they are private, in which case a
+ * {@code getX()} or {@code isX()} getter must exist.  Null values are skipped.</p>
+ *
+ * <p>Primitives, their wrappers, CharSequences and enums are written as text;
+ * {@code @XmlWritable} classes are written with their generated writer; arrays
+ * and Iterables of any of those are written as repeated elements; other types
+ * are written with {@code toString()}.</p>
+ *
+ * @author midpeter444
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface XmlWritable {
+  /**
+   * @return element name; defaults to the class name with its first letter lower-cased
+   */
+  String name() default "";
+
+  /**
+   * @return namespace prefix of the element and its child elements; defaults to none.
+   * The StaxxasStreamWriter used must have it mapped to {@link #uri()}.
+   */
+  String prefix() default "";
+
+  /**
+   * @return URI the prefix is mapped to
+   */
+  String uri() default "";
+}
@@ -0,0 +1,169 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLOutputFactory;
+
+import org.junit.Test;
+
+public class AsyncOutputStreamTest {
+
+  /** A slow target that records whether it was closed */
+  static class SlowOutputStream extends ByteArrayOutputStream {
+    final CountDownLatch gate;
+    volatile boolean closed;
+
+    SlowOutputStream(CountDownLatch gate) {
+      this.gate = gate;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      try {
+        gate.await();
+        Thread.sleep(2);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      super.write(b, off, len);
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  private void writeDoc(StaxxasStreamWriter sx) {
+    sx.startDoc();
+    sx.startRootElement("items");
+    for (int i = 0; i < 200; i++) {
+      sx.startElement("item").attribute("id", i).characters("item & more").endElement();
+    }
+    sx.endDoc();
+  }
+
+  @Test
+  public void testEndDocWaitsForAllOutput() throws Exception {
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    writeDoc(new StaxxasStreamWriter(expected));
+
+    SlowOutputStream target = new SlowOutputStream(new CountDownLatch(0));
+    writeDoc(new StaxxasStreamWriter(new AsyncOutputStream(target, 64, 3)));
+    assertTrue(target.closed);
+    assertArrayEquals(expected.toByteArray(), target.toByteArray());
+  }
+
+  @Test
+  public void testJdkWriterPath() throws Exception {
+    SlowOutputStream target = new SlowOutputStream(new CountDownLatch(0));
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(
+      XMLOutputFactory.newFactory().createXMLStreamWriter(
+        new AsyncOutputStream(target, 32, 2), "UTF-8"));
+    sx.startDoc().startElement("foo").characters("bar").endElement().endDoc();
+    assertEquals("<?xml version=\"1.0\" ?><foo>bar</foo>", target.toString("UTF-8"));
+  }
+
+  @Test
+  public void testWriterBlocksWhenAllBuffersAreFull() throws Exception {
+    CountDownLatch gate = new CountDownLatch(1);
+    SlowOutputStream target = new SlowOutputStream(gate);
+    final AsyncOutputStream out = new AsyncOutputStream(target, 10, 2);
+    final CountDownLatch done = new CountDownLatch(1);
+    Thread producer = new Thread(new Runnable() {
+        public void run() {
+          try {
+            out.write(new byte[100]);
+            done.countDown();
+          } catch (IOException e) {
+            // left undone
+          }
+        }
+      });
+    producer.start();
+    assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+    gate.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    out.close();
+    assertEquals(100, target.size());
+  }
+
+  @Test
+  public void testWriteFailureIsReportedToTheWriter() throws Exception {
+    final IOException diskFull = new IOException("disk full");
+    OutputStream failing = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+          throw diskFull;
+        }
+      };
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(new AsyncOutputStream(failing, 16, 2));
+    try {
+      sx.startDoc().startElement("foo");
+      for (int i = 0; i < 1000; i++) {
+        sx.characters("some text that fills up the buffers");
+      }
+      sx.endDoc();
+      fail("Shouldn't get here");
+    } catch (StaxxasStreamWriterException e) {
+      Throwable t = e;
+      while (t != null && t != diskFull) {
+        t = t.getCause();
+      }
+      assertEquals(diskFull, t);
+    }
+  }
+
+  private Throwable writeUntilFailure(AsyncOutputStream out) {
+    try {
+      for (int i = 0; i < 1000; i++) {
+        out.write(new byte[16]);
+      }
+      out.close();
+      fail("Shouldn't get here");
+    } catch (IOException e) {
+      return e.getCause();
+    }
+    return null;
+  }
+
+  @Test(timeout=5000)
+  public void testErrorInTheTargetIsReportedToTheWriter() throws Exception {
+    final Error broken = new AssertionError("broken target");
+    OutputStream failing = new OutputStream() {
+        @Override
+        public void write(int b) {
+          throw broken;
+        }
+      };
+    assertEquals(broken, writeUntilFailure(new AsyncOutputStream(failing, 16, 2)));
+  }
+
+  @Test(timeout=5000)
+  public void testInterruptedIoThreadDoesNotBlockTheWriter() throws Exception {
+    OutputStream interrupting = new OutputStream() {
+        @Override
+        public void write(int b) {
+          Thread.currentThread().interrupt();
+        }
+      };
+    Throwable cause = writeUntilFailure(new AsyncOutputStream(interrupting, 16, 2));
+    assertTrue(String.valueOf(cause), cause instanceof InterruptedIOException);
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testNeedsTwoBuffers() {
+    new AsyncOutputStream(new ByteArrayOutputStream(), 1024, 1);
+  }
+}
@@ -0,0 +1,152 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class BeanWriterTest {
+
+  public enum Status { NEW, SHIPPED }
+
+  public static class Entity {
+    private long id;
+    public long getId() { return id; }
+  }
+
+  public static class Order extends Entity {
+    private String customer;
+    private boolean rush;
+    private Status status;
+    private BigDecimal total;
+    private List<Item> items = new ArrayList<Item>();
+    private int[] codes;
+    private String secret = "not written: no getter";
+    private transient int hash;
+    public static int COUNT;
+
+    public String getCustomer() { return customer; }
+    public boolean isRush() { return rush; }
+    public Status getStatus() { return status; }
+    public BigDecimal getTotal() { return total; }
+    public List<Item> getItems() { return items; }
+    public int[] getCodes() { return codes; }
+    public int getHash() { return hash; }
+  }
+
+  /** package-private, with a public field and a record-style accessor */
+  static class Item {
+    public final String sku;
+    private final float price;
+    private final char grade;
+
+    Item(String sku, float price, char grade) {
+      this.sku = sku;
+      this.price = price;
+      this.grade = grade;
+    }
+
+    public float price() { return price; }
+    public char getGrade() { return grade; }
+  }
+
+  private Order order() {
+    Order o = new Order();
+    ((Entity) o).id = 7;
+    o.customer = "A & B";
+    o.rush = true;
+    o.status = Status.SHIPPED;
+    o.total = new BigDecimal("10.50");
+    o.items.add(new Item("X-1", 2.5f, 'a'));
+    o.items.add(null);
+    o.items.add(new Item("Y-2", 14.9f, 'b'));
+    o.codes = new int[] {3, 4};
+    return o;
+  }
+
+  static final String ORDER = "<order><id>7</id><customer>A &amp; B</customer><rush>true</rush>"
+    + "<status>SHIPPED</status><total>10.50</total>"
+    + "<items><sku>X-1</sku><price>2.5</price><grade>a</grade></items>"
+    + "<items><sku>Y-2</sku><price>14.9</price><grade>b</grade></items>"
+    + "<codes>3</codes><codes>4</codes></order>";
+
+  private String write(BeanWriter beans, Object bean) throws Exception {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(bout);
+    sx.startDoc().startRootElement("root");
+    beans.write(sx, bean);
+    sx.endDoc();
+    return bout.toString("UTF-8");
+  }
+
+  @Test
+  public void testWritesProperties() throws Exception {
+    assertEquals("<?xml version=\"1.0\" ?><root>" + ORDER + "</root>", write(new BeanWriter(), order()));
+  }
+
+  @Test
+  public void testXMLStreamWriterAndName() {
+    StringWriter sw = new StringWriter();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(sw);
+    sx.startDoc().startRootElement("root");
+    new BeanWriter().write(sx, order(), Name.of("purchase"));
+    sx.endDoc();
+    assertTrue(sw.toString().endsWith(ORDER.replace("<order>", "<purchase>").replace("</order>", "</purchase>")
+                                      + "</root>"));
+  }
+
+  @Test
+  public void testNullsAreSkipped() throws Exception {
+    BeanWriter beans = new BeanWriter();
+    assertEquals("<?xml version=\"1.0\" ?><root><order><id>0</id><rush>false</rush></order></root>",
+                 write(beans, new Order()));
+    assertEquals("<?xml version=\"1.0\" ?><root></root>", write(beans, null));
+  }
+
+  @Test
+  public void testCacheIsBounded() throws Exception {
+    BeanWriter beans = new BeanWriter(2);
+    write(beans, new Order());
+    write(beans, new Item("a", 1, 'c'));
+    write(beans, new Entity());
+    assertEquals(2, beans.cachedPlans());
+    // dropped plans are rebuilt
+    assertEquals("<?xml version=\"1.0\" ?><root>" + ORDER + "</root>", write(beans, order()));
+  }
+
+  @Test
+  public void testConcurrentUse() throws Exception {
+    final BeanWriter beans = new BeanWriter();
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    List<Future<String>> results = new ArrayList<Future<String>>();
+    for (int i = 0; i < 16; i++) {
+      results.add(pool.submit(new Callable<String>() {
+          public String call() throws Exception {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            StaxxasStreamWriter sx = new StaxxasStreamWriter(bout);
+            sx.startDoc().startRootElement("root");
+            for (Order o : Arrays.asList(order(), order())) {
+              beans.write(sx, o);
+            }
+            sx.endDoc();
+            return bout.toString("UTF-8");
+          }
+        }));
+    }
+    for (Future<String> f : results) {
+      assertEquals("<?xml version=\"1.0\" ?><root>" + ORDER + ORDER + "</root>", f.get());
+    }
+    pool.shutdown();
+  }
+}
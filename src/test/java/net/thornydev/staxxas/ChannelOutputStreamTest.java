@@ -0,0 +1,142 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ChannelOutputStreamTest {
+
+  private void writeDoc(StaxxasStreamWriter sx) {
+    sx.startDoc().startRootElement("items");
+    for (int i = 0; i < 2000; i++) {
+      sx.startElement("item").attribute("id", i).characters("text & more é").endElement();
+    }
+    sx.endDoc();
+  }
+
+  private byte[] expected() {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    writeDoc(new StaxxasStreamWriter(bout));
+    return bout.toByteArray();
+  }
+
+  /** A channel that accepts at most a few bytes per write, like a busy socket */
+  static class TrickleChannel implements WritableByteChannel {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    int writes;
+    boolean open = true;
+
+    public int write(ByteBuffer src) throws IOException {
+      writes++;
+      if (writes % 3 == 0) return 0;
+      int n = Math.min(7, src.remaining());
+      for (int i = 0; i < n; i++) {
+        bytes.write(src.get());
+      }
+      return n;
+    }
+
+    public boolean isOpen() {
+      return open;
+    }
+
+    public void close() {
+      open = false;
+    }
+  }
+
+  @Test
+  public void testWritesToChannel() throws Exception {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    writeDoc(new StaxxasStreamWriter(Channels.newChannel(bout)));
+    assertArrayEquals(expected(), bout.toByteArray());
+  }
+
+  @Test
+  public void testPartialWritesAreCompleted() throws Exception {
+    TrickleChannel ch = new TrickleChannel();
+    writeDoc(new StaxxasStreamWriter(new ChannelOutputStream(ch, 100, 3, false)));
+    assertArrayEquals(expected(), ch.bytes.toByteArray());
+    assertFalse(ch.isOpen());
+  }
+
+  @Test
+  public void testNonBlockingPipe() throws Exception {
+    final Pipe pipe = Pipe.open();
+    pipe.sink().configureBlocking(false);
+    final AtomicReference<byte[]> read = new AtomicReference<byte[]>();
+    Thread reader = new Thread(new Runnable() {
+        public void run() {
+          try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            ByteBuffer bb = ByteBuffer.allocate(100);
+            while (pipe.source().read(bb) >= 0) {
+              bb.flip();
+              bout.write(bb.array(), 0, bb.limit());
+              bb.clear();
+              Thread.sleep(1);
+            }
+            read.set(bout.toByteArray());
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+    reader.start();
+    writeDoc(new StaxxasStreamWriter(pipe.sink()));
+    reader.join(10000);
+    assertArrayEquals(expected(), read.get());
+  }
+
+  /** A TrickleChannel whose fifth write fails */
+  static class FailingOnceChannel extends TrickleChannel {
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      if (writes == 4) {
+        writes++;
+        throw new IOException("connection reset");
+      }
+      return super.write(src);
+    }
+  }
+
+  @Test
+  public void testFlushAfterFailedWriteLosesNothing() throws Exception {
+    FailingOnceChannel ch = new FailingOnceChannel();
+    ChannelOutputStream out = new ChannelOutputStream(ch, 8, 2, false);
+    byte[] b = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes("UTF-8");
+    int off = 0;
+    try {
+      for (; off < b.length; off++) {
+        out.write(b[off]);
+      }
+      fail("Shouldn't get here");
+    } catch (IOException e) {
+      // the byte that triggered the drain was not buffered
+    }
+    for (; off < b.length; off++) {
+      out.write(b[off]);
+    }
+    out.close();
+    assertArrayEquals(b, ch.bytes.toByteArray());
+  }
+
+  @Test(expected=IOException.class)
+  public void testWriteAfterCloseThrows() throws Exception {
+    ChannelOutputStream out = new ChannelOutputStream(new TrickleChannel());
+    out.close();
+    out.write(1);
+  }
+}
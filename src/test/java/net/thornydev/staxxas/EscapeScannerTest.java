@@ -0,0 +1,101 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.junit.Test;
+
+public class EscapeScannerTest {
+
+  static final String ALPHABET = "ab&<>\"é一＜☼∾Ȧ";
+
+  @Test
+  public void testNextSpecialByte() throws Exception {
+    Random r = new Random(11);
+    for (int n = 0; n < 2000; n++) {
+      StringBuilder sb = new StringBuilder();
+      int len = r.nextInt(40);
+      for (int k = 0; k < len; k++) {
+        sb.append(r.nextInt(8) == 0 ? ALPHABET.charAt(r.nextInt(ALPHABET.length())) : 'x');
+      }
+      byte[] b = sb.toString().getBytes("UTF-8");
+      for (int from = 0; from <= b.length; from++) {
+        int expected = from;
+        while (expected < b.length && "&<>".indexOf(b[expected]) < 0) expected++;
+        assertEquals(expected, EscapeScanner.nextSpecialByte(b, from, b.length));
+        expected = from;
+        while (expected < b.length && "&<>\"".indexOf(b[expected]) < 0) expected++;
+        assertEquals(expected, EscapeScanner.nextSpecialAttributeByte(b, from, b.length));
+      }
+    }
+  }
+
+  @Test
+  public void testUtf16Length() throws Exception {
+    String[] pieces = {"x", "\u00e9", "\u4e00", "\ud83d\ude00"};
+    Random r = new Random(5);
+    for (int n = 0; n < 500; n++) {
+      StringBuilder sb = new StringBuilder();
+      int len = r.nextInt(60);
+      for (int k = 0; k < len; k++) {
+        sb.append(pieces[r.nextInt(pieces.length)]);
+      }
+      byte[] b = ("<" + sb + ">").getBytes("UTF-8");
+      assertEquals(sb.length(), EscapeScanner.utf16Length(b, 1, b.length - 2));
+      ByteBuffer bb = ByteBuffer.allocateDirect(b.length);
+      bb.put(b).position(1);
+      bb.limit(b.length - 1);
+      assertEquals(sb.length(), EscapeScanner.utf16Length(bb));
+    }
+  }
+
+  /** escaped output of the native writer must match the JDK's for any mix of chars */
+  @Test
+  public void testEscapingMatchesJdk() throws Exception {
+    Random r = new Random(3);
+    XMLOutputFactory factory = XMLOutputFactory.newInstance();
+    for (int n = 0; n < 500; n++) {
+      StringBuilder sb = new StringBuilder();
+      int len = r.nextInt(300);
+      for (int k = 0; k < len; k++) {
+        sb.append(r.nextInt(6) == 0 ? ALPHABET.charAt(r.nextInt(ALPHABET.length()))
+                  : (char) ('a' + r.nextInt(26)));
+      }
+      String text = sb.toString();
+
+      StringWriter sw = new StringWriter();
+      XMLStreamWriter jdk = factory.createXMLStreamWriter(sw);
+      jdk.writeStartElement("e");
+      jdk.writeAttribute("a", text);
+      jdk.writeCharacters(text);
+      jdk.writeEndElement();
+      jdk.close();
+
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      Utf8XMLStreamWriter w = new Utf8XMLStreamWriter(bout);
+      w.writeStartElement("e");
+      w.writeAttribute("a", text);
+      w.writeCharacters(text.toCharArray(), 0, text.length());
+      w.writeEndElement();
+      w.flush();
+      assertEquals(sw.toString(), bout.toString("UTF-8"));
+
+      bout.reset();
+      w.reset(bout);
+      w.writeStartElement("e");
+      byte[] utf8 = text.getBytes("UTF-8");
+      w.writeUtf8Attribute("a", utf8, 0, utf8.length, true);
+      w.writeUtf8Characters(utf8, 0, utf8.length, false);
+      w.writeEndElement();
+      w.flush();
+      assertEquals(sw.toString(), bout.toString("UTF-8"));
+    }
+  }
+}
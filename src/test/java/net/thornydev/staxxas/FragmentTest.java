@@ -0,0 +1,117 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FragmentTest {
+
+  ExecutorService executor;
+  Map<String,String> nsToUri;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(3);
+    nsToUri = new HashMap<String,String>();
+    nsToUri.put("aa", "http://www.example.org/aa");
+    nsToUri.put("bb", "http://www.example.org/bb");
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static void writeItems(StaxxasStreamWriter sx, int from, int to) {
+    for (int i = from; i < to; i++) {
+      sx.startElement("item").attribute("id", i)
+        .prefixedAttribute("bb", "kind", "k" + (i % 3))
+        .characters("item <" + i + ">").endElement();
+    }
+  }
+
+  private void writeSequential(StaxxasStreamWriter sx) {
+    sx.setDefaultNamespace("http://www.example.org/dflt");
+    sx.startDoc().startRootElement("items");
+    sx.setCurrentNamespace("aa");
+    writeItems(sx, 0, 100);
+    sx.endDoc();
+  }
+
+  private void writeParallel(StaxxasStreamWriter sx) {
+    sx.setDefaultNamespace("http://www.example.org/dflt");
+    sx.startDoc().startRootElement("items");
+    sx.setCurrentNamespace("aa");
+    List<Fragment> parts = new ArrayList<Fragment>();
+    for (int i = 0; i < 100; i += 25) {
+      final Fragment f = sx.fragment();
+      final int from = i;
+      parts.add(f);
+      executor.execute(new Runnable() {
+          public void run() {
+            writeItems(f.writer(), from, from + 25);
+            f.complete();
+          }
+        });
+    }
+    for (Fragment f : parts) {
+      sx.splice(f);
+    }
+    sx.endDoc();
+  }
+
+  @Test
+  public void testFragmentsSpliceInOrderNative() throws Exception {
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    writeSequential(new StaxxasStreamWriter(expected, new HashMap<String,String>(nsToUri)));
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    writeParallel(new StaxxasStreamWriter(actual, new HashMap<String,String>(nsToUri)));
+    assertEquals(expected.toString("UTF-8"), actual.toString("UTF-8"));
+  }
+
+  @Test
+  public void testFragmentsSpliceInOrderJdk() throws Exception {
+    StringWriter expected = new StringWriter();
+    writeSequential(new StaxxasStreamWriter(expected, new HashMap<String,String>(nsToUri)));
+    StringWriter actual = new StringWriter();
+    writeParallel(new StaxxasStreamWriter(actual, new HashMap<String,String>(nsToUri)));
+    assertEquals(expected.toString(), actual.toString());
+  }
+
+  @Test
+  public void testFailedFragmentIsReported() {
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(new ByteArrayOutputStream());
+    sx.startDoc().startElement("foo");
+    Fragment f = sx.fragment();
+    IllegalStateException cause = new IllegalStateException("boom");
+    f.fail(cause);
+    try {
+      sx.splice(f);
+      fail("Shouldn't get here");
+    } catch (StaxxasStreamWriterException e) {
+      assertSame(cause, e.getCause());
+    }
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testFragmentFromAnotherWriterIsRejected() {
+    StaxxasStreamWriter sx1 = new StaxxasStreamWriter(new ByteArrayOutputStream());
+    StaxxasStreamWriter sx2 = new StaxxasStreamWriter(new ByteArrayOutputStream());
+    Fragment f = sx1.fragment();
+    f.complete();
+    sx2.splice(f);
+  }
+}
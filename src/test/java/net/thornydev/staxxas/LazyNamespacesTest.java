@@ -0,0 +1,171 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+public class LazyNamespacesTest {
+
+  static final String AA = "http://www.example.org/aa";
+  static final String BB = "http://www.example.org/bb";
+
+  Map<String,String> nsToUri;
+
+  @Before
+  public void setUp() {
+    nsToUri = new LinkedHashMap<String,String>();
+    nsToUri.put("aa", AA);
+    nsToUri.put("bb", BB);
+    for (int i = 0; i < 40; i++) {
+      nsToUri.put("ns" + i, "http://www.example.org/unused/" + i);
+    }
+  }
+
+  private void writeDoc(StaxxasStreamWriter sx) {
+    sx.startDoc();
+    sx.startRootElement("msg");
+    sx.startElement("a", "aa").characters("1").endElement();
+    sx.startElement("a", "aa").characters("2").endElement();
+    sx.emptyElement("c").prefixedAttribute("bb", "x", "y").prefixedAttribute("bb", "z", "w");
+    sx.endElement();
+    sx.endDoc();
+  }
+
+  private static Document parse(byte[] xml) throws Exception {
+    DocumentBuilderFactory f = DocumentBuilderFactory.newInstance();
+    f.setNamespaceAware(true);
+    return f.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+  }
+
+  private static long declarations(Map<String,String> nsToUri) {
+    long n = 0;
+    for (Map.Entry<String,String> e : nsToUri.entrySet()) {
+      n += (" xmlns:" + e.getKey() + "=\"" + e.getValue() + "\"").length();
+    }
+    return n;
+  }
+
+  @Test
+  public void testDeclarationsAreHoistedToTheRootWithNativeWriter() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(out, nsToUri);
+    sx.setLazyNamespaces(true);
+    writeDoc(sx);
+
+    String expected = "<?xml version=\"1.0\" ?><msg xmlns:aa=\"" + AA + "\" xmlns:bb=\"" + BB + "\">"
+      + "<aa:a>1</aa:a><aa:a>2</aa:a><c bb:x=\"y\" bb:z=\"w\"/></msg>";
+    assertEquals(expected, out.toString("UTF-8"));
+
+    Map<String,String> used = new LinkedHashMap<String,String>();
+    used.put("aa", AA);
+    used.put("bb", BB);
+    assertEquals(declarations(nsToUri) - declarations(used), sx.getNamespaceBytesSaved());
+  }
+
+  @Test
+  public void testDeclarationsAreScopedWithStaxWriter() throws Exception {
+    StringWriter sw = new StringWriter();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(sw, nsToUri);
+    sx.setLazyNamespaces(true);
+    writeDoc(sx);
+
+    String xml = sw.toString();
+    assertEquals(2, xml.split("xmlns:aa=").length - 1);
+    assertEquals(1, xml.split("xmlns:bb=").length - 1);
+    assertTrue(xml, !xml.contains("xmlns:ns"));
+
+    Document doc = parse(xml.getBytes("UTF-8"));
+    NodeList as = doc.getElementsByTagNameNS(AA, "a");
+    assertEquals(2, as.getLength());
+    Element c = (Element) doc.getElementsByTagName("c").item(0);
+    assertEquals("y", c.getAttributeNS(BB, "x"));
+
+    String aa = " xmlns:aa=\"" + AA + "\"";
+    String bb = " xmlns:bb=\"" + BB + "\"";
+    assertEquals(declarations(nsToUri) - 2 * aa.length() - bb.length(), sx.getNamespaceBytesSaved());
+  }
+
+  @Test
+  public void testNestedAndHandleBasedNamesAreDeclared() throws Exception {
+    NamespaceSet set = new NamespaceSet(nsToUri);
+    Namespace bb = set.get("bb");
+    Name aaItem = Name.of("aa", "item", AA);
+
+    for (int engine = 0; engine < 2; engine++) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      StaxxasStreamWriter sx = engine == 0
+        ? new StaxxasStreamWriter(out, nsToUri)
+        : new StaxxasStreamWriter(new OutputStreamWriter(out, "UTF-8"), nsToUri);
+      sx.setLazyNamespaces(true);
+      sx.startDoc();
+      sx.startRootElement("root");
+      sx.startElement(bb, "list");
+      sx.startElement(aaItem).attribute(Name.of("bb", "id", BB), 1).endElement();
+      sx.emptyElement(aaItem);
+      sx.endElement();
+      sx.emptyElement(bb, "end");
+      sx.endElement();
+      sx.endDoc();
+
+      Document doc = parse(out.toByteArray());
+      assertEquals(2, doc.getElementsByTagNameNS(AA, "item").getLength());
+      assertEquals(1, doc.getElementsByTagNameNS(BB, "end").getLength());
+      Element item = (Element) doc.getElementsByTagNameNS(AA, "item").item(0);
+      assertEquals("1", item.getAttributeNS(BB, "id"));
+    }
+  }
+
+  @Test
+  public void testLargeDocumentFallsBackToElementDeclarations() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(out, nsToUri);
+    sx.setLazyNamespaces(true);
+    sx.startDoc();
+    sx.startRootElement("root");
+    StringBuilder filler = new StringBuilder();
+    for (int i = 0; i < 1000; i++) filler.append("0123456789");
+    sx.startElement("filler").characters(filler.toString()).endElement();
+    sx.startElement("a", "aa").endElement();
+    sx.startElement("a", "aa").endElement();
+    sx.endElement();
+    sx.endDoc();
+
+    String xml = out.toString("UTF-8");
+    assertTrue(xml.startsWith("<?xml version=\"1.0\" ?><root><filler>"));
+    assertEquals(2, xml.split("xmlns:aa=").length - 1);
+    assertEquals(2, parse(out.toByteArray()).getElementsByTagNameNS(AA, "a").getLength());
+  }
+
+  @Test
+  public void testReusedWriterAndMetrics() throws Exception {
+    StaxxasMetrics metrics = new StaxxasMetrics();
+    StaxxasWriterPool pool = new StaxxasWriterPool(1, nsToUri, null);
+    pool.setMetrics(metrics);
+    String first = null;
+    for (int i = 0; i < 2; i++) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (StaxxasStreamWriter sx = pool.acquire(out)) {
+        sx.setLazyNamespaces(true);
+        writeDoc(sx);
+      }
+      if (first == null) first = out.toString("UTF-8");
+      else               assertEquals(first, out.toString("UTF-8"));
+    }
+    assertTrue(metrics.getNamespaceBytesSaved() > 0);
+    assertEquals(0, new StaxxasStreamWriter(new ByteArrayOutputStream()).getNamespaceBytesSaved());
+  }
+}
@@ -0,0 +1,63 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedFileOutputStreamTest {
+
+  Path path;
+
+  @Before
+  public void setUp() throws IOException {
+    path = Files.createTempFile("staxxas-mapped", ".xml");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(path);
+  }
+
+  private void writeDoc(StaxxasStreamWriter sx) {
+    sx.startDoc().startRootElement("items");
+    for (int i = 0; i < 500; i++) {
+      sx.startElement("item").attribute("id", i).characters("some text é").endElement();
+    }
+    sx.endDoc();
+  }
+
+  @Test
+  public void testFileHasExactlyTheDocumentAcrossWindows() throws Exception {
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    writeDoc(new StaxxasStreamWriter(expected));
+
+    writeDoc(new StaxxasStreamWriter(new MappedFileOutputStream(path, 1000)));
+    assertArrayEquals(expected.toByteArray(), Files.readAllBytes(path));
+  }
+
+  @Test
+  public void testExistingContentIsReplaced() throws Exception {
+    Files.write(path, new byte[100000]);
+    MappedFileOutputStream out = new MappedFileOutputStream(path);
+    out.write('x');
+    out.write(new byte[] {'a', 'b', 'c'}, 1, 2);
+    assertEquals(3, out.size());
+    out.close();
+    assertEquals("xbc", new String(Files.readAllBytes(path), "UTF-8"));
+  }
+
+  @Test(expected=IOException.class)
+  public void testWriteAfterCloseThrows() throws Exception {
+    MappedFileOutputStream out = new MappedFileOutputStream(path, 16);
+    out.close();
+    out.write('x');
+  }
+}
@@ -0,0 +1,88 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class NameTest {
+
+  private static final Map<String,String> NS = new HashMap<String,String>();
+  static {
+    NS.put("aa", "http://www.example.org/aa");
+  }
+
+  @Test
+  public void testNameParts() {
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(new StringWriter(), NS);
+    Name order = sx.name("order");
+    assertNull(order.getPrefix());
+    assertEquals("order", order.getLocalName());
+    assertNull(order.getUri());
+
+    Name line = sx.name("aa", "line");
+    assertEquals("aa", line.getPrefix());
+    assertEquals("http://www.example.org/aa", line.getUri());
+    assertEquals("aa:line", line.toString());
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testInvalidNameThrows() {
+    Name.of("1abc");
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testNameWithColonThrows() {
+    Name.of("aa:abc");
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testUnmappedPrefixThrows() {
+    new StaxxasStreamWriter(new StringWriter(), NS).name("zz", "abc");
+  }
+
+  private void writeWithStrings(StaxxasStreamWriter sx) {
+    sx.startDoc().startRootElement("orders");
+    for (int i = 0; i < 20; i++) {
+      sx.startElement("order").attribute("id", "o<" + i + ">");
+      sx.startElement("line", "aa").prefixedAttribute("aa", "qty", "1");
+      sx.emptyElement("gift");
+    }
+    sx.endDoc();
+  }
+
+  private void writeWithNames(StaxxasStreamWriter sx) {
+    Name orders = sx.name("orders");
+    Name order = sx.name("order");
+    Name id = sx.name("id");
+    Name line = sx.name("aa", "line");
+    Name qty = sx.name("aa", "qty");
+    Name gift = Name.of("gift");
+    sx.startDoc().startRootElement("orders");
+    for (int i = 0; i < 20; i++) {
+      sx.startElement(order).attribute(id, "o<" + i + ">");
+      sx.startElement(line).attribute(qty, "1");
+      sx.emptyElement(gift);
+    }
+    sx.endDoc();
+  }
+
+  @Test
+  public void testNamesWriteSameDocumentAsStrings() throws Exception {
+    StringWriter viaStrings = new StringWriter();
+    writeWithStrings(new StaxxasStreamWriter(viaStrings, NS));
+
+    StringWriter jdkNames = new StringWriter();
+    writeWithNames(new StaxxasStreamWriter(jdkNames, NS));
+    assertEquals(viaStrings.toString(), jdkNames.toString());
+
+    ByteArrayOutputStream nativeNames = new ByteArrayOutputStream();
+    writeWithNames(new StaxxasStreamWriter(nativeNames, NS));
+    assertEquals(viaStrings.toString(), nativeNames.toString("UTF-8"));
+  }
+}
@@ -0,0 +1,84 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class NamespaceSetTest {
+
+  NamespaceSet nss;
+
+  @Before
+  public void setUp() {
+    Map<String,String> nsToUri = new LinkedHashMap<String,String>();
+    nsToUri.put("aa", "http://www.example.org/aa");
+    nsToUri.put("bb", "http://www.example.org/bb");
+    nss = new NamespaceSet(nsToUri);
+  }
+
+  @Test
+  public void testHandles() {
+    Namespace aa = nss.get("aa");
+    assertEquals("aa", aa.getPrefix());
+    assertEquals("http://www.example.org/aa", aa.getUri());
+    assertSame(aa, nss.get("aa"));
+    assertEquals(2, nss.size());
+    assertEquals("http://www.example.org/bb", nss.asMap().get("bb"));
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testUnmappedPrefixThrows() {
+    nss.get("cc");
+  }
+
+  @Test(expected=UnsupportedOperationException.class)
+  public void testMapIsReadOnly() {
+    nss.asMap().put("cc", "http://www.example.org/cc");
+  }
+
+  private void writeWithStrings(StaxxasStreamWriter sx) {
+    sx.startDoc();
+    sx.setCurrentNamespace("aa");
+    sx.startRootElement("foo");
+    sx.startElement("bar", "bb").prefixedAttribute("aa", "x", "1").endElement();
+    sx.setCurrentNamespace("bb");
+    sx.emptyElement("baz");
+    sx.startElement("quux", null).endElement();
+    sx.endDoc();
+  }
+
+  private void writeWithHandles(StaxxasStreamWriter sx) {
+    Namespace aa = nss.get("aa");
+    Namespace bb = nss.get("bb");
+    sx.startDoc();
+    sx.useNamespace(aa);
+    sx.startRootElement("foo");
+    sx.startElement(bb, "bar").prefixedAttribute(aa, "x", "1").endElement();
+    sx.emptyElement(bb, "baz");
+    sx.startElement((Namespace) null, "quux").endElement();
+    sx.endDoc();
+  }
+
+  @Test
+  public void testHandlesWriteSameDocumentAsPrefixes() throws Exception {
+    StringWriter viaStrings = new StringWriter();
+    writeWithStrings(new StaxxasStreamWriter(viaStrings, nss.asMap()));
+    StringWriter viaHandles = new StringWriter();
+    writeWithHandles(new StaxxasStreamWriter(viaHandles, nss.asMap()));
+    assertEquals(viaStrings.toString(), viaHandles.toString());
+
+    ByteArrayOutputStream nativeHandles = new ByteArrayOutputStream();
+    writeWithHandles(new StaxxasStreamWriter(nativeHandles, nss.asMap()));
+    assertEquals(viaStrings.toString(), nativeHandles.toString("UTF-8"));
+    assertEquals("<?xml version=\"1.0\" ?><aa:foo xmlns:aa=\"http://www.example.org/aa\" "
+                 + "xmlns:bb=\"http://www.example.org/bb\"><bb:bar aa:x=\"1\"></bb:bar>"
+                 + "<bb:baz/><quux></quux></aa:foo>", viaStrings.toString());
+  }
+}
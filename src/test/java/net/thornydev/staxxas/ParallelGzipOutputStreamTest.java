@@ -0,0 +1,72 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class ParallelGzipOutputStreamTest {
+
+  private void writeDoc(StaxxasStreamWriter sx) {
+    sx.startDoc().startRootElement("items");
+    for (int i = 0; i < 3000; i++) {
+      sx.startElement("item").attribute("id", i).characters("text & more é").endElement();
+    }
+    sx.endDoc();
+  }
+
+  private static byte[] gunzip(byte[] gz) throws IOException {
+    InputStream in = new GZIPInputStream(new ByteArrayInputStream(gz));
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    byte[] buf = new byte[4096];
+    int n;
+    while ((n = in.read(buf)) > 0) {
+      bout.write(buf, 0, n);
+    }
+    return bout.toByteArray();
+  }
+
+  @Test
+  public void testMultiMemberStreamReadsBackInOrder() throws Exception {
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    writeDoc(new StaxxasStreamWriter(expected));
+
+    ByteArrayOutputStream gz = new ByteArrayOutputStream();
+    ExecutorService pool = Executors.newFixedThreadPool(3);
+    try {
+      writeDoc(new StaxxasStreamWriter(
+                 new ParallelGzipOutputStream(gz, pool, 3, 1000, Deflater.BEST_SPEED)));
+    } finally {
+      pool.shutdown();
+    }
+    assertArrayEquals(expected.toByteArray(), gunzip(gz.toByteArray()));
+  }
+
+  @Test
+  public void testOwnPoolAndFlush() throws Exception {
+    ByteArrayOutputStream gz = new ByteArrayOutputStream();
+    ParallelGzipOutputStream out = new ParallelGzipOutputStream(gz, 2);
+    out.write("<a>".getBytes("UTF-8"));
+    out.flush();
+    assertEquals("<a>", new String(gunzip(gz.toByteArray()), "UTF-8"));
+    out.write("</a>".getBytes("UTF-8"));
+    out.close();
+    assertEquals("<a></a>", new String(gunzip(gz.toByteArray()), "UTF-8"));
+  }
+
+  @Test
+  public void testEmptyStreamIsValidGzip() throws Exception {
+    ByteArrayOutputStream gz = new ByteArrayOutputStream();
+    new ParallelGzipOutputStream(gz, 1).close();
+    assertEquals(0, gunzip(gz.toByteArray()).length);
+  }
+}
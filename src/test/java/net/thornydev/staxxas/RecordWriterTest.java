@@ -0,0 +1,191 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RecordWriterTest {
+
+  static final Name RECORD = Name.of("record");
+  static final Name ID = Name.of("id");
+
+  static final RecordWriter<Integer> WRITER = new RecordWriter<Integer>() {
+    @Override
+    public void write(StaxxasStreamWriter sx, Integer i) {
+      sx.startElement(RECORD).attribute(ID, i).characters("value " + i).endElement();
+    }
+  };
+
+  /** counts flushes that reach the output */
+  static class FlushCountingStream extends ByteArrayOutputStream {
+    int flushes;
+
+    @Override
+    public void flush() throws IOException {
+      flushes++;
+    }
+  }
+
+  List<Integer> ints;
+
+  @Before
+  public void setUp() {
+    ints = new ArrayList<Integer>();
+    for (int i = 0; i < 10000; i++) {
+      ints.add(i);
+    }
+  }
+
+  private String handWritten() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(out);
+    sx.startDoc().startRootElement("records");
+    for (Integer i : ints) {
+      WRITER.write(sx, i);
+    }
+    sx.endElement().endDoc();
+    return out.toString("UTF-8");
+  }
+
+  @Test
+  public void testIterable() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new StaxxasStreamWriter(out).startDoc().records("records", ints, WRITER).endDoc();
+    assertEquals(handWritten(), out.toString("UTF-8"));
+  }
+
+  @Test
+  public void testSequentialAndParallelStreams() throws Exception {
+    String expected = handWritten();
+    for (boolean parallel : new boolean[] {false, true}) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      StaxxasStreamWriter sx = new StaxxasStreamWriter(out);
+      sx.setRecordBatchSize(128);
+      sx.startDoc();
+      sx.records("records", parallel ? ints.parallelStream() : ints.stream(), WRITER);
+      sx.endDoc();
+      assertEquals(expected, out.toString("UTF-8"));
+    }
+  }
+
+  @Test
+  public void testParallelStreamWithWriter() throws Exception {
+    StringWriter sw = new StringWriter();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(sw);
+    sx.setRecordBatchSize(500);
+    sx.startDoc().records("records", ints.parallelStream(), WRITER).endDoc();
+    assertTrue(sw.toString().endsWith("<record id=\"9999\">value 9999</record></records>"));
+    assertEquals(10000, sw.toString().split("<record ").length - 1);
+  }
+
+  @Test
+  public void testFlushesAtBatchBoundaries() throws Exception {
+    FlushCountingStream out = new FlushCountingStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(out);
+    sx.setRecordBatchSize(1000);
+    sx.setFlushRecordBatches(true);
+    sx.startDoc().records("records", ints, WRITER);
+    assertEquals(10, out.flushes);
+
+    out = new FlushCountingStream();
+    sx = new StaxxasStreamWriter(out);
+    sx.setRecordBatchSize(1000);
+    sx.startDoc().records("records", ints.parallelStream(), WRITER);
+    assertEquals(0, out.flushes);
+  }
+
+  @Test
+  public void testParallelFailureIsReported() {
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(new ByteArrayOutputStream());
+    sx.setRecordBatchSize(100);
+    sx.startDoc();
+    try {
+      sx.records("records", ints.parallelStream(), new RecordWriter<Integer>() {
+        @Override
+        public void write(StaxxasStreamWriter sx, Integer i) {
+          if (i == 5000) throw new IllegalStateException("bad record");
+          WRITER.write(sx, i);
+        }
+      });
+      fail("expected StaxxasStreamWriterException");
+    } catch (StaxxasStreamWriterException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void testParallelFailureStopsTheOtherBatches() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger written = new AtomicInteger();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(new ByteArrayOutputStream());
+    sx.setRecordBatchSize(50);
+    sx.startDoc();
+    try {
+      sx.records("records", ints.parallelStream(), new RecordWriter<Integer>() {
+        @Override
+        public void write(StaxxasStreamWriter sx, Integer i) {
+          running.incrementAndGet();
+          try {
+            if (i == 120) throw new IllegalStateException("bad record");
+            Thread.sleep(1);
+            WRITER.write(sx, i);
+            written.incrementAndGet();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            running.decrementAndGet();
+          }
+        }
+      });
+      fail("expected StaxxasStreamWriterException");
+    } catch (StaxxasStreamWriterException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    assertEquals(0, running.get());
+    int n = written.get();
+    Thread.sleep(50);
+    assertEquals(n, written.get());
+    assertTrue(String.valueOf(n), n < ints.size());
+  }
+
+  /** every common pool thread writes a document with a parallel stream */
+  @Test(timeout = 30000)
+  public void testParallelStreamFromCommonPoolThreads() throws Exception {
+    final String expected = handWritten();
+    int n = ForkJoinPool.commonPool().getParallelism() + 1;
+    List<Future<String>> docs = new ArrayList<Future<String>>();
+    for (int k = 0; k < n; k++) {
+      docs.add(ForkJoinPool.commonPool().submit(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          StaxxasStreamWriter sx = new StaxxasStreamWriter(out);
+          sx.setRecordBatchSize(100);
+          sx.startDoc().records("records", ints.parallelStream(), WRITER).endDoc();
+          return out.toString("UTF-8");
+        }
+      }));
+    }
+    for (Future<String> doc : docs) {
+      assertEquals(expected, doc.get());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBatchSizeMustBePositive() {
+    new StaxxasStreamWriter(new ByteArrayOutputStream()).setRecordBatchSize(0);
+  }
+}
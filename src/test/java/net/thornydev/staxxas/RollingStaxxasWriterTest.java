@@ -0,0 +1,115 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.Test;
+
+public class RollingStaxxasWriterTest {
+
+  final List<ByteArrayOutputStream> outs = new ArrayList<ByteArrayOutputStream>();
+
+  final RollingStaxxasWriter.OutputProvider inMemory = new RollingStaxxasWriter.OutputProvider() {
+      public OutputStream open(int index) {
+        assertEquals(outs.size(), index);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        outs.add(bout);
+        return bout;
+      }
+    };
+
+  private Map<String,String> nsToUri() {
+    Map<String,String> m = new HashMap<String,String>();
+    m.put("aa", "http://www.example.org/aa");
+    return m;
+  }
+
+  /** parses the document and counts the item elements in it */
+  private int countItems(byte[] doc) throws Exception {
+    XMLStreamReader r = XMLInputFactory.newFactory().createXMLStreamReader(new ByteArrayInputStream(doc));
+    int items = 0;
+    while (r.hasNext()) {
+      if (r.next() == XMLStreamConstants.START_ELEMENT && r.getLocalName().equals("item")) {
+        assertEquals("http://www.example.org/aa", r.getNamespaceURI());
+        items++;
+      }
+    }
+    return items;
+  }
+
+  @Test
+  public void testSplitsByRecordCount() throws Exception {
+    try (RollingStaxxasWriter rw = new RollingStaxxasWriter(inMemory, "items", nsToUri(),
+                                                            "http://www.example.org/dflt", 0, 40)) {
+      for (int i = 0; i < 100; i++) {
+        StaxxasStreamWriter sx = rw.nextRecord();
+        if (i == 0) sx.setCurrentNamespace("aa");
+        sx.startElement("item").attribute("id", i).characters("text").endElement();
+      }
+      assertEquals(3, rw.fileCount());
+    }
+    assertEquals(3, outs.size());
+    assertEquals(40, countItems(outs.get(0).toByteArray()));
+    assertEquals(40, countItems(outs.get(1).toByteArray()));
+    assertEquals(20, countItems(outs.get(2).toByteArray()));
+    String expectedStart = "<?xml version=\"1.0\" ?><items xmlns=\"http://www.example.org/dflt\" "
+      + "xmlns:aa=\"http://www.example.org/aa\"><aa:item id=\"40\">";
+    assertEquals(expectedStart, outs.get(1).toString("UTF-8").substring(0, expectedStart.length()));
+  }
+
+  @Test
+  public void testSplitsBySize() throws Exception {
+    int total = 0;
+    try (RollingStaxxasWriter rw = new RollingStaxxasWriter(inMemory, "items", nsToUri(),
+                                                            null, 1000, 0)) {
+      for (int i = 0; i < 500; i++) {
+        rw.nextRecord().startElement("item", "aa").characters("some text for item " + i).endElement();
+      }
+    }
+    assertTrue(outs.size() > 10);
+    for (ByteArrayOutputStream bout : outs) {
+      // may go over by one record and the end tag
+      assertTrue(bout.size() < 1100);
+      total += countItems(bout.toByteArray());
+    }
+    assertEquals(500, total);
+  }
+
+  @Test
+  public void testFiles() throws Exception {
+    Path dir = Files.createTempDirectory("staxxas-rolling");
+    try (RollingStaxxasWriter rw = new RollingStaxxasWriter(RollingStaxxasWriter.files(dir, "feed-%02d.xml"),
+                                                            "items", null, null, 0, 2)) {
+      for (int i = 0; i < 3; i++) {
+        rw.nextRecord().emptyElement("item");
+      }
+    }
+    assertEquals("<?xml version=\"1.0\" ?><items><item/><item/></items>",
+                 new String(Files.readAllBytes(dir.resolve("feed-00.xml")), "UTF-8"));
+    assertEquals("<?xml version=\"1.0\" ?><items><item/></items>",
+                 new String(Files.readAllBytes(dir.resolve("feed-01.xml")), "UTF-8"));
+    Files.delete(dir.resolve("feed-00.xml"));
+    Files.delete(dir.resolve("feed-01.xml"));
+    Files.delete(dir);
+  }
+
+  @Test
+  public void testNoRecordsNoFiles() {
+    new RollingStaxxasWriter(inMemory, "items", null, null, 0, 10).close();
+    assertEquals(0, outs.size());
+  }
+}
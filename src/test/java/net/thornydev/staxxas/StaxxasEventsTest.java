@@ -0,0 +1,125 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+public class StaxxasEventsTest {
+
+  private void writeDoc(StaxxasStreamWriter sx) {
+    sx.startDoc();
+    sx.startRootElement("orders");
+    sx.startElement("order").attribute("id", "1");
+    sx.startElement("customer").characters("Fred").endElement();
+    sx.endElement();
+    sx.endDoc();
+  }
+
+  private List<RecordedEvent> record(boolean enabled, final StaxxasStreamWriter... writers) throws Exception {
+    return record(enabled, new Runnable() {
+        public void run() {
+          for (StaxxasStreamWriter sx : writers) {
+            writeDoc(sx);
+          }
+        }
+      });
+  }
+
+  private List<RecordedEvent> record(boolean enabled, Runnable writing) throws Exception {
+    File f = File.createTempFile("staxxas", ".jfr");
+    try {
+      try (Recording r = new Recording()) {
+        if (enabled) {
+          r.enable("net.thornydev.staxxas.Document");
+          r.enable("net.thornydev.staxxas.Flush");
+        }
+        r.start();
+        writing.run();
+        r.stop();
+        r.dump(f.toPath());
+      }
+      List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+      for (RecordedEvent e : RecordingFile.readAllEvents(f.toPath())) {
+        if (e.getEventType().getName().startsWith("net.thornydev.staxxas.")) {
+          events.add(e);
+        }
+      }
+      return events;
+    } finally {
+      f.delete();
+    }
+  }
+
+  @Test
+  public void testDocumentAndFlushEvents() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StaxxasStreamWriter utf8 = new StaxxasStreamWriter(out);
+    StaxxasStreamWriter stax = new StaxxasStreamWriter(new StringWriter());
+    List<RecordedEvent> events = record(true, utf8, stax);
+
+    List<RecordedEvent> docs = new ArrayList<RecordedEvent>();
+    int flushes = 0;
+    for (RecordedEvent e : events) {
+      if (e.getEventType().getName().equals("net.thornydev.staxxas.Document")) docs.add(e);
+      else flushes++;
+    }
+    assertEquals(2, docs.size());
+    assertEquals(2, flushes);
+    for (RecordedEvent e : docs) {
+      assertEquals(3, e.getLong("elements"));
+      assertEquals(1, e.getLong("attributes"));
+      assertEquals(4, e.getLong("characters"));
+      assertTrue(!e.getDuration().isNegative());
+    }
+    long bytes0 = docs.get(0).getLong("bytes");
+    long bytes1 = docs.get(1).getLong("bytes");
+    assertEquals(out.size(), Math.max(bytes0, bytes1));
+    assertEquals(0, Math.min(bytes0, bytes1));
+  }
+
+  @Test
+  public void testRecordBatchFlushEvents() throws Exception {
+    final List<Integer> ints = new ArrayList<Integer>();
+    for (int i = 0; i < 2500; i++) {
+      ints.add(i);
+    }
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    List<RecordedEvent> events = record(true, new Runnable() {
+        public void run() {
+          StaxxasStreamWriter sx = new StaxxasStreamWriter(out);
+          sx.setFlushRecordBatches(true);
+          sx.startDoc().records("records", ints, RecordWriterTest.WRITER).endDoc();
+        }
+      });
+
+    List<Long> flushed = new ArrayList<Long>();
+    for (RecordedEvent e : events) {
+      if (e.getEventType().getName().equals("net.thornydev.staxxas.Flush")) {
+        flushed.add(e.getLong("bytes"));
+      }
+    }
+    // one after each of the three batches and one at endDoc
+    assertEquals(4, flushed.size());
+    for (int i = 1; i < flushed.size(); i++) {
+      assertTrue(flushed.toString(), flushed.get(i - 1) < flushed.get(i));
+    }
+    assertEquals(out.size(), (long) flushed.get(3));
+  }
+
+  @Test
+  public void testEventsAreDisabledByDefault() throws Exception {
+    List<RecordedEvent> events = record(false, new StaxxasStreamWriter(new ByteArrayOutputStream()));
+    assertEquals(0, events.size());
+  }
+}
@@ -0,0 +1,142 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class StaxxasInputStreamTest {
+
+  /** writes a document of count records, one per step */
+  static class Records implements StaxxasInputStream.Generator {
+    final int count;
+    int steps;
+
+    Records(int count) {
+      this.count = count;
+    }
+
+    @Override
+    public boolean step(StaxxasStreamWriter sx) {
+      if (steps == 0) {
+        sx.startDoc().startRootElement("records");
+      }
+      if (steps < count) {
+        sx.startElement("record").attribute("id", steps).characters("value " + steps).endElement();
+        steps++;
+        return true;
+      }
+      steps++;
+      sx.endDoc();
+      return false;
+    }
+  }
+
+  private static byte[] expected(int count) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(out);
+    Records r = new Records(count);
+    while (r.step(sx)) {
+      // all in one go
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] readAll(InputStream in, int chunk) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] b = new byte[chunk];
+    int n;
+    while ((n = in.read(b)) != -1) {
+      out.write(b, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testReadsTheDocument() throws Exception {
+    for (int chunk : new int[] {1, 7, 4096}) {
+      StaxxasInputStream in = new StaxxasInputStream(new Records(500));
+      assertEquals(new String(expected(500), "UTF-8"), new String(readAll(in, chunk), "UTF-8"));
+      assertEquals(-1, in.read());
+      in.close();
+    }
+  }
+
+  @Test
+  public void testReadByteAtATime() throws Exception {
+    StaxxasInputStream in = new StaxxasInputStream(new Records(3));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int c;
+    while ((c = in.read()) != -1) {
+      out.write(c);
+    }
+    assertEquals(new String(expected(3), "UTF-8"), out.toString("UTF-8"));
+  }
+
+  @Test
+  public void testGeneratesOnlyAsMuchAsIsRead() throws Exception {
+    Records gen = new Records(100000);
+    StaxxasInputStream in = new StaxxasInputStream(gen);
+    assertEquals(0, gen.steps);
+
+    byte[] b = new byte[100];
+    assertEquals(100, in.read(b));
+    assertEquals("<?xml version=\"1.0\" ?><records>", new String(b, 0, 31, "UTF-8"));
+    // only enough records for the first read
+    assertTrue(String.valueOf(gen.steps), gen.steps <= 3);
+
+    long total = 100 + readAll(in, 1000).length;
+    assertEquals(expected(100000).length, total);
+    assertEquals(StaxxasInputStream.DEFAULT_BUFFER_SIZE, in.bufferCapacity());
+  }
+
+  @Test
+  public void testSkipAndClose() throws Exception {
+    Records gen = new Records(100000);
+    StaxxasInputStream in = new StaxxasInputStream(gen);
+    assertEquals(20000, in.skip(20000));
+    int steps = gen.steps;
+    in.close();
+    assertEquals(-1, in.read());
+    assertEquals(steps, gen.steps);
+  }
+
+  @Test
+  public void testGeneratorFailureIsAnIOException() throws Exception {
+    StaxxasInputStream in = new StaxxasInputStream(new StaxxasInputStream.Generator() {
+      @Override
+      public boolean step(StaxxasStreamWriter sx) {
+        sx.startDoc();
+        sx.attribute("orphan", "attribute");
+        return true;
+      }
+    });
+    try {
+      in.read();
+      fail("expected IOException");
+    } catch (IOException e) {
+      assertTrue(e.getCause() instanceof StaxxasStreamWriterException);
+    }
+    assertEquals(-1, in.read());
+
+    final IllegalStateException broken = new IllegalStateException("no more orders");
+    in = new StaxxasInputStream(new StaxxasInputStream.Generator() {
+      @Override
+      public boolean step(StaxxasStreamWriter sx) {
+        throw broken;
+      }
+    });
+    try {
+      in.read();
+      fail("expected IOException");
+    } catch (IOException e) {
+      assertEquals(broken, e.getCause());
+    }
+    assertEquals(-1, in.read());
+  }
+}
@@ -0,0 +1,173 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StaxxasMetricsTest {
+
+  StaxxasMetrics metrics;
+
+  @Before
+  public void setUp() {
+    metrics = new StaxxasMetrics();
+  }
+
+  private void writeDoc(StaxxasStreamWriter sx) {
+    sx.startDoc();
+    sx.startRootElement("orders");
+    sx.startElement("order").attribute("id", "1").attribute("rush", "true");
+    sx.startElement("customer").characters("Fred & Co").endElement();
+    sx.emptyElement("note").attribute("lang", "en");
+    sx.startElement("sku").cdata("A-1").endElement();
+    sx.endElement();
+    sx.endDoc();
+  }
+
+  @Test
+  public void testCountsWithNativeWriter() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(out);
+    sx.setMetrics(metrics);
+    writeDoc(sx);
+
+    StaxxasMetrics.Snapshot s = metrics.snapshot();
+    assertEquals(1, s.getDocuments());
+    assertEquals(5, s.getElements());
+    assertEquals(3, s.getAttributes());
+    assertEquals("Fred & Co".length() + "A-1".length(), s.getCharacters());
+    assertEquals(out.size(), s.getBytes());
+    assertTrue(s.getElapsedNanos() > 0);
+  }
+
+  @Test
+  public void testCountsWithStaxWriter() {
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(new StringWriter());
+    sx.setMetrics(metrics);
+    writeDoc(sx);
+
+    assertEquals(1, metrics.getDocuments());
+    assertEquals(5, metrics.getElements());
+    assertEquals(3, metrics.getAttributes());
+    assertEquals(12, metrics.getCharacters());
+    assertEquals(0, metrics.getBytes());
+  }
+
+  @Test
+  public void testNumbersAndPreEncodedTextAreCountedAsChars() throws Exception {
+    String text = "x\u00e9\u4e00\ud83d\ude00";
+    byte[] utf8 = text.getBytes("UTF-8");
+    java.nio.ByteBuffer direct = java.nio.ByteBuffer.allocateDirect(utf8.length);
+    direct.put(utf8).flip();
+    long expected = "-1234".length() + "2.5".length() + "1.0E-9".length() + 3 * text.length();
+    StaxxasStreamWriter[] writers = {
+      new StaxxasStreamWriter(new ByteArrayOutputStream()),
+      new StaxxasStreamWriter(new StringWriter())
+    };
+    for (StaxxasStreamWriter sx : writers) {
+      StaxxasMetrics m = new StaxxasMetrics();
+      sx.setMetrics(m);
+      sx.startDoc().startRootElement("n");
+      sx.characters(-1234L).characters(2.5).characters(1e-9);
+      sx.utf8Characters(utf8, 0, utf8.length).utf8Characters(java.nio.ByteBuffer.wrap(utf8));
+      sx.utf8Characters(direct);
+      sx.endDoc();
+      assertEquals(expected, m.getCharacters());
+    }
+  }
+
+  @Test
+  public void testPooledWritersCountEachDocumentOnce() throws Exception {
+    StaxxasWriterPool pool = new StaxxasWriterPool(1);
+    pool.setMetrics(metrics);
+    long total = 0;
+    for (int i = 0; i < 3; i++) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (StaxxasStreamWriter sx = pool.acquire(out)) {
+        writeDoc(sx);
+      }
+      total += out.size();
+    }
+    assertEquals(3, metrics.getDocuments());
+    assertEquals(15, metrics.getElements());
+    assertEquals(total, metrics.getBytes());
+
+    long[] histogram = metrics.snapshot().getFlushHistogram();
+    long flushes = 0;
+    for (long n : histogram) flushes += n;
+    assertEquals(3, flushes);
+    assertTrue(metrics.getFlushMedianMicros() <= metrics.getFlush99thPercentileMicros());
+
+    metrics.reset();
+    assertEquals(0, metrics.getDocuments());
+    assertEquals(0, metrics.getBytes());
+    assertEquals(0, metrics.getFlush99thPercentileMicros());
+  }
+
+  @Test
+  public void testCloseWithoutEndDocIsCounted() {
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(new ByteArrayOutputStream());
+    sx.setMetrics(metrics);
+    sx.startDoc();
+    sx.startRootElement("foo");
+    sx.close();
+    sx.close();
+    assertEquals(1, metrics.getDocuments());
+    assertEquals(1, metrics.getElements());
+  }
+
+  @Test
+  public void testNothingIsRecordedWhenDisabled() {
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(new ByteArrayOutputStream());
+    sx.setMetrics(metrics);
+    sx.setMetrics(null);
+    writeDoc(sx);
+    assertEquals(0, metrics.getDocuments());
+    assertEquals(0, metrics.getElements());
+  }
+
+  @Test
+  public void testSplicedFragmentsAreCounted() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(out);
+    sx.setMetrics(metrics);
+    sx.startDoc().startRootElement("root");
+    Fragment f = sx.fragment();
+    f.writer().startElement("a").attribute("x", "1").characters("hi").endElement();
+    f.complete();
+    sx.splice(f);
+    sx.endDoc();
+
+    assertEquals(2, metrics.getElements());
+    assertEquals(1, metrics.getAttributes());
+    assertEquals(2, metrics.getCharacters());
+    assertEquals(out.size(), metrics.getBytes());
+  }
+
+  @Test
+  public void testRegisterAsMBean() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName on = metrics.register("test");
+    try {
+      assertTrue(server.isRegistered(on));
+      StaxxasStreamWriter sx = new StaxxasStreamWriter(new ByteArrayOutputStream());
+      sx.setMetrics(metrics);
+      writeDoc(sx);
+      assertEquals(5L, server.getAttribute(on, "Elements"));
+      assertEquals(1L, server.getAttribute(on, "Documents"));
+    } finally {
+      metrics.unregister();
+    }
+    assertFalse(server.isRegistered(on));
+  }
+}
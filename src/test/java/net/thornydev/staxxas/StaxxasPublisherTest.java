@@ -0,0 +1,257 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StaxxasPublisherTest {
+
+  /** each record is the same number of bytes */
+  static class Records implements StaxxasInputStream.Generator {
+    final int count;
+    final AtomicLong steps = new AtomicLong();
+
+    Records(int count) {
+      this.count = count;
+    }
+
+    @Override
+    public boolean step(StaxxasStreamWriter sx) {
+      long i = steps.getAndIncrement();
+      if (i == 0) {
+        sx.startDoc().startRootElement("records");
+      }
+      if (i < count) {
+        sx.startElement("record").attribute("id", 1000000 + i).characters("0123456789").endElement();
+        return true;
+      }
+      sx.endDoc();
+      return false;
+    }
+  }
+
+  static final int RECORD_BYTES = "<record id=\"1000000\">0123456789</record>".length();
+
+  /** requests one chunk at a time, taking a while over each */
+  static class SlowSubscriber implements Flow.Subscriber<ByteBuffer> {
+    final Records gen;
+    final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile Throwable error;
+    long maxAheadBytes;
+    Flow.Subscription subscription;
+
+    SlowSubscriber(Records gen) {
+      this.gen = gen;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription s) {
+      subscription = s;
+      s.request(1);
+    }
+
+    @Override
+    public void onNext(ByteBuffer b) {
+      received.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+      long generated = gen.steps.get() * RECORD_BYTES;
+      maxAheadBytes = Math.max(maxAheadBytes, generated - received.size());
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+      done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      done.countDown();
+    }
+  }
+
+  ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static byte[] expected(int count) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(out);
+    Records r = new Records(count);
+    while (r.step(sx)) {
+      // all in one go
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testSlowSubscriberKeepsMemoryBounded() throws Exception {
+    Records gen = new Records(20000);
+    StaxxasPublisher pub = new StaxxasPublisher(null, gen, executor, 4096);
+    SlowSubscriber sub = new SlowSubscriber(gen);
+    pub.subscribe(sub);
+    assertTrue(sub.done.await(60, TimeUnit.SECONDS));
+    assertNull(sub.error);
+
+    byte[] expected = expected(20000);
+    assertTrue(expected.length > 800000);
+    assertEquals(new String(expected, "UTF-8"), sub.received.toString("UTF-8"));
+    // generation never got further ahead than the stream's and writer's buffers
+    assertTrue(String.valueOf(sub.maxAheadBytes), sub.maxAheadBytes <= 2 * 8192 + RECORD_BYTES);
+    assertEquals(StaxxasInputStream.DEFAULT_BUFFER_SIZE, pub.stream().bufferCapacity());
+  }
+
+  @Test
+  public void testNothingIsGeneratedWithoutDemand() throws Exception {
+    Records gen = new Records(1000);
+    StaxxasPublisher pub = new StaxxasPublisher(null, gen, executor, 4096);
+    final CountDownLatch subscribed = new CountDownLatch(1);
+    final Flow.Subscription[] subscription = new Flow.Subscription[1];
+    final AtomicLong chunks = new AtomicLong();
+    final CountDownLatch completed = new CountDownLatch(1);
+    pub.subscribe(new Flow.Subscriber<ByteBuffer>() {
+      @Override public void onSubscribe(Flow.Subscription s) {
+        subscription[0] = s;
+        subscribed.countDown();
+      }
+      @Override public void onNext(ByteBuffer b) { chunks.incrementAndGet(); }
+      @Override public void onError(Throwable t) {}
+      @Override public void onComplete() { completed.countDown(); }
+    });
+    assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+    Thread.sleep(50);
+    assertEquals(0, gen.steps.get());
+
+    subscription[0].request(Long.MAX_VALUE);
+    assertTrue(completed.await(5, TimeUnit.SECONDS));
+    assertEquals((expected(1000).length + 4095) / 4096, chunks.get());
+  }
+
+  @Test
+  public void testCancelStopsGeneration() throws Exception {
+    Records gen = new Records(100000);
+    StaxxasPublisher pub = new StaxxasPublisher(null, gen, executor, 1024);
+    final CountDownLatch first = new CountDownLatch(1);
+    pub.subscribe(new Flow.Subscriber<ByteBuffer>() {
+      Flow.Subscription s;
+      @Override public void onSubscribe(Flow.Subscription s) {
+        this.s = s;
+        s.request(3);
+      }
+      @Override public void onNext(ByteBuffer b) {
+        s.cancel();
+        first.countDown();
+      }
+      @Override public void onError(Throwable t) {}
+      @Override public void onComplete() {}
+    });
+    assertTrue(first.await(5, TimeUnit.SECONDS));
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(gen.steps.get() < 100);
+  }
+
+  /** requests everything and records how the subscription ended */
+  static class Recorder implements Flow.Subscriber<ByteBuffer> {
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile Throwable error;
+    volatile boolean completed;
+
+    @Override public void onSubscribe(Flow.Subscription s) { s.request(Long.MAX_VALUE); }
+    @Override public void onNext(ByteBuffer b) {}
+    @Override public void onError(Throwable t) {
+      error = t;
+      done.countDown();
+    }
+    @Override public void onComplete() {
+      completed = true;
+      done.countDown();
+    }
+  }
+
+  @Test
+  public void testGeneratorFailureEndsTheSubscription() throws Exception {
+    final IllegalStateException broken = new IllegalStateException("no more orders");
+    StaxxasPublisher pub = new StaxxasPublisher(null, new StaxxasInputStream.Generator() {
+        @Override
+        public boolean step(StaxxasStreamWriter sx) {
+          throw broken;
+        }
+      }, executor, 1024);
+    Recorder sub = new Recorder();
+    pub.subscribe(sub);
+    assertTrue(sub.done.await(5, TimeUnit.SECONDS));
+    assertFalse(sub.completed);
+    assertEquals(broken, sub.error.getCause());
+    assertTrue(pub.stream().finished());
+  }
+
+  @Test
+  public void testThrowingOnNextEndsTheSubscription() throws Exception {
+    Records gen = new Records(100000);
+    StaxxasPublisher pub = new StaxxasPublisher(null, gen, executor, 1024);
+    final RuntimeException broken = new RuntimeException("subscriber bug");
+    Recorder sub = new Recorder() {
+        @Override public void onNext(ByteBuffer b) {
+          throw broken;
+        }
+      };
+    pub.subscribe(sub);
+    assertTrue(sub.done.await(5, TimeUnit.SECONDS));
+    assertEquals(broken, sub.error);
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(gen.steps.get() < 100);
+    assertTrue(pub.stream().finished());
+  }
+
+  @Test
+  public void testSecondSubscriberAndBadRequestGetErrors() throws Exception {
+    StaxxasPublisher pub = new StaxxasPublisher(null, new Records(10), executor, 1024);
+    final Throwable[] errors = new Throwable[2];
+    final CountDownLatch latch = new CountDownLatch(2);
+    for (int i = 0; i < 2; i++) {
+      final int k = i;
+      pub.subscribe(new Flow.Subscriber<ByteBuffer>() {
+        @Override public void onSubscribe(Flow.Subscription s) { s.request(0); }
+        @Override public void onNext(ByteBuffer b) {}
+        @Override public void onError(Throwable t) {
+          errors[k] = t;
+          latch.countDown();
+        }
+        @Override public void onComplete() {}
+      });
+    }
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(errors[0] instanceof IllegalArgumentException);
+    assertTrue(errors[1] instanceof IllegalStateException);
+  }
+}
@@ -655,6 +655,33 @@ public class StaxxasStreamWriterTest {
     assertEquals("Kindle Fire", s);
   }
   
+  @Test
+  public void testResetWritesNewDocumentWithSameNamespaces() {
+    sx.mapNamespaceToUri("aa", "http://www.example.org/aa");
+    sx.setCurrentNamespace("aa");
+    sx.startDoc().startRootElement("foo").endDoc();
+
+    StringWriter writer2 = new StringWriter();
+    sx.reset(writer2);
+    sx.startDoc().startRootElement("bar");
+    sx.startElement("baz", "aa").endElement();
+    sx.endDoc();
+
+    String out = writer2.toString();
+    String re = "^<\\?\\s*xml\\s+version=\"1.0\"\\s*\\?>\\s*<bar\\s+xmlns:aa=\"http://www.example.org/aa\"\\s*>"
+      + "\\s*<aa:baz>\\s*</aa:baz>\\s*</bar>$";
+    assertTrue(out, Pattern.compile(re).matcher(out).matches());
+  }
+
+  @Test
+  public void testCloseWithoutEndDocClosesWriter() {
+    sx.startDoc();
+    sx.startElement("foo");
+    sx.close();
+    sx.close();
+    assertTrue(writer.toString(), writer.toString().contains("<foo"));
+  }
+
   @Test
   public void testDeleteMeLater3() throws Exception {
     FileWriter fw = null;
@@ -0,0 +1,142 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StaxxasWriterPoolTest {
+
+  StaxxasWriterPool pool;
+
+  @Before
+  public void setUp() {
+    Map<String,String> nsToUri = new HashMap<String,String>();
+    nsToUri.put("aa", "http://www.example.org/aa");
+    pool = new StaxxasWriterPool(2, nsToUri, "http://www.example.org/dflt");
+  }
+
+  private void writeDoc(StaxxasStreamWriter sx) {
+    sx.startDoc();
+    sx.startRootElement("foo");
+    sx.startElement("bar", "aa").characters("baz").endElement();
+    sx.endDoc();
+  }
+
+  @Test
+  public void testWriterIsReusedAfterClose() throws Exception {
+    ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+    StaxxasStreamWriter first;
+    try (StaxxasStreamWriter sx = pool.acquire(out1)) {
+      first = sx;
+      writeDoc(sx);
+    }
+    assertEquals(1, pool.idleCount());
+
+    ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+    try (StaxxasStreamWriter sx = pool.acquire(out2)) {
+      assertSame(first, sx);
+      assertEquals(0, pool.idleCount());
+      writeDoc(sx);
+    }
+
+    String expected = "<?xml version=\"1.0\" ?><foo xmlns=\"http://www.example.org/dflt\" "
+      + "xmlns:aa=\"http://www.example.org/aa\"><aa:bar>baz</aa:bar></foo>";
+    assertEquals(expected, out1.toString("UTF-8"));
+    assertEquals(expected, out2.toString("UTF-8"));
+  }
+
+  @Test
+  public void testPoolIsBoundedAndDoubleCloseReturnsOnce() {
+    StaxxasStreamWriter a = pool.acquire(new ByteArrayOutputStream());
+    StaxxasStreamWriter b = pool.acquire(new ByteArrayOutputStream());
+    StaxxasStreamWriter c = pool.acquire(new ByteArrayOutputStream());
+    assertNotSame(a, b);
+    assertNotSame(b, c);
+    a.close();
+    a.close();
+    assertEquals(1, pool.idleCount());
+    b.close();
+    c.close();
+    assertEquals(2, pool.idleCount());
+  }
+
+  @Test
+  public void testAbandonedDocumentIsDiscardedOnReuse() throws Exception {
+    StaxxasStreamWriter sx = pool.acquire(new ByteArrayOutputStream());
+    sx.startDoc();
+    sx.startElement("never").startElement("finished");
+    sx.close();
+
+    StringWriter writer = new StringWriter();
+    try (StaxxasStreamWriter sx2 = pool.acquire(writer)) {
+      assertSame(sx, sx2);
+      sx2.startDoc().emptyElement("foo").endDoc();
+    }
+    assertTrue(writer.toString(), writer.toString().endsWith("?><foo/>"));
+  }
+
+  @Test(expected=UnsupportedOperationException.class)
+  public void testPooledNamespacesAreReadOnly() {
+    try (StaxxasStreamWriter sx = pool.acquire(new ByteArrayOutputStream())) {
+      sx.mapNamespaceToUri("bb", "http://www.example.org/bb");
+    }
+  }
+
+  @Test
+  public void testDefaultNamespaceIsRestoredOnAcquire() throws Exception {
+    try (StaxxasStreamWriter sx = pool.acquire(new ByteArrayOutputStream())) {
+      sx.setDefaultNamespace(null);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      sx.startDoc().startRootElement("foo").endDoc();
+    }
+    assertTrue(out.toString("UTF-8"), out.toString("UTF-8").contains("xmlns=\"http://www.example.org/dflt\""));
+  }
+
+  @Test
+  public void testSettingsAreRestoredOnAcquire() throws Exception {
+    StaxxasStreamWriter first;
+    try (StaxxasStreamWriter sx = pool.acquire(new ByteArrayOutputStream())) {
+      first = sx;
+      sx.setValidateUtf8(true);
+      sx.setLazyNamespaces(true);
+      sx.setRecordBatchSize(1);
+      sx.setFlushRecordBatches(true);
+    }
+
+    List<Integer> ints = new ArrayList<Integer>();
+    for (int i = 0; i < 2500; i++) {
+      ints.add(i);
+    }
+    byte[] malformed = {(byte) 0xC0, (byte) 0x80};
+    RecordWriterTest.FlushCountingStream out = new RecordWriterTest.FlushCountingStream();
+    try (StaxxasStreamWriter sx = pool.acquire(out)) {
+      assertSame(first, sx);
+      // not validated: written as is
+      sx.startDoc().startRootElement("foo").utf8Characters(malformed, 0, malformed.length);
+      // not flushed per record
+      sx.records("records", ints, RecordWriterTest.WRITER);
+      assertEquals(0, out.flushes);
+      // batches of the default size
+      sx.setFlushRecordBatches(true);
+      sx.records("records", ints, RecordWriterTest.WRITER);
+      assertEquals(3, out.flushes);
+      sx.endDoc();
+    }
+    // namespaces declared on the root element, not lazily
+    assertTrue(out.toString("UTF-8"), out.toString("UTF-8").contains(
+      "<foo xmlns=\"http://www.example.org/dflt\" xmlns:aa=\"http://www.example.org/aa\">"));
+  }
+}
@@ -0,0 +1,81 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TemplateTest {
+
+  Map<String,String> nsToUri;
+  Template template;
+
+  @Before
+  public void setUp() {
+    nsToUri = new HashMap<String,String>();
+    nsToUri.put("env", "http://www.example.org/env");
+    template = Template.compile(nsToUri, "http://www.example.org/dflt", new Template.Body() {
+        public void write(StaxxasStreamWriter sx, Template.Slots slots) {
+          sx.startDoc().startRootElement("envelope");
+          sx.setCurrentNamespace("env");
+          sx.startElement("header");
+          sx.startElement("id");
+          slots.text("id");
+          sx.endElement();
+          sx.emptyElement("sent").attribute("zone", "UTC");
+          slots.attribute("at", "timestamp").attribute("by", "me");
+          sx.endElement();
+          sx.setCurrentNamespace(null);
+          sx.startElement("body").characters("Hello ");
+          slots.text("name");
+          sx.startElement("echo");
+          slots.text("id");
+          sx.endElement();
+          sx.endDoc();
+        }
+      });
+  }
+
+  private String direct(String id, String timestamp, String name) throws Exception {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(bout, new HashMap<String,String>(nsToUri));
+    sx.setDefaultNamespace("http://www.example.org/dflt");
+    sx.startDoc().startRootElement("envelope");
+    sx.setCurrentNamespace("env");
+    sx.startElement("header");
+    sx.startElement("id").characters(id).endElement();
+    sx.emptyElement("sent").attribute("zone", "UTC").attribute("at", timestamp).attribute("by", "me");
+    sx.endElement();
+    sx.setCurrentNamespace(null);
+    sx.startElement("body").characters("Hello ").characters(name);
+    sx.startElement("echo").characters(id).endElement();
+    sx.endDoc();
+    return bout.toString("UTF-8");
+  }
+
+  @Test
+  public void testRenderMatchesDirectWriting() throws Exception {
+    assertEquals(Arrays.asList("id", "timestamp", "name"), template.getSlotNames());
+    assertEquals(direct("42", "2013-05-01T10:00:00Z", "World"),
+                 new String(template.render("42", "2013-05-01T10:00:00Z", "World"), "UTF-8"));
+    assertEquals(direct("<&>", "\"quoted\" & <b>", "é一😀"),
+                 new String(template.render("<&>", "\"quoted\" & <b>", "é一😀"), "UTF-8"));
+  }
+
+  @Test
+  public void testRenderToStreamAndNullValues() throws Exception {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    template.render(bout, "7", null, new StringBuilder("sb"));
+    assertEquals(direct("7", "", "sb"), bout.toString("UTF-8"));
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testWrongNumberOfValues() {
+    template.render("just one");
+  }
+}
@@ -0,0 +1,335 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.junit.Test;
+
+/**
+ * Checks that the native Utf8XMLStreamWriter produces byte-for-byte the same
+ * output as the JDK StAX XMLStreamWriter writing UTF-8.
+ */
+public class Utf8XMLStreamWriterTest {
+
+  /** A document built against a StaxxasStreamWriter */
+  interface Doc {
+    void write(StaxxasStreamWriter sx);
+  }
+
+  private byte[] viaJdk(Map<String,String> nsToUri, Doc doc) throws Exception {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    XMLStreamWriter xsw = XMLOutputFactory.newFactory().createXMLStreamWriter(bout, "UTF-8");
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(xsw, copy(nsToUri));
+    doc.write(sx);
+    return bout.toByteArray();
+  }
+
+  private byte[] viaNative(Map<String,String> nsToUri, Doc doc) {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(bout, copy(nsToUri));
+    doc.write(sx);
+    return bout.toByteArray();
+  }
+
+  private Map<String,String> copy(Map<String,String> nsToUri) {
+    return nsToUri == null ? null : new LinkedHashMap<String,String>(nsToUri);
+  }
+
+  private void assertSameOutput(Map<String,String> nsToUri, Doc doc) throws Exception {
+    byte[] expected = viaJdk(nsToUri, doc);
+    byte[] actual = viaNative(nsToUri, doc);
+    assertEquals(new String(expected, "UTF-8"), new String(actual, "UTF-8"));
+    assertArrayEquals(expected, actual);
+  }
+
+  @Test
+  public void testDeclarations() throws Exception {
+    assertSameOutput(null, new Doc() {
+        public void write(StaxxasStreamWriter sx) {
+          sx.startDoc().emptyElement("foo").endDoc();
+        }
+      });
+    assertSameOutput(null, new Doc() {
+        public void write(StaxxasStreamWriter sx) {
+          sx.startDoc("1.1").emptyElement("foo").endDoc();
+        }
+      });
+    assertSameOutput(null, new Doc() {
+        public void write(StaxxasStreamWriter sx) {
+          sx.startDoc("UTF-8", "1.1").emptyElement("foo").endDoc();
+        }
+      });
+  }
+
+  @Test
+  public void testElementsTextAndEscaping() throws Exception {
+    assertSameOutput(null, new Doc() {
+        public void write(StaxxasStreamWriter sx) {
+          sx.startDoc();
+          sx.startElement("foo").attribute("a", "x<y>&\"z' \t\n");
+          sx.startElement("bar").characters("I am <text> & \"more\" é一😀").endElement();
+          char[] cs = "1234567. All good children go to heaven.".toCharArray();
+          sx.startElement("baz").characters(cs, 13, 13).endElement();
+          sx.startElement("quux").endElement();
+          sx.emptyElement("wibble").attribute("k", "v");
+          sx.startElement("forgotten");
+          sx.endDoc();
+        }
+      });
+  }
+
+  @Test
+  public void testCommentsPIsAndOtherNodes() throws Exception {
+    assertSameOutput(null, new Doc() {
+        public void write(StaxxasStreamWriter sx) {
+          sx.startDoc();
+          sx.processingInstruction("quux");
+          sx.processingInstruction("xml-stylesheet", "type=\"text/css\" href=\"style.css\"");
+          sx.startElement("foo").comment("I am the comment.");
+          sx.entityRef("apos").cdata("x < y");
+          sx.endElement();
+          sx.endDoc();
+        }
+      });
+  }
+
+  @Test
+  public void testNamespaces() throws Exception {
+    Map<String,String> nsToUri = new LinkedHashMap<String,String>();
+    nsToUri.put("foo", "http://www.example.com/foo");
+    nsToUri.put("bar", "http://www.example.com/bar");
+
+    assertSameOutput(nsToUri, new Doc() {
+        public void write(StaxxasStreamWriter sx) {
+          sx.setDefaultNamespace("http://www.example.com/quux");
+          sx.startDoc();
+          sx.startRootElement("inventory");
+          sx.setCurrentNamespace("foo");
+          sx.startElement("site").
+            prefixedAttribute("foo", "isWarehouse", "yes").
+            characters("Oklahoma City facility").
+            endElement();
+          sx.startElement("capacity", "bar").
+            prefixedAttribute("foo", "units", "sq.ft.").
+            characters("200,000").
+            endElement();
+          sx.emptyElement("empty");
+          sx.setCurrentNamespace(null);
+          sx.startElement("items").emptyElement("item").endElement();
+          sx.endElement("inventory");
+          sx.endDoc();
+        }
+      });
+  }
+
+  @Test
+  public void testLargeDocumentSpanningManyBuffers() throws Exception {
+    assertSameOutput(null, new Doc() {
+        public void write(StaxxasStreamWriter sx) {
+          StringBuilder sb = new StringBuilder();
+          for (int i = 0; i < 1000; i++) {
+            sb.append("text & é一 <").append(i).append('>');
+          }
+          String text = sb.toString();
+          sx.startDoc().startElement("root");
+          for (int i = 0; i < 50; i++) {
+            sx.startElement("rec").attribute("id", Integer.toString(i)).characters(text).endElement();
+          }
+          sx.endDoc();
+        }
+      });
+  }
+
+  @Test
+  public void testCharSequences() throws Exception {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 300; i++) {
+      sb.append("a<b&c>\"d\" \u00e9\ud83d\ude00");
+    }
+    final CharBuffer backed = CharBuffer.wrap(("xx" + sb + "yy").toCharArray());
+    backed.position(2).limit(backed.limit() - 2);
+    final CharBuffer readOnly = CharBuffer.wrap(sb);
+    assertSameOutput(null, new Doc() {
+        public void write(StaxxasStreamWriter sx) {
+          sx.startDoc();
+          sx.startElement("foo").attribute("sb", sb).attribute(Name.of("cb"), backed);
+          sx.startElement("sb").characters(sb).endElement();
+          sx.startElement("cb").characters(backed).endElement();
+          sx.startElement("ro").characters(readOnly).endElement();
+          sx.startElement("cs").characters((CharSequence) "plain & simple").endElement();
+          sx.endDoc();
+        }
+      });
+    assertEquals(2, backed.position());
+    assertEquals(0, readOnly.position());
+  }
+
+  @Test
+  public void testUtf8Bytes() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      sb.append("x<y & z> \u00e9\u4e00\ud83d\ude00 ");
+    }
+    final byte[] bytes = sb.toString().getBytes("UTF-8");
+    final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+    final ByteBuffer heap = ByteBuffer.wrap(bytes, 3, 40).slice();
+    final byte[] quoted = "say \"x<y & z>\" \u00e9\u4e00\ud83d\ude00".getBytes("UTF-8");
+    assertSameOutput(null, new Doc() {
+        public void write(StaxxasStreamWriter sx) {
+          sx.setValidateUtf8(true);
+          sx.startDoc();
+          sx.startElement("foo").attribute("a", "b");
+          sx.utf8Attribute("q", quoted, 0, quoted.length).utf8Attribute(Name.of("r"), quoted, 4, 10);
+          sx.startElement("bytes").utf8Characters(bytes, 0, bytes.length).endElement();
+          sx.startElement("part").utf8Characters(bytes, 1, 10).endElement();
+          sx.startElement("direct").utf8Characters(direct).endElement();
+          sx.startElement("heap").utf8Characters(heap).endElement();
+          sx.endDoc();
+        }
+      });
+    assertEquals(0, direct.position());
+  }
+
+  @Test
+  public void testMalformedUtf8IsRejectedWhenValidating() throws Exception {
+    byte[][] bad = {
+      {(byte) 0xC0, (byte) 0x80},               // overlong
+      {'a', (byte) 0xED, (byte) 0xA0, (byte) 0x80}, // surrogate
+      {(byte) 0xF5, (byte) 0x80, (byte) 0x80, (byte) 0x80},
+      {(byte) 0xE4, (byte) 0xB8},               // truncated
+      {(byte) 0x80}
+    };
+    for (byte[] b : bad) {
+      assertEquals(b[0] == 'a' ? 1 : 0, Utf8XMLStreamWriter.malformedIndex(b, 0, b.length));
+      StaxxasStreamWriter[] writers = {
+        new StaxxasStreamWriter(new ByteArrayOutputStream()),
+        new StaxxasStreamWriter(XMLOutputFactory.newFactory().createXMLStreamWriter(new ByteArrayOutputStream(), "UTF-8"))
+      };
+      for (StaxxasStreamWriter sx : writers) {
+        sx.setValidateUtf8(true);
+        sx.startDoc().startElement("foo");
+        try {
+          sx.utf8Attribute("a", b, 0, b.length);
+          fail("Shouldn't get here");
+        } catch (StaxxasStreamWriterException e) {
+          // expected
+        }
+        try {
+          sx.utf8Characters(b, 0, b.length);
+          fail("Shouldn't get here");
+        } catch (StaxxasStreamWriterException e) {
+          // expected
+        }
+        ByteBuffer direct = ByteBuffer.allocateDirect(b.length);
+        direct.put(b).flip();
+        try {
+          sx.utf8Characters(direct);
+          fail("Shouldn't get here");
+        } catch (StaxxasStreamWriterException e) {
+          // expected
+        }
+      }
+    }
+    byte[] good = "\u00e9\u4e00\ud83d\ude00\uffff".getBytes("UTF-8");
+    assertEquals(-1, Utf8XMLStreamWriter.malformedIndex(good, 0, good.length));
+  }
+
+  @Test
+  public void testPrimitiveValues() throws Exception {
+    final Name count = Name.of("count");
+    assertSameOutput(null, new Doc() {
+        public void write(StaxxasStreamWriter sx) {
+          sx.startDoc();
+          sx.startElement("nums").attribute("i", 42).attribute("neg", -7L)
+            .attribute("max", Long.MAX_VALUE).attribute("min", Long.MIN_VALUE)
+            .attribute("d", 12.5).attribute("ok", true).attribute(count, 0)
+            .attribute(Name.of("ratio"), -0.125).attribute(Name.of("no"), false);
+          sx.startElement("i").characters(Integer.MIN_VALUE).endElement();
+          sx.startElement("l").characters(1234567890123L).endElement();
+          double[] ds = {0.0, -0.0, 1.0, -3.0, 0.1, 0.001, 0.0009, 9999999.0, 1e7, 
+                         123.456, 1234567.891, 3.14159, 1.0/3, 1e-300, Double.MAX_VALUE,
+                         Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, 
+                         Double.NEGATIVE_INFINITY};
+          for (double d : ds) {
+            sx.startElement("d").attribute("v", d).characters(d).endElement();
+          }
+          sx.endDoc();
+        }
+      });
+  }
+
+  @Test
+  public void testDoublesMatchDoubleToString() throws Exception {
+    java.util.Random r = new java.util.Random(42);
+    for (int i = 0; i < 20000; i++) {
+      double d;
+      switch (i % 4) {
+      case 0:  d = r.nextInt(10000000) / 1000.0; break;
+      case 1:  d = -r.nextInt(100000) / 100.0; break;
+      case 2:  d = r.nextDouble() * 1e7; break;
+      default: d = Double.longBitsToDouble(r.nextLong()); break;
+      }
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      Utf8XMLStreamWriter w = new Utf8XMLStreamWriter(bout);
+      w.writeCharacters(d);
+      w.flush();
+      assertEquals(Double.toString(d), bout.toString("UTF-8"));
+    }
+  }
+
+  @Test
+  public void testSmallestBufferHoldsFullyEscapedShortStrings() throws Exception {
+    String quotes = "\"\"\"\"\"\"\"\"\"\"\"\"\"\"\"\"\"\"\"\"";
+    String mixed = "<&>\"<&>\"<&>\"é一😀<&>\"<&>\"<&>\"<&>\"";
+    byte[][] outs = new byte[2][];
+    int[] sizes = {64, 8192};
+    for (int i = 0; i < sizes.length; i++) {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      Utf8XMLStreamWriter w = new Utf8XMLStreamWriter(bout, sizes[i]);
+      w.writeStartElement("x");
+      w.writeAttribute("q", quotes);
+      w.writeAttribute("m", mixed);
+      w.writeCharacters(mixed);
+      w.writeEndElement();
+      w.flush();
+      outs[i] = bout.toByteArray();
+    }
+    assertEquals(new String(outs[1], "UTF-8"), new String(outs[0], "UTF-8"));
+  }
+
+  @Test
+  public void testEndElementWithNoStartElementThrows() throws Exception {
+    Utf8XMLStreamWriter w = new Utf8XMLStreamWriter(new ByteArrayOutputStream());
+    w.writeStartDocument();
+    try {
+      w.writeEndElement();
+      fail("Shouldn't get here");
+    } catch (XMLStreamException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testUnboundNamespaceUriThrows() throws Exception {
+    Utf8XMLStreamWriter w = new Utf8XMLStreamWriter(new ByteArrayOutputStream());
+    w.writeStartDocument();
+    try {
+      w.writeStartElement("http://www.example.com/nope", "foo");
+      fail("Shouldn't get here");
+    } catch (XMLStreamException e) {
+      // expected
+    }
+  }
+}
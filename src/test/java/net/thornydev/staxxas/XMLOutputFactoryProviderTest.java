@@ -0,0 +1,62 @@
+package net.thornydev.staxxas;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+
+import javax.xml.stream.XMLOutputFactory;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class XMLOutputFactoryProviderTest {
+
+  @After
+  public void tearDown() {
+    XMLOutputFactoryProvider.setFactory(null);
+  }
+
+  @Test
+  public void testFactoryIsCreatedOnceAndShared() {
+    XMLOutputFactory f = XMLOutputFactoryProvider.getFactory();
+    assertNotNull(f);
+    assertSame(f, XMLOutputFactoryProvider.getFactory());
+  }
+
+  @Test
+  public void testInjectedFactoryIsUsed() {
+    XMLOutputFactory f = XMLOutputFactory.newFactory();
+    f.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.TRUE);
+    XMLOutputFactoryProvider.setFactory(f);
+    assertSame(f, XMLOutputFactoryProvider.getFactory());
+
+    // with a repairing writer, the namespace is declared without writeRootNamespaces
+    StringWriter writer = new StringWriter();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(writer);
+    sx.mapNamespaceToUri("aa", "http://www.example.org/aa");
+    sx.startDoc();
+    sx.startElement("foo", "aa");
+    sx.endDoc();
+    assertTrue(writer.toString(), writer.toString().contains("xmlns:aa=\"http://www.example.org/aa\""));
+  }
+
+  @Test
+  public void testResetRestoresDefaultFactory() {
+    XMLOutputFactory f = XMLOutputFactory.newFactory();
+    XMLOutputFactoryProvider.setFactory(f);
+    XMLOutputFactoryProvider.setFactory(null);
+    XMLOutputFactory dflt = XMLOutputFactoryProvider.getFactory();
+    assertNotNull(dflt);
+    assertSame(dflt, XMLOutputFactoryProvider.getFactory());
+  }
+
+  @Test
+  public void testConstructorTakesFactory() {
+    StringWriter writer = new StringWriter();
+    StaxxasStreamWriter sx = new StaxxasStreamWriter(writer, null, XMLOutputFactory.newFactory());
+    sx.startDoc().emptyElement("foo").endDoc();
+    assertTrue(writer.toString(), writer.toString().endsWith("<foo/>"));
+  }
+}